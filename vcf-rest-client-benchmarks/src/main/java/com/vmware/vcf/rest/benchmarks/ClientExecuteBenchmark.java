@@ -0,0 +1,101 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.benchmarks;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.fluent.Request;
+import org.apache.http.entity.ContentType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.vcf.rest.examples.Client;
+import com.vmware.vcf.rest.examples.RestResponse;
+
+/**
+ * Cost of one {@link Client#execute} round trip over pooled keep-alive connections, per endpoint.
+ * Throughput mode reports requests per millisecond, sample mode the latency distribution
+ * (p50/p99/p99.9). Run with {@code -t N} to measure N concurrent callers sharing one client and
+ * with {@code -prof gc} to add the allocation rate per request.
+ *
+ * @author VMware Inc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ClientExecuteBenchmark {
+
+  /** Whether cacheable GETs (/v1/license-keys, /v1/domains) may be answered from the cache */
+  @Param({"false", "true"})
+  boolean responseCache;
+
+  StubSddcManager stub;
+  Client client;
+  String baseUrl;
+  String domainSpec;
+
+  @Setup
+  public void setUp() throws Exception {
+    stub = new StubSddcManager();
+    Properties properties = stub.clientProperties();
+    properties.setProperty("responseCacheMaxEntries", responseCache ? "256" : "0");
+    properties.setProperty("httpMaxTotalConnections", "64");
+    properties.setProperty("httpMaxConnectionsPerRoute", "64");
+    client = new Client(properties);
+    baseUrl = client.getBaseUrl();
+    domainSpec = "{\"domainName\":\"Workload-Domain-2\"}";
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    client.close();
+    stub.close();
+  }
+
+  @Benchmark
+  public RestResponse getTask() throws Exception {
+    return client.execute(Request.Get(baseUrl + "/v1/tasks/" + StubSddcManager.TASK_ID));
+  }
+
+  @Benchmark
+  public RestResponse getTasks() throws Exception {
+    return client.execute(Request.Get(baseUrl + "/v1/tasks"));
+  }
+
+  @Benchmark
+  public RestResponse getLicenseKeys() throws Exception {
+    return client.execute(Request.Get(baseUrl + "/v1/license-keys"));
+  }
+
+  @Benchmark
+  public RestResponse getHostValidation() throws Exception {
+    return client.execute(
+        Request.Get(baseUrl + "/v1/hosts/validations/" + StubSddcManager.VALIDATION_ID)
+            .addHeader("Content-Type", ContentType.APPLICATION_JSON.toString()));
+  }
+
+  @Benchmark
+  public RestResponse getDomains() throws Exception {
+    return client.execute(Request.Get(baseUrl + "/v1/domains"));
+  }
+
+  @Benchmark
+  public RestResponse postDomain() throws Exception {
+    return client.execute(
+        Request.Post(baseUrl + "/v1/domains").bodyString(domainSpec, ContentType.APPLICATION_JSON));
+  }
+}
@@ -0,0 +1,86 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.apache.http.client.fluent.Request;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.vcf.rest.examples.Client;
+import com.vmware.vcf.rest.examples.OperationResult;
+
+/**
+ * Fan-out of a batch of task GETs through {@link Client#newBulkExecutor(int)} at increasing
+ * concurrency, with a connection pool sized to match. The score is the time to complete the whole
+ * batch, so comparing the concurrency levels shows where the client, the pool, the transport or
+ * the thread mode stops scaling. The stub only speaks HTTP/1.1, so the http2 transport measures
+ * the JDK client on its HTTP/1.1 fallback here.
+ *
+ * @author VMware Inc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ConcurrencyBenchmark {
+
+  static int BATCH_SIZE = 256;
+
+  @Param({"1", "8", "32", "128"})
+  int concurrency;
+
+  /** Client thread mode, virtual threads are only used on JDK 21 and later */
+  @Param({"virtual", "platform"})
+  String clientThreadMode;
+
+  @Param({"http1", "http2"})
+  String httpTransport;
+
+  StubSddcManager stub;
+  Client client;
+  String taskUrl;
+
+  @Setup
+  public void setUp() throws Exception {
+    stub = new StubSddcManager(Math.max(StubSddcManager.DEFAULT_HANDLER_THREADS, concurrency));
+    Properties properties = stub.clientProperties();
+    properties.setProperty("clientThreadMode", clientThreadMode);
+    properties.setProperty("httpTransport", httpTransport);
+    properties.setProperty("httpMaxTotalConnections", String.valueOf(concurrency));
+    properties.setProperty("httpMaxConnectionsPerRoute", String.valueOf(concurrency));
+    client = new Client(properties);
+    taskUrl = client.getBaseUrl() + "/v1/tasks/" + StubSddcManager.TASK_ID;
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    client.close();
+    stub.close();
+  }
+
+  @Benchmark
+  public List<OperationResult<Integer>> getTaskBatch() throws InterruptedException {
+    return client
+        .newBulkExecutor(concurrency)
+        .run(
+            IntStream.range(0, BATCH_SIZE).iterator(),
+            i -> client.execute(Request.Get(taskUrl)));
+  }
+}
@@ -0,0 +1,445 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import com.vmware.vcf.rest.examples.Client;
+import com.vmware.vcf.rest.examples.Recording;
+import com.vmware.vcf.rest.examples.instrumentation.ClientInstrumentation;
+
+/**
+ * Offline stand-in for SDDC Manager that serves a {@link Recording} back, so host commissioning
+ * and domain workflows can be scaled up on a laptop with no access to a real appliance.
+ *
+ * <ul>
+ *   <li>Every POST that returned an operation id, e.g. a host commission task, hands out a fresh
+ *       id instead. Status checks of that id replay the recorded progression of the original
+ *       operation, timed from the moment the id was handed out, so any number of concurrent
+ *       submissions each run their own copy of the recorded workflow.
+ *   <li>Other GETs replay the recorded responses of their path in recording time, starting when
+ *       the server starts.
+ *   <li>Recorded time runs {@code timeScale} times faster, for both progressions and response
+ *       latency, e.g. 60 replays an hour long domain creation in a minute.
+ *   <li>List documents are fanned out: every element appears {@code fanOut} times with a
+ *       suffixed id, name and FQDN, and GETs of the copies resolve to the original.
+ *   <li>Requests the recording has no exact match for get a recorded response of the same
+ *       endpoint, e.g. /v1/tasks/{id}, and 404 if there is none.
+ *   <li>A handed out id is forgotten {@code ALIAS_RETENTION_MILLIS} after the replay of its
+ *       operation reached the last recorded exchange of the original, so a long run does not
+ *       accumulate ids.
+ * </ul>
+ *
+ * <p>Run it standalone with {@code java -cp target/benchmarks.jar
+ * com.vmware.vcf.rest.benchmarks.ReplayServer <recording> [timeScale] [fanOut] [port]} and point
+ * {@code sddcManagerIP} at the address it prints.
+ *
+ * @author VMware Inc
+ */
+public class ReplayServer implements AutoCloseable {
+
+  static int DEFAULT_HANDLER_THREADS = 32;
+  static long ALIAS_RETENTION_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+  private static final ClientInstrumentation ENDPOINTS = new ClientInstrumentation();
+  private static final byte[] NOT_RECORDED =
+      new JSONObject()
+          .put("errorCode", "NOT_RECORDED")
+          .put("remediationMessage", "The recording has no exchange for this endpoint")
+          .toString()
+          .getBytes(StandardCharsets.UTF_8);
+
+  /** One response of a timeline */
+  private static class Response {
+    final long offsetMillis;
+    final int latencyMillis;
+    final int statusCode;
+    final String body;
+
+    Response(long offsetMillis, int latencyMillis, int statusCode, String body) {
+      this.offsetMillis = offsetMillis;
+      this.latencyMillis = latencyMillis;
+      this.statusCode = statusCode;
+      this.body = body;
+    }
+  }
+
+  /** Responses recorded for one request, in recording order */
+  private static class Timeline {
+    final List<Response> responses = new ArrayList<>();
+    final AtomicLong next = new AtomicLong();
+
+    /** @return Last response recorded at or before the offset, or the first one */
+    Response at(long offsetMillis) {
+      Response match = responses.get(0);
+      for (Response response : responses) {
+        if (response.offsetMillis > offsetMillis) {
+          break;
+        }
+        match = response;
+      }
+      return match;
+    }
+
+    /** @return Responses in turn, for calls that are not replayed in time */
+    Response nextResponse() {
+      return responses.get((int) (next.getAndIncrement() % responses.size()));
+    }
+  }
+
+  /** Stand-in id handed out by the server, or a fanned out copy of a recorded id */
+  private static class Alias {
+    final String original;
+    /** System.nanoTime() when the id was handed out, or -1 for a fanned out copy */
+    final long issuedNanos;
+    /** System.nanoTime() after which the id is forgotten; unused for a fanned out copy */
+    final long expiresNanos;
+
+    Alias(String original, long issuedNanos, long expiresNanos) {
+      this.original = original;
+      this.issuedNanos = issuedNanos;
+      this.expiresNanos = expiresNanos;
+    }
+  }
+
+  private final double timeScale;
+  private final int fanOut;
+  private final long startNanos = System.nanoTime();
+  private final Map<String, Timeline> timelines = new HashMap<>();
+  private final Map<String, Timeline> endpoints = new HashMap<>();
+  /** Recorded operation ids, with the offset of the response that returned them */
+  private final Map<String, Long> operations = new HashMap<>();
+  /** Offset of the last recorded exchange that refers to each recorded operation id */
+  private final Map<String, Long> operationEnds = new HashMap<>();
+  private final Map<String, Alias> aliases = new ConcurrentHashMap<>();
+  private final HttpsServer server;
+  private final ExecutorService handlers;
+  private final ScheduledExecutorService delayed;
+
+  /**
+   * Load a recording and start serving it on a random loopback port
+   *
+   * @param exchanges Recorded exchanges
+   * @param timeScale Speed-up of recorded time, at least 1
+   * @param fanOut Copies of every list element, at least 1
+   * @throws IOException
+   * @throws GeneralSecurityException if the stub certificate cannot be loaded
+   */
+  public ReplayServer(List<Recording.Exchange> exchanges, double timeScale, int fanOut)
+      throws IOException, GeneralSecurityException {
+    this(exchanges, timeScale, fanOut, 0);
+  }
+
+  /**
+   * @param exchanges Recorded exchanges
+   * @param timeScale Speed-up of recorded time, at least 1
+   * @param fanOut Copies of every list element, at least 1
+   * @param port Loopback port, 0 for a random one
+   * @throws IOException
+   * @throws GeneralSecurityException if the stub certificate cannot be loaded
+   */
+  public ReplayServer(
+      List<Recording.Exchange> exchanges, double timeScale, int fanOut, int port)
+      throws IOException, GeneralSecurityException {
+    this.timeScale = Math.max(1, timeScale);
+    this.fanOut = Math.max(1, fanOut);
+    load(exchanges);
+    this.server =
+        HttpsServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+    this.server.setHttpsConfigurator(new HttpsConfigurator(StubSddcManager.createSslContext()));
+    this.server.createContext("/", this::handle);
+    this.handlers = Executors.newFixedThreadPool(DEFAULT_HANDLER_THREADS);
+    this.delayed = Executors.newSingleThreadScheduledExecutor();
+    this.server.setExecutor(handlers);
+    this.server.start();
+    long sweepMillis = Math.max(1, ALIAS_RETENTION_MILLIS / 5);
+    this.delayed.scheduleWithFixedDelay(
+        this::expireAliases, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void load(List<Recording.Exchange> exchanges) {
+    for (Recording.Exchange exchange : exchanges) {
+      String body = fanOut(new String(exchange.getBody(), StandardCharsets.UTF_8));
+      Response response =
+          new Response(
+              exchange.getOffsetMillis(),
+              exchange.getLatencyMillis(),
+              exchange.getStatusCode(),
+              body);
+      String method = exchange.getMethod();
+      timelines
+          .computeIfAbsent(method + " " + exchange.getTarget(), key -> new Timeline())
+          .responses
+          .add(response);
+      endpoints
+          .computeIfAbsent(method + " " + endpoint(exchange.getTarget()), key -> new Timeline())
+          .responses
+          .add(response);
+      String id = method.equals("GET") ? null : topLevelId(body);
+      if (id != null) {
+        operations.putIfAbsent(id, exchange.getOffsetMillis());
+      }
+      for (String segment : exchange.getTarget().split("[/?]")) {
+        if (operations.containsKey(segment)) {
+          operationEnds.merge(segment, exchange.getOffsetMillis(), Math::max);
+        }
+      }
+    }
+  }
+
+  /** @return host:port to use as {@code sddcManagerIP} */
+  public String getAddress() {
+    return "127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  /**
+   * @return application.properties of the client pointed at this server, with the task journal
+   *     and record mode off and Basic authentication, since token calls are never recorded
+   */
+  public Properties clientProperties() {
+    Properties properties = Client.loadApplicationProperties();
+    properties.setProperty("sddcManagerIP", getAddress());
+    properties.setProperty("taskJournalPath", "");
+    properties.setProperty("recordPath", "");
+    properties.setProperty("authMode", "basic");
+    return properties;
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (InputStream body = exchange.getRequestBody()) {
+      body.transferTo(OutputStream.nullOutputStream());
+    }
+    String method = exchange.getRequestMethod();
+    String rawQuery = exchange.getRequestURI().getRawQuery();
+    String target =
+        exchange.getRequestURI().getRawPath() + (rawQuery == null ? "" : "?" + rawQuery);
+    String alias = null;
+    Alias resolved = null;
+    for (String segment : target.split("[/?]")) {
+      resolved = aliases.get(segment);
+      if (resolved != null) {
+        alias = segment;
+        target = target.replace(segment, resolved.original);
+        break;
+      }
+    }
+    Timeline timeline = timelines.get(method + " " + target);
+    Response response;
+    if (timeline != null) {
+      response =
+          method.equals("GET") ? timeline.at(recordedTime(resolved)) : timeline.nextResponse();
+    } else {
+      Timeline endpoint = endpoints.get(method + " " + endpoint(target));
+      response = endpoint == null ? null : endpoint.nextResponse();
+    }
+    if (response == null) {
+      respond(exchange, 404, NOT_RECORDED);
+      return;
+    }
+    String body = response.body;
+    if (alias != null) {
+      body = body.replace(resolved.original, alias);
+    }
+    if (!method.equals("GET")) {
+      String id = topLevelId(body);
+      if (id != null && operations.containsKey(id)) {
+        String issued = UUID.randomUUID().toString();
+        aliases.put(issued, issue(id));
+        body = body.replace(id, issued);
+      }
+    }
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    long delayMillis = (long) (response.latencyMillis / timeScale);
+    if (delayMillis == 0) {
+      respond(exchange, response.statusCode, bytes);
+    } else {
+      // The scheduler only times the response; it is written on the handler pool so that slow
+      // clients do not hold back every other delayed response
+      delayed.schedule(
+          () ->
+              handlers.execute(
+                  () -> {
+                    try {
+                      respond(exchange, response.statusCode, bytes);
+                    } catch (IOException e) {
+                      exchange.close();
+                    }
+                  }),
+          delayMillis,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * @param original Recorded operation id
+   * @return Alias handed out now, expiring once the replay of the operation has run past its last
+   *     recorded exchange for {@code ALIAS_RETENTION_MILLIS}
+   */
+  private Alias issue(String original) {
+    long now = System.nanoTime();
+    long recordedMillis = operationEnds.get(original) - operations.get(original);
+    long retainedMillis = (long) (recordedMillis / timeScale) + ALIAS_RETENTION_MILLIS;
+    return new Alias(original, now, now + TimeUnit.MILLISECONDS.toNanos(retainedMillis));
+  }
+
+  /** Forget handed out ids whose operation finished replaying a while ago */
+  private void expireAliases() {
+    long now = System.nanoTime();
+    aliases.values().removeIf(alias -> alias.issuedNanos >= 0 && now - alias.expiresNanos > 0);
+  }
+
+  /**
+   * @param alias Alias the request refers to, or null
+   * @return Point of the recording to replay: for an operation handed out by this server its
+   *     recorded start plus the scaled time since it was handed out, otherwise the scaled time
+   *     since the server started
+   */
+  private long recordedTime(Alias alias) {
+    if (alias == null || alias.issuedNanos < 0) {
+      return (long) (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) * timeScale);
+    }
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - alias.issuedNanos);
+    return operations.getOrDefault(alias.original, 0L) + (long) (elapsedMillis * timeScale);
+  }
+
+  /**
+   * Repeat every element of a list document {@code fanOut} times, suffixing the id, name and
+   * FQDN of the copies and registering the copied ids as aliases of the originals
+   *
+   * @param body
+   * @return Fanned out document, or the body itself if it is not a list document
+   */
+  private String fanOut(String body) {
+    if (fanOut == 1 || !body.startsWith("{") || !body.contains("\"elements\"")) {
+      return body;
+    }
+    JSONObject document;
+    try {
+      document = new JSONObject(body);
+    } catch (JSONException e) {
+      return body;
+    }
+    JSONArray elements = document.optJSONArray("elements");
+    if (elements == null) {
+      return body;
+    }
+    JSONArray copies = new JSONArray();
+    for (int copy = 0; copy < fanOut; copy++) {
+      for (int i = 0; i < elements.length(); i++) {
+        JSONObject element = elements.optJSONObject(i);
+        if (element == null || copy == 0) {
+          copies.put(elements.get(i));
+          continue;
+        }
+        JSONObject clone = new JSONObject(element.toString());
+        String suffix = "-" + copy;
+        String id = clone.optString("id", null);
+        if (id != null) {
+          clone.put("id", id + suffix);
+          aliases.put(id + suffix, new Alias(id, -1, -1));
+        }
+        if (clone.has("name")) {
+          clone.put("name", clone.optString("name") + suffix);
+        }
+        String fqdn = clone.optString("fqdn", null);
+        if (fqdn != null) {
+          int dot = fqdn.indexOf('.');
+          clone.put(
+              "fqdn",
+              dot < 0 ? fqdn + suffix : fqdn.substring(0, dot) + suffix + fqdn.substring(dot));
+        }
+        copies.put(clone);
+      }
+    }
+    document.put("elements", copies);
+    JSONObject page = document.optJSONObject("pageMetadata");
+    if (page != null) {
+      for (String field : new String[] {"pageSize", "totalElements"}) {
+        if (page.has(field)) {
+          page.put(field, page.optLong(field) * fanOut);
+        }
+      }
+    }
+    return document.toString();
+  }
+
+  /** @return "id" field of a JSON object document, or null */
+  private static String topLevelId(String body) {
+    if (!body.startsWith("{")) {
+      return null;
+    }
+    try {
+      return new JSONObject(body).optString("id", null);
+    } catch (JSONException e) {
+      return null;
+    }
+  }
+
+  /** @return Endpoint of a request target, e.g. /v1/tasks/{id} */
+  private static String endpoint(String target) {
+    int query = target.indexOf('?');
+    return ENDPOINTS.endpoint(query < 0 ? target : target.substring(0, query));
+  }
+
+  private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    handlers.shutdownNow();
+    delayed.shutdownNow();
+  }
+
+  /**
+   * Serve a recording until the process is stopped
+   *
+   * @param args recording [timeScale [fanOut [port]]]
+   * @throws Exception
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length == 0) {
+      System.err.println("Usage: ReplayServer <recording> [timeScale] [fanOut] [port]");
+      System.exit(1);
+    }
+    List<Recording.Exchange> exchanges = Recording.read(Paths.get(args[0]));
+    ReplayServer server =
+        new ReplayServer(
+            exchanges,
+            args.length > 1 ? Double.parseDouble(args[1]) : 1,
+            args.length > 2 ? Integer.parseInt(args[2]) : 1,
+            args.length > 3 ? Integer.parseInt(args[3]) : 0);
+    System.out.println(
+        "Replaying " + exchanges.size() + " exchanges on " + server.getAddress());
+  }
+}
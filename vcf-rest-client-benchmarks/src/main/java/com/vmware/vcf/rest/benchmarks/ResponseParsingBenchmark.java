@@ -0,0 +1,112 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.vcf.rest.examples.JsonElementStream;
+import com.vmware.vcf.rest.examples.model.JsonBinder;
+import com.vmware.vcf.rest.examples.model.LicenseKey;
+import com.vmware.vcf.rest.examples.model.Task;
+import com.vmware.vcf.rest.examples.model.Validation;
+
+/**
+ * Response handling without the network: a full org.json tree against the typed binders and the
+ * projected reads used by the list helpers and the task tracker's status checks. Run with {@code
+ * -prof gc} to compare allocation per document.
+ *
+ * @author VMware Inc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ResponseParsingBenchmark {
+
+  static final Set<String> TASK_STATUS_FIELDS = new HashSet<>(Arrays.asList("status", "subTasks"));
+  static final Set<String> LICENSE_FIELDS = new HashSet<>(Arrays.asList("id", "key"));
+
+  byte[] task;
+  byte[] licenseKeys;
+  byte[] validation;
+
+  @Setup
+  public void setUp() {
+    task =
+        StubSddcManager.task(
+                StubSddcManager.TASK_ID, "In Progress", StubSddcManager.DEFAULT_SUBTASK_COUNT)
+            .toString()
+            .getBytes(StandardCharsets.UTF_8);
+    licenseKeys = StubSddcManager.licenseKeys(StubSddcManager.DEFAULT_LICENSE_KEY_COUNT);
+    validation =
+        StubSddcManager.validation(
+            StubSddcManager.VALIDATION_ID, StubSddcManager.DEFAULT_VALIDATION_CHECK_COUNT);
+  }
+
+  @Benchmark
+  public String taskStatusTree() {
+    return new JSONObject(new String(task, StandardCharsets.UTF_8)).optString("status");
+  }
+
+  @Benchmark
+  public JSONObject taskStatusProjection() throws IOException {
+    return JsonElementStream.readFields(new ByteArrayInputStream(task), TASK_STATUS_FIELDS);
+  }
+
+  @Benchmark
+  public Task taskBinder() throws IOException {
+    return JsonBinder.readTask(task);
+  }
+
+  @Benchmark
+  public JSONObject licenseKeysTree() {
+    return new JSONObject(new String(licenseKeys, StandardCharsets.UTF_8));
+  }
+
+  @Benchmark
+  public JsonElementStream.Page licenseKeysProjectedPage() throws IOException {
+    return JsonElementStream.readPage(new ByteArrayInputStream(licenseKeys), LICENSE_FIELDS);
+  }
+
+  @Benchmark
+  public List<LicenseKey> licenseKeysBinder() throws IOException {
+    return JsonBinder.readLicenseKeys(licenseKeys);
+  }
+
+  @Benchmark
+  public boolean validationTree() {
+    JSONObject document = new JSONObject(new String(validation, StandardCharsets.UTF_8));
+    boolean successful = true;
+    for (Object check : document.getJSONArray("validationChecks")) {
+      if (!"SUCCEEDED".equals(((JSONObject) check).optString("resultStatus"))) {
+        successful = false;
+      }
+    }
+    return successful;
+  }
+
+  @Benchmark
+  public Validation validationBinder() throws IOException {
+    return JsonBinder.readValidation(validation);
+  }
+}
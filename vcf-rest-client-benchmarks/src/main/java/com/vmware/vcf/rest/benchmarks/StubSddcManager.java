@@ -0,0 +1,280 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import com.vmware.vcf.rest.examples.Client;
+
+/**
+ * In-process HTTPS stand-in for SDDC Manager. It listens on a random loopback port with a
+ * self-signed certificate and answers the endpoints used by the client with canned documents shaped
+ * like real SDDC Manager responses: a task list and a task with subtasks, a page of license keys,
+ * host and domain validations with their checks, and a domain list.
+ *
+ * <p>All documents are built once at startup so that the server adds as little as possible to
+ * the measured client cost.
+ *
+ * @author VMware Inc
+ */
+public class StubSddcManager implements AutoCloseable {
+
+  static String TASK_ID = "b7a0a9d8-3e8a-4d37-a0d1-6b3e2a1c0f11";
+  static String VALIDATION_ID = "4c2f6f77-1a0e-4f6b-9a52-0d8f5f8d3c21";
+  static int DEFAULT_TASK_COUNT = 50;
+  static int DEFAULT_SUBTASK_COUNT = 40;
+  static int DEFAULT_LICENSE_KEY_COUNT = 100;
+  static int DEFAULT_VALIDATION_CHECK_COUNT = 25;
+  static int DEFAULT_DOMAIN_COUNT = 10;
+  static int DEFAULT_HANDLER_THREADS = 32;
+
+  private static final String KEYSTORE = "stub-keystore.p12";
+  private static final char[] KEYSTORE_PASSWORD = "changeit".toCharArray();
+
+  static {
+    // Without TCP_NODELAY the JDK server's split header/body writes hit delayed ACKs, adding ~40ms
+    // to every response and hiding the client cost completely
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+  }
+
+  final byte[] taskList = taskList(DEFAULT_TASK_COUNT);
+  final byte[] task =
+      task(TASK_ID, "Successful", DEFAULT_SUBTASK_COUNT)
+          .toString()
+          .getBytes(StandardCharsets.UTF_8);
+  final byte[] licenseKeys = licenseKeys(DEFAULT_LICENSE_KEY_COUNT);
+  final byte[] validation = validation(VALIDATION_ID, DEFAULT_VALIDATION_CHECK_COUNT);
+  final byte[] domains = domains(DEFAULT_DOMAIN_COUNT);
+  final byte[] notFound =
+      new JSONObject()
+          .put("errorCode", "RESOURCE_NOT_FOUND")
+          .put("remediationMessage", "Check the resource id")
+          .toString()
+          .getBytes(StandardCharsets.UTF_8);
+
+  private final HttpsServer server;
+  private final ExecutorService handlers;
+
+  public StubSddcManager() throws IOException, GeneralSecurityException {
+    this(DEFAULT_HANDLER_THREADS);
+  }
+
+  /**
+   * Start the stub on a random loopback port
+   *
+   * @param handlerThreads Number of threads answering requests
+   * @throws IOException
+   * @throws GeneralSecurityException if the stub certificate cannot be loaded
+   */
+  public StubSddcManager(int handlerThreads) throws IOException, GeneralSecurityException {
+    this.server =
+        HttpsServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+    this.server.setHttpsConfigurator(new HttpsConfigurator(createSslContext()));
+    this.server.createContext("/", this::handle);
+    this.handlers = Executors.newFixedThreadPool(handlerThreads);
+    this.server.setExecutor(handlers);
+    this.server.start();
+  }
+
+  static SSLContext createSslContext() throws IOException, GeneralSecurityException {
+    KeyStore keyStore = KeyStore.getInstance("PKCS12");
+    try (InputStream in = StubSddcManager.class.getClassLoader().getResourceAsStream(KEYSTORE)) {
+      keyStore.load(in, KEYSTORE_PASSWORD);
+    }
+    KeyManagerFactory keyManagers =
+        KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    keyManagers.init(keyStore, KEYSTORE_PASSWORD);
+    SSLContext sslContext = SSLContext.getInstance("TLS");
+    sslContext.init(keyManagers.getKeyManagers(), null, null);
+    return sslContext;
+  }
+
+  /** @return host:port to use as {@code sddcManagerIP} */
+  public String getAddress() {
+    return "127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  /**
+   * @return application.properties of the client pointed at this stub, with the background
+   *     inventory refresh, the task journal and the endpoint rate limits disabled, the
+   *     concurrency limits raised out of the way and Basic authentication, since the stub has no
+   *     token API
+   */
+  public Properties clientProperties() {
+    Properties properties = Client.loadApplicationProperties();
+    properties.setProperty("sddcManagerIP", getAddress());
+    properties.setProperty("inventoryIndexRefreshSeconds", "0");
+    properties.setProperty("taskJournalPath", "");
+    properties.setProperty("authMode", "basic");
+    properties.setProperty("rateLimitPermitsPerSecond", "0");
+    properties.setProperty("concurrencyLimitInitial", "1024");
+    properties.setProperty("concurrencyLimitMax", "1024");
+    return properties;
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (InputStream body = exchange.getRequestBody()) {
+      body.transferTo(OutputStream.nullOutputStream());
+    }
+    String method = exchange.getRequestMethod();
+    String path = exchange.getRequestURI().getPath();
+    boolean get = method.equals("GET");
+    if (get && path.equals("/v1/tasks")) {
+      respond(exchange, 200, taskList);
+    } else if (get && path.startsWith("/v1/tasks/")) {
+      respond(exchange, 200, task);
+    } else if (get && path.startsWith("/v1/license-keys")) {
+      respond(exchange, 200, licenseKeys);
+    } else if (path.startsWith("/v1/hosts/validations")) {
+      respond(exchange, get ? 200 : 202, validation);
+    } else if (path.startsWith("/v1/domains/validations")) {
+      respond(exchange, 200, validation);
+    } else if (get && path.equals("/v1/domains")) {
+      respond(exchange, 200, domains);
+    } else if (method.equals("POST") && (path.equals("/v1/domains") || path.equals("/v1/hosts"))) {
+      respond(exchange, 202, task);
+    } else {
+      respond(exchange, 404, notFound);
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  static JSONObject task(String id, String status, int subTaskCount) {
+    JSONArray subTasks = new JSONArray();
+    for (int i = 0; i < subTaskCount; i++) {
+      subTasks.put(
+          new JSONObject()
+              .put("name", "Sub task " + i)
+              .put("description", "Configure step " + i + " of the workload domain")
+              .put("status", i < subTaskCount / 2 ? "SUCCESSFUL" : status)
+              .put("creationTimestamp", "2019-08-01T10:15:30.000Z")
+              .put("completionTimestamp", "2019-08-01T10:20:30.000Z")
+              .put("errors", new JSONArray()));
+    }
+    return new JSONObject()
+        .put("id", id)
+        .put("name", "Creating domain Workload-Domain-2")
+        .put("type", "DOMAIN_CREATION")
+        .put("status", status)
+        .put("creationTimestamp", "2019-08-01T10:15:30.000Z")
+        .put("completionTimestamp", "2019-08-01T11:15:30.000Z")
+        .put("subTasks", subTasks)
+        .put(
+            "resources",
+            new JSONArray()
+                .put(new JSONObject().put("resourceId", id).put("type", "Domain")));
+  }
+
+  static byte[] taskList(int count) {
+    JSONArray elements = new JSONArray();
+    for (int i = 0; i < count; i++) {
+      elements.put(task(String.format("task-%04d", i), "In Progress", 8));
+    }
+    return page(elements).getBytes(StandardCharsets.UTF_8);
+  }
+
+  static byte[] licenseKeys(int count) {
+    JSONArray elements = new JSONArray();
+    for (int i = 0; i < count; i++) {
+      elements.put(
+          new JSONObject()
+              .put("id", String.format("license-%04d", i))
+              .put("key", String.format("AAAAA-BBBBB-CCCCC-DDDDD-%05d", i))
+              .put("productType", i % 2 == 0 ? "VSAN" : "NSXV")
+              .put("description", "License key " + i)
+              .put("licenseKeyType", "PURCHASED")
+              .put(
+                  "licenseKeyUsage",
+                  new JSONObject()
+                      .put("total", 64)
+                      .put("remaining", 32)
+                      .put("used", 32)
+                      .put("licenseUnit", "CPU"))
+              .put("isUnlimited", false)
+              .put("licenseKeyValidity", new JSONObject().put("licenseKeyStatus", "ACTIVE")));
+    }
+    return page(elements).getBytes(StandardCharsets.UTF_8);
+  }
+
+  static byte[] validation(String id, int checkCount) {
+    JSONArray checks = new JSONArray();
+    for (int i = 0; i < checkCount; i++) {
+      checks.put(
+          new JSONObject()
+              .put("description", "Validating host esxi-" + i + ".vrack.vsphere.local")
+              .put("severity", "INFO")
+              .put("resultStatus", "SUCCEEDED"));
+    }
+    return new JSONObject()
+        .put("id", id)
+        .put("description", "Validating Host Commission Spec")
+        .put("executionStatus", "COMPLETED")
+        .put("resultStatus", "SUCCEEDED")
+        .put("validationChecks", checks)
+        .toString()
+        .getBytes(StandardCharsets.UTF_8);
+  }
+
+  static byte[] domains(int count) {
+    JSONArray elements = new JSONArray();
+    for (int i = 0; i < count; i++) {
+      elements.put(
+          new JSONObject()
+              .put("id", String.format("domain-%04d", i))
+              .put("name", "Workload-Domain-" + i)
+              .put("type", "VI")
+              .put("status", "ACTIVE")
+              .put(
+                  "vcenters",
+                  new JSONArray().put(new JSONObject().put("fqdn", "vcenter-" + i + ".vrack")))
+              .put(
+                  "clusters",
+                  new JSONArray().put(new JSONObject().put("id", "cluster-" + i))));
+    }
+    return page(elements).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String page(JSONArray elements) {
+    return new JSONObject()
+        .put("elements", elements)
+        .put(
+            "pageMetadata",
+            new JSONObject()
+                .put("pageNumber", 0)
+                .put("pageSize", elements.length())
+                .put("totalElements", elements.length())
+                .put("totalPages", 1))
+        .toString();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    handlers.shutdownNow();
+  }
+}
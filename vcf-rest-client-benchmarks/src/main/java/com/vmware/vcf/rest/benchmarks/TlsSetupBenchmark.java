@@ -0,0 +1,110 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.fluent.Request;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.vcf.rest.examples.Client;
+import com.vmware.vcf.rest.examples.RestResponse;
+
+/**
+ * Connection setup cost of a GET: on a pooled connection, on a new connection that resumes the TLS
+ * session cached by the client's shared SSLContext, and on a brand new client that has to do a
+ * full handshake.
+ *
+ * @author VMware Inc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TlsSetupBenchmark {
+
+  /** Stub server shared by all benchmarks of a trial */
+  @State(Scope.Benchmark)
+  public static class Server {
+    StubSddcManager stub;
+
+    @Setup
+    public void setUp() throws Exception {
+      stub = new StubSddcManager();
+    }
+
+    @TearDown
+    public void tearDown() {
+      stub.close();
+    }
+  }
+
+  /** Client reused across invocations */
+  @State(Scope.Thread)
+  public static class SharedClient {
+    Client client;
+    String taskUrl;
+
+    @Setup
+    public void setUp(Server server) {
+      client = new Client(server.stub.clientProperties());
+      taskUrl = client.getBaseUrl() + "/v1/tasks/" + StubSddcManager.TASK_ID;
+    }
+
+    /** Drop pooled connections so that the next call has to connect again */
+    void closeConnections() {
+      client.getConnectionManager().closeIdleConnections(0, TimeUnit.MILLISECONDS);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+      client.close();
+    }
+  }
+
+  /** Client created for a single invocation, so no TLS session can be resumed */
+  @State(Scope.Thread)
+  public static class FreshClient {
+    Client client;
+    String taskUrl;
+
+    @Setup(Level.Invocation)
+    public void setUp(Server server) {
+      client = new Client(server.stub.clientProperties());
+      taskUrl = client.getBaseUrl() + "/v1/tasks/" + StubSddcManager.TASK_ID;
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+      client.close();
+    }
+  }
+
+  @Benchmark
+  public RestResponse pooledConnection(SharedClient shared) throws Exception {
+    return shared.client.execute(Request.Get(shared.taskUrl));
+  }
+
+  @Benchmark
+  public RestResponse resumedSession(SharedClient shared) throws Exception {
+    shared.closeConnections();
+    return shared.client.execute(Request.Get(shared.taskUrl));
+  }
+
+  @Benchmark
+  public RestResponse fullHandshake(FreshClient fresh) throws Exception {
+    return fresh.client.execute(Request.Get(fresh.taskUrl));
+  }
+}
@@ -0,0 +1,129 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Additive increase, multiplicative decrease (AIMD) limit on the number of calls in flight. The
+ * limit grows by about one per round trip while calls succeed with the limit in use, shrinks by
+ * {@code latencyBackoff} when a call is much slower than usual and halves when the server throttles
+ * or a call fails without a response.
+ *
+ * <p>Waiting callers park on a {@link ReentrantLock} condition rather than a monitor so that
+ * virtual threads do not pin their carrier while they wait.
+ *
+ * @author VMware Inc
+ */
+public class AdaptiveConcurrencyLimit {
+
+  static double THROTTLE_BACKOFF = 0.5;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final double latencyBackoff;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition available = lock.newCondition();
+  private double limit;
+  private int inFlight;
+
+  /**
+   * @param initialLimit
+   * @param minLimit
+   * @param maxLimit
+   * @param latencyBackoff Factor applied to the limit on a slow call, between 0 and 1
+   */
+  public AdaptiveConcurrencyLimit(
+      int initialLimit, int minLimit, int maxLimit, double latencyBackoff) {
+    this.minLimit = Math.max(1, minLimit);
+    this.maxLimit = Math.max(this.minLimit, maxLimit);
+    this.latencyBackoff = latencyBackoff;
+    this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+  }
+
+  /**
+   * Wait until a call can be started within the current limit
+   *
+   * @throws InterruptedException
+   */
+  public void acquire() throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      while (inFlight >= (int) limit) {
+        available.await();
+      }
+      inFlight++;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** A call succeeded in normal time */
+  public void onSuccess() {
+    lock.lock();
+    try {
+      // Only grow when the limit is what holds calls back, not while the client is idle
+      if (inFlight * 2 >= (int) limit) {
+        limit = Math.min(maxLimit, limit + 1 / limit);
+      }
+      release();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** A call succeeded but took much longer than usual */
+  public void onSlow() {
+    decrease(latencyBackoff);
+  }
+
+  /** The server throttled the call, or it failed without a response */
+  public void onThrottled() {
+    decrease(THROTTLE_BACKOFF);
+  }
+
+  /** The call ended on the client side, e.g. aborted by its caller; the limit stays as it is */
+  public void onDropped() {
+    lock.lock();
+    try {
+      release();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void decrease(double factor) {
+    lock.lock();
+    try {
+      limit = Math.max(minLimit, limit * factor);
+      release();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void release() {
+    inFlight--;
+    available.signalAll();
+  }
+
+  /** @return Current limit */
+  public int getLimit() {
+    lock.lock();
+    try {
+      return (int) limit;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** @return Calls currently in flight */
+  public int getInFlight() {
+    lock.lock();
+    try {
+      return inFlight;
+    } finally {
+      lock.unlock();
+    }
+  }
+}
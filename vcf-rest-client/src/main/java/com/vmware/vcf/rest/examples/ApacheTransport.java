@@ -0,0 +1,40 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import java.io.IOException;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Blocking HTTP/1.1 transport on a pooled Apache HttpClient, one request per connection at a time
+ *
+ * @author VMware Inc
+ */
+public class ApacheTransport implements Transport {
+
+  private final CloseableHttpClient httpClient;
+
+  /** @param httpClient Pooled engine, closed with the transport */
+  public ApacheTransport(CloseableHttpClient httpClient) {
+    this.httpClient = httpClient;
+  }
+
+  @Override
+  public String getName() {
+    return "http1";
+  }
+
+  @Override
+  public CloseableHttpResponse execute(HttpUriRequest request, HttpContext context)
+      throws IOException {
+    return httpClient.execute(request, context);
+  }
+
+  @Override
+  public void close() throws IOException {
+    httpClient.close();
+  }
+}
@@ -0,0 +1,284 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.fluent.Request;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHeader;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.vmware.vcf.rest.examples.logging.Log;
+
+/**
+ * Authentication session shared by every call of a client. In token mode an access token is
+ * obtained from /v1/tokens on first use and refreshed in the background, with the refresh token,
+ * {@code refreshMarginMillis} before it expires. Callers only read an atomic reference, so threads
+ * never contend for the session once it is established.
+ *
+ * <p>Token calls are made without holding a lock. One exchange runs at a time; callers that need
+ * a token while it runs wait for its result instead of starting their own, and the result is
+ * published with a compare-and-set against the session it replaces.
+ *
+ * <p>The Basic header is computed once and used when token mode is off, when SDDC Manager has no
+ * token API, or while no token could be obtained; in the last case obtaining one is retried in
+ * the background.
+ *
+ * @author VMware Inc
+ */
+public class AuthSession implements AutoCloseable {
+
+  static String TOKENS_PATH = "/v1/tokens";
+  static String REFRESH_PATH = "/v1/tokens/access-token/refresh";
+  static long RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  private static final Log LOG = Log.getLog(AuthSession.class);
+
+  private final Client client;
+  private final String username;
+  private final String password;
+  private final Header basicHeader;
+  private final long refreshMarginMillis;
+  private final long defaultLifetimeMillis;
+  private final AtomicReference<Session> session = new AtomicReference<>();
+  private final AtomicReference<CompletableFuture<Session>> exchange = new AtomicReference<>();
+  private volatile boolean tokenMode;
+  private ScheduledExecutorService refresher;
+
+  /** Authorization header and the refresh token it was issued with, published together */
+  private static final class Session {
+    final Header header;
+    final String refreshTokenId;
+    /** Delay until the next refresh, negative if there is none */
+    final long refreshDelayMillis;
+
+    Session(Header header, String refreshTokenId, long refreshDelayMillis) {
+      this.header = header;
+      this.refreshTokenId = refreshTokenId;
+      this.refreshDelayMillis = refreshDelayMillis;
+    }
+  }
+
+  /**
+   * @param client
+   * @param username
+   * @param password
+   * @param tokenMode true to authenticate with access tokens, false for Basic authentication
+   * @param refreshMarginMillis Time before expiry at which a token is refreshed
+   * @param defaultLifetimeMillis Lifetime of a token whose expiry cannot be read from it
+   */
+  public AuthSession(
+      Client client,
+      String username,
+      String password,
+      boolean tokenMode,
+      long refreshMarginMillis,
+      long defaultLifetimeMillis) {
+    this.client = client;
+    this.username = username;
+    this.password = password;
+    this.basicHeader =
+        new BasicHeader(
+            "Authorization",
+            "Basic "
+                + Base64.getEncoder()
+                    .encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8)));
+    this.tokenMode = tokenMode;
+    this.refreshMarginMillis = refreshMarginMillis;
+    this.defaultLifetimeMillis = defaultLifetimeMillis;
+  }
+
+  /** @return Authorization header to send, obtaining the first token if needed */
+  public Header getAuthHeader() {
+    Session current = session.get();
+    if (current != null) {
+      return current.header;
+    }
+    if (!tokenMode) {
+      session.compareAndSet(null, new Session(basicHeader, null, -1));
+      return session.get().header;
+    }
+    return exchange(null, this::login).header;
+  }
+
+  /**
+   * Replace a header that SDDC Manager rejected with 401
+   *
+   * @param rejected Header the call was sent with
+   * @return true if a different header is now available and the call can be sent again
+   */
+  public boolean renew(Header rejected) {
+    Session current = session.get();
+    if (current == null || current.header != rejected) {
+      return true;
+    }
+    if (!tokenMode) {
+      return false;
+    }
+    return exchange(current, this::login).header != rejected;
+  }
+
+  /** @return true while calls authenticate with an access token */
+  public boolean isTokenAuthenticated() {
+    Session current = session.get();
+    return current != null && current.header != basicHeader;
+  }
+
+  /**
+   * Run a token call unless one is already running, in which case its result is awaited, and
+   * publish the new session if the session is still the one the call replaces
+   *
+   * @param expected Session the call replaces
+   * @param call Token call, made without holding a lock
+   * @return Session in effect after the call
+   */
+  private Session exchange(Session expected, Supplier<Session> call) {
+    CompletableFuture<Session> mine = new CompletableFuture<>();
+    CompletableFuture<Session> running = exchange.compareAndExchange(null, mine);
+    if (running != null) {
+      return running.join();
+    }
+    try {
+      Session next = call.get();
+      if (session.compareAndSet(expected, next)) {
+        if (next.refreshDelayMillis >= 0) {
+          schedule(next.refreshDelayMillis);
+        }
+      } else {
+        next = session.get();
+      }
+      mine.complete(next);
+      return next;
+    } catch (RuntimeException | Error e) {
+      mine.completeExceptionally(e);
+      throw e;
+    } finally {
+      exchange.set(null);
+    }
+  }
+
+  /** Obtain a new token pair with the credentials */
+  private Session login() {
+    try {
+      String credentials =
+          new JSONObject().put("username", username).put("password", password).toString();
+      RestResponse response =
+          client.sendUnauthenticated(
+              Request.Post(client.getBaseUrl() + TOKENS_PATH)
+                  .bodyString(credentials, ContentType.APPLICATION_JSON));
+      int statusCode = response.getStatusCode();
+      if (statusCode == HttpStatus.SC_NOT_FOUND
+          || statusCode == HttpStatus.SC_METHOD_NOT_ALLOWED
+          || statusCode == HttpStatus.SC_NOT_IMPLEMENTED) {
+        LOG.info("SDDC Manager has no token API, using Basic authentication");
+        tokenMode = false;
+        return new Session(basicHeader, null, -1);
+      }
+      if (statusCode >= HttpStatus.SC_MULTIPLE_CHOICES || !response.isJsonObject()) {
+        throw new IOException("Token request failed, response code : " + statusCode);
+      }
+      JSONObject tokens = response.getJson();
+      JSONObject refreshToken = tokens.optJSONObject("refreshToken");
+      return install(
+          tokens.getString("accessToken"),
+          refreshToken == null ? null : refreshToken.optString("id", null));
+    } catch (IOException | JSONException e) {
+      LOG.warn("Unable to obtain an access token, using Basic authentication : {}", e);
+      return new Session(basicHeader, null, RETRY_DELAY_MILLIS);
+    }
+  }
+
+  /** Background refresh: trade the refresh token for a new access token, or log in again */
+  private void refresh() {
+    Session current = session.get();
+    exchange(
+        current, () -> current == null ? login() : exchangeRefreshToken(current.refreshTokenId));
+  }
+
+  private Session exchangeRefreshToken(String refreshTokenId) {
+    if (refreshTokenId == null) {
+      return login();
+    }
+    try {
+      RestResponse response =
+          client.sendUnauthenticated(
+              Request.Patch(client.getBaseUrl() + REFRESH_PATH)
+                  .bodyString(JSONObject.quote(refreshTokenId), ContentType.APPLICATION_JSON));
+      String body = response.getBodyAsString().trim();
+      if (response.getStatusCode() >= HttpStatus.SC_MULTIPLE_CHOICES || body.isEmpty()) {
+        return login();
+      }
+      return install(
+          body.startsWith("\"") ? body.substring(1, body.length() - 1) : body, refreshTokenId);
+    } catch (IOException e) {
+      return login();
+    }
+  }
+
+  /**
+   * Build the session of a new access token. A token that already expired by the local clock,
+   * e.g. because of clock skew, is refreshed after {@link #RETRY_DELAY_MILLIS} rather than in a
+   * tight loop.
+   *
+   * @param accessToken
+   * @param refreshTokenId
+   * @return Session using the token
+   */
+  private Session install(String accessToken, String refreshTokenId) {
+    long lifetime = lifetimeMillis(accessToken);
+    long delay =
+        lifetime <= 0
+            ? RETRY_DELAY_MILLIS
+            : Math.max(lifetime - refreshMarginMillis, lifetime / 2);
+    return new Session(
+        new BasicHeader("Authorization", "Bearer " + accessToken), refreshTokenId, delay);
+  }
+
+  /**
+   * @param accessToken
+   * @return Time until the token expires, read from the exp claim of a JWT, or the default lifetime
+   */
+  long lifetimeMillis(String accessToken) {
+    String[] parts = accessToken.split("\\.");
+    if (parts.length == 3) {
+      try {
+        byte[] payload = Base64.getUrlDecoder().decode(parts[1]);
+        JSONObject claims = new JSONObject(new String(payload, StandardCharsets.UTF_8));
+        if (claims.has("exp")) {
+          return TimeUnit.SECONDS.toMillis(claims.getLong("exp")) - System.currentTimeMillis();
+        }
+      } catch (IllegalArgumentException | JSONException e) {
+        // Not a JWT after all
+      }
+    }
+    return defaultLifetimeMillis;
+  }
+
+  private synchronized void schedule(long delayMillis) {
+    if (refresher == null) {
+      refresher = Executors.newSingleThreadScheduledExecutor(TaskTracker.daemonThreads("auth"));
+    } else if (refresher.isShutdown()) {
+      return;
+    }
+    refresher.schedule(this::refresh, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+  }
+
+  /** Stop the background refresh */
+  @Override
+  public synchronized void close() {
+    if (refresher != null) {
+      refresher.shutdownNow();
+    }
+  }
+}
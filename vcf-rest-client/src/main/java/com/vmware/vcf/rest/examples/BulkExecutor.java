@@ -0,0 +1,69 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs one REST call per item with a bounded number of calls in flight. Items are pulled from the
+ * source only when a slot is free, so a large or lazily generated source is never materialised up
+ * front. Every item yields an {@link OperationResult}; failures do not stop the other items.
+ *
+ * @author VMware Inc
+ */
+public class BulkExecutor {
+
+  /** REST call made for one item */
+  @FunctionalInterface
+  public interface ItemCall<T> {
+    RestResponse call(T item) throws Exception;
+  }
+
+  private final ExecutorService executorService;
+  private final int concurrency;
+
+  public BulkExecutor(ExecutorService executorService, int concurrency) {
+    this.executorService = executorService;
+    this.concurrency = Math.max(1, concurrency);
+  }
+
+  /**
+   * Run the call for every item and wait for all of them
+   *
+   * @param items
+   * @param call
+   * @return Results in the order of the items
+   * @throws InterruptedException
+   */
+  public <T> List<OperationResult<T>> run(Iterator<T> items, ItemCall<T> call)
+      throws InterruptedException {
+    Semaphore slots = new Semaphore(concurrency);
+    List<CompletableFuture<OperationResult<T>>> futures = new ArrayList<>();
+    while (items.hasNext()) {
+      T item = items.next();
+      slots.acquire();
+      futures.add(
+          CompletableFuture.supplyAsync(() -> invoke(item, call), executorService)
+              .whenComplete((result, e) -> slots.release()));
+    }
+    List<OperationResult<T>> results = new ArrayList<>(futures.size());
+    for (CompletableFuture<OperationResult<T>> future : futures) {
+      results.add(future.join());
+    }
+    return results;
+  }
+
+  private static <T> OperationResult<T> invoke(T item, ItemCall<T> call) {
+    long start = System.nanoTime();
+    try {
+      RestResponse response = call.call(item);
+      return OperationResult.of(item, response, (System.nanoTime() - start) / 1_000_000);
+    } catch (Exception e) {
+      return OperationResult.failed(item, e, (System.nanoTime() - start) / 1_000_000);
+    }
+  }
+}
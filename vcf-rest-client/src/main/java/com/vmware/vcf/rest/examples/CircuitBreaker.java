@@ -0,0 +1,95 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import java.io.IOException;
+
+/**
+ * Stops calls to SDDC Manager while it is down. After {@code failureThreshold} consecutive
+ * failures, i.e. I/O errors or 502, 503 and 504 answers, the breaker opens and every call fails
+ * fast with a {@link CircuitBreakerOpenException}. Once {@code openMillis} have passed a single
+ * trial call is let through per period: a success closes the breaker, a failure keeps it open for
+ * another period.
+ *
+ * @author VMware Inc
+ */
+public class CircuitBreaker {
+
+  /** Breaker state */
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private final int failureThreshold;
+  private final long openMillis;
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private long openUntil;
+
+  /**
+   * @param failureThreshold Consecutive failures that open the breaker, 0 or less disables it
+   * @param openMillis Time between trial calls while open
+   */
+  public CircuitBreaker(int failureThreshold, long openMillis) {
+    this.failureThreshold = failureThreshold;
+    this.openMillis = openMillis;
+  }
+
+  /**
+   * Let a call through or fail it fast
+   *
+   * @throws CircuitBreakerOpenException if the breaker is open and this is not a trial call
+   */
+  public synchronized void acquire() throws CircuitBreakerOpenException {
+    if (state == State.CLOSED) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    if (now < openUntil) {
+      throw new CircuitBreakerOpenException(
+          "SDDC Manager is unavailable, circuit breaker is " + state, openUntil - now);
+    }
+    // Trial call; should its outcome never be reported, the next period allows another one
+    state = State.HALF_OPEN;
+    openUntil = now + openMillis;
+  }
+
+  /**
+   * @param statusCode Status of an answered call
+   */
+  public void onResponse(int statusCode) {
+    if (statusCode == 502 || statusCode == 503 || statusCode == 504) {
+      onFailure();
+    } else {
+      onSuccess();
+    }
+  }
+
+  /**
+   * @param error Error of a call that was not answered
+   */
+  public void onError(IOException error) {
+    if (!(error instanceof CircuitBreakerOpenException) && !RetryPolicy.isLocalFailure(error)) {
+      onFailure();
+    }
+  }
+
+  private synchronized void onSuccess() {
+    consecutiveFailures = 0;
+    state = State.CLOSED;
+  }
+
+  private synchronized void onFailure() {
+    consecutiveFailures++;
+    if (failureThreshold > 0
+        && (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold)) {
+      state = State.OPEN;
+      openUntil = System.currentTimeMillis() + openMillis;
+    }
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+}
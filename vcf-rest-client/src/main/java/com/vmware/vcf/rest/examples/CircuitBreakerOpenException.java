@@ -0,0 +1,29 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a call while the {@link CircuitBreaker} considers SDDC Manager down
+ *
+ * @author VMware Inc
+ */
+public class CircuitBreakerOpenException extends IOException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final long retryAfterMillis;
+
+  /**
+   * @param message
+   * @param retryAfterMillis Time until the breaker lets a trial call through
+   */
+  public CircuitBreakerOpenException(String message, long retryAfterMillis) {
+    super(message);
+    this.retryAfterMillis = retryAfterMillis;
+  }
+
+  public long getRetryAfterMillis() {
+    return retryAfterMillis;
+  }
+}
@@ -1,106 +1,1299 @@
 /** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
 package com.vmware.vcf.rest.examples;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 import javax.net.ssl.SSLContext;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.TeeInputStream;
 import org.apache.http.Header;
-import org.apache.http.HttpResponse;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpStatus;
+import org.apache.http.RequestLine;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.fluent.Executor;
 import org.apache.http.client.fluent.Request;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
-import org.apache.http.message.BasicHeader;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicLineParser;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.ssl.SSLContextBuilder;
+import org.apache.http.util.EntityUtils;
 import org.json.JSONObject;
 
+import com.vmware.vcf.rest.examples.instrumentation.ClientInstrumentation;
+import com.vmware.vcf.rest.examples.instrumentation.Tracer;
+import com.vmware.vcf.rest.examples.logging.Level;
+import com.vmware.vcf.rest.examples.logging.Log;
+
 /**
  * REST API client class for VMware Cloud Foundation SDDC Manager
  *
+ * <p>A single pooled HTTP engine is created per client and shared by every call, so TLS sessions
+ * and keep-alive connections are reused. Close the client to release the pool. The engine sits
+ * behind a {@link Transport}: {@code httpTransport=http2} swaps it for the JDK HTTP/2 client,
+ * which multiplexes all calls over one connection.
+ *
+ * <p>Every call passes the {@link EndpointLimiter} of its endpoint family first, which paces calls
+ * and adapts the number in flight to how SDDC Manager copes with them. Transient failures are
+ * retried according to the {@link RetryPolicy}, and a {@link CircuitBreaker} fails calls fast while
+ * SDDC Manager is down.
+ *
  * @author VMware Inc
  */
-public class Client {
+public class Client implements AutoCloseable {
+
+  static int DEFAULT_MAX_TOTAL_CONNECTIONS = 20;
+  static int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 10;
+  static int DEFAULT_KEEP_ALIVE_SECONDS = 60;
+  static int DEFAULT_IDLE_CONNECTION_EVICT_SECONDS = 30;
+  static int DEFAULT_VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+  static int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+  static int DEFAULT_SOCKET_TIMEOUT_MILLIS = 120000;
+  static int DEFAULT_PAGE_SIZE = 100;
+  static int DEFAULT_PAGE_PREFETCH_COUNT = 2;
+  static int DEFAULT_BULK_CONCURRENCY = 8;
+  static int DEFAULT_RESPONSE_CACHE_MAX_ENTRIES = 256;
+  static int DEFAULT_RESPONSE_CACHE_TTL_SECONDS = 30;
+  static String DEFAULT_RESPONSE_CACHE_PATHS = "/v1/license-keys,/v1/hosts,/v1/domains";
+  static String DEFAULT_RESPONSE_CACHE_EXCLUDED_PATHS =
+      "/v1/hosts/validations,/v1/domains/validations";
+  static int DEFAULT_RATE_LIMIT_PERMITS_PER_SECOND = 20;
+  static int DEFAULT_RATE_LIMIT_BURST = 20;
+  static int DEFAULT_CONCURRENCY_LIMIT_INITIAL = 4;
+  static int DEFAULT_CONCURRENCY_LIMIT_MIN = 1;
+  static int DEFAULT_CONCURRENCY_LIMIT_MAX = 10;
+  static double DEFAULT_CONCURRENCY_LATENCY_TOLERANCE = 3;
+  static double DEFAULT_CONCURRENCY_LATENCY_BACKOFF = 0.9;
+  static int DEFAULT_RETRY_MAX_ATTEMPTS = 4;
+  static int DEFAULT_RETRY_INITIAL_BACKOFF_MILLIS = 1000;
+  static int DEFAULT_RETRY_MAX_BACKOFF_MILLIS = 30000;
+  static double DEFAULT_RETRY_BUDGET_RATIO = 0.2;
+  static int DEFAULT_RETRY_BUDGET_MIN_RETRIES = 10;
+  static int DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD = 5;
+  static int DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS = 30;
+  static int DEFAULT_TASK_JOURNAL_FLUSH_MILLIS = 200;
+  static int DEFAULT_TASK_JOURNAL_RETENTION_DAYS = 30;
+  static int DEFAULT_AUTH_TOKEN_REFRESH_MARGIN_SECONDS = 60;
+  static int DEFAULT_AUTH_TOKEN_LIFETIME_SECONDS = 3600;
+  static int DEFAULT_LOG_MAX_ARGUMENT_LENGTH = 2000;
+  static int DEFAULT_LOG_BUFFER_SIZE = 8192;
+
+  private static final Log LOG = Log.getLog(Client.class);
+
+  private static final Method VIRTUAL_THREAD_EXECUTOR_FACTORY = findVirtualThreadExecutorFactory();
 
   Properties properties = new Properties();
   String baseUrl;
 
+  private final ClientInstrumentation instrumentation = new ClientInstrumentation();
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final Transport transport;
+  private final Executor executor;
+  private final ResponseCache responseCache;
+  private final Map<String, EndpointLimiter> limiters = new HashMap<>();
+  private final RetryPolicy retryPolicy;
+  private final CircuitBreaker circuitBreaker;
+  private final AuthSession authSession;
+  private final Recording recording;
+  private TaskTracker taskTracker;
+  private ExecutorService executorService;
+  private InventoryIndex inventoryIndex;
+  private TaskJournal taskJournal;
+  private boolean taskJournalOpened;
+
   public Client() {
+    this(loadApplicationProperties());
+  }
+
+  /**
+   * Create a client from explicit settings instead of application.properties, e.g. to point it at
+   * a stub server
+   *
+   * @param properties Settings with the same keys as application.properties
+   */
+  public Client(Properties properties) {
+    this(properties, null);
+  }
+
+  /**
+   * Create a client on a custom transport
+   *
+   * @param properties Settings with the same keys as application.properties
+   * @param transport Transport to send every call over, closed with the client, or null for the
+   *     one selected by {@code httpTransport}
+   */
+  public Client(Properties properties, Transport transport) {
     super();
+    this.properties.putAll(properties);
+    Log.configure(
+        Level.parse(properties.getProperty("logLevel"), Level.INFO),
+        getIntProperty("logMaxArgumentLength", DEFAULT_LOG_MAX_ARGUMENT_LENGTH),
+        getIntProperty("logBufferSize", DEFAULT_LOG_BUFFER_SIZE));
+    this.baseUrl = "https://" + properties.getProperty("sddcManagerIP");
+    String transportName = properties.getProperty("httpTransport", "http1").trim();
+    boolean pooled = transport == null && !"http2".equalsIgnoreCase(transportName);
+    this.connectionManager = pooled ? createConnectionManager() : null;
+    this.instrumentation.bindPool(connectionManager);
+    RequestConfig requestConfig = createRequestConfig();
+    this.transport =
+        transport != null
+            ? transport
+            : pooled
+                ? new ApacheTransport(createHttpClient(connectionManager, requestConfig))
+                : new Http2Transport(
+                    getIntProperty("httpConnectTimeoutMillis", DEFAULT_CONNECT_TIMEOUT_MILLIS),
+                    getIntProperty("httpSocketTimeoutMillis", DEFAULT_SOCKET_TIMEOUT_MILLIS),
+                    instrumentation);
+    this.executor = Executor.newInstance(TransportHttpClient.create(this.transport, requestConfig));
+    this.responseCache =
+        new ResponseCache(
+            getIntProperty("responseCacheMaxEntries", DEFAULT_RESPONSE_CACHE_MAX_ENTRIES),
+            TimeUnit.SECONDS.toMillis(
+                getIntProperty("responseCacheTtlSeconds", DEFAULT_RESPONSE_CACHE_TTL_SECONDS)),
+            getListProperty("responseCachePaths", DEFAULT_RESPONSE_CACHE_PATHS),
+            getListProperty(
+                "responseCacheExcludedPaths", DEFAULT_RESPONSE_CACHE_EXCLUDED_PATHS));
+    for (String family : EndpointLimiter.FAMILIES) {
+      limiters.put(family, createLimiter(family));
+    }
+    limiters.put(EndpointLimiter.OTHER, createLimiter(EndpointLimiter.OTHER));
+    this.retryPolicy =
+        new RetryPolicy(
+            getIntProperty("retryMaxAttempts", DEFAULT_RETRY_MAX_ATTEMPTS),
+            getIntProperty("retryInitialBackoffMillis", DEFAULT_RETRY_INITIAL_BACKOFF_MILLIS),
+            getIntProperty("retryMaxBackoffMillis", DEFAULT_RETRY_MAX_BACKOFF_MILLIS),
+            getDoubleProperty("retryBudgetRatio", DEFAULT_RETRY_BUDGET_RATIO),
+            getIntProperty("retryBudgetMinRetries", DEFAULT_RETRY_BUDGET_MIN_RETRIES));
+    this.circuitBreaker =
+        new CircuitBreaker(
+            getIntProperty(
+                "circuitBreakerFailureThreshold", DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD),
+            TimeUnit.SECONDS.toMillis(
+                getIntProperty("circuitBreakerOpenSeconds", DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS)));
+    this.authSession =
+        new AuthSession(
+            this,
+            properties.getProperty("restApiUsername"),
+            properties.getProperty("restApiPassword"),
+            "token".equalsIgnoreCase(properties.getProperty("authMode", "token")),
+            TimeUnit.SECONDS.toMillis(
+                getIntProperty(
+                    "authTokenRefreshMarginSeconds", DEFAULT_AUTH_TOKEN_REFRESH_MARGIN_SECONDS)),
+            TimeUnit.SECONDS.toMillis(
+                getIntProperty("authTokenLifetimeSeconds", DEFAULT_AUTH_TOKEN_LIFETIME_SECONDS)));
+    this.recording = openRecording(properties.getProperty("recordPath", "").trim());
+  }
+
+  private static Recording openRecording(String path) {
+    if (path.isEmpty()) {
+      return null;
+    }
+    try {
+      LOG.info("Recording SDDC Manager exchanges to {}", path);
+      return new Recording(Paths.get(path));
+    } catch (IOException e) {
+      LOG.warn("Unable to open recording {} : {}", path, e);
+      return null;
+    }
+  }
+
+  /** @return Settings read from application.properties on the classpath */
+  public static Properties loadApplicationProperties() {
+    Properties properties = new Properties();
     try {
       properties.load(ClassLoader.getSystemResourceAsStream("application.properties"));
     } catch (IOException e) {
-      e.printStackTrace();
+      LOG.error("Unable to load application.properties", e);
     }
-    this.baseUrl = "https://" + properties.getProperty("sddcManagerIP");
+    return properties;
   }
 
   public String getBaseUrl() {
     return baseUrl;
   }
 
-  /** @return SDDC Manager Basic Authentication Header */
+  /**
+   * @return SDDC Manager Authorization header of the shared session: a bearer access token, or
+   *     the precomputed Basic header when tokens are off or unavailable
+   */
   public Header getAuthHeader() {
-    String headerValue =
-        "Basic "
-            + java.util.Base64.getEncoder()
-                .encodeToString(
-                    (properties.getProperty("restApiUsername")
-                            + ":"
-                            + properties.getProperty("restApiPassword"))
-                        .getBytes());
-    return new BasicHeader("Authorization", headerValue);
+    return authSession.getAuthHeader();
+  }
+
+  /** @return Authentication session shared by every call */
+  public AuthSession getAuthSession() {
+    return authSession;
+  }
+
+  /**
+   * @return Connection pool backing this client, exposed for pool statistics, or null if the
+   *     transport is not the pooled HTTP/1.1 engine
+   */
+  public PoolingHttpClientConnectionManager getConnectionManager() {
+    return connectionManager;
+  }
+
+  /** @return Transport every call of this client is sent over */
+  public Transport getTransport() {
+    return transport;
+  }
+
+  /**
+   * @return Metrics and tracing hooks of this client. Install a registry or tracer on it to
+   *     collect them; both are no-ops by default.
+   */
+  public ClientInstrumentation getInstrumentation() {
+    return instrumentation;
+  }
+
+  /**
+   * @return Recording of this client's exchanges at {@code recordPath}, or null if record mode is
+   *     off
+   */
+  public Recording getRecording() {
+    return recording;
+  }
+
+  /**
+   * @return Journal of submitted operations at {@code taskJournalPath}, opened and replayed on
+   *     first use, or null if no path is configured or the journal cannot be opened
+   */
+  public synchronized TaskJournal getTaskJournal() {
+    if (!taskJournalOpened) {
+      taskJournalOpened = true;
+      String path = properties.getProperty("taskJournalPath", "").trim();
+      if (!path.isEmpty()) {
+        try {
+          taskJournal =
+              new TaskJournal(
+                  Paths.get(path),
+                  getIntProperty("taskJournalFlushMillis", DEFAULT_TASK_JOURNAL_FLUSH_MILLIS),
+                  TimeUnit.DAYS.toMillis(
+                      getIntProperty(
+                          "taskJournalRetentionDays", DEFAULT_TASK_JOURNAL_RETENTION_DAYS)));
+        } catch (IOException e) {
+          LOG.warn("Unable to open task journal {} : {}", path, e);
+        }
+      }
+    }
+    return taskJournal;
+  }
+
+  /**
+   * Look up the task started by an earlier identical POST in the task journal, so that a restarted
+   * workflow reattaches to it instead of submitting it again
+   *
+   * @param path Endpoint, e.g. /v1/domains
+   * @param spec Request body
+   * @return Id of the task if it is still in progress, otherwise null
+   */
+  public String findSubmittedTask(String path, String spec) {
+    TaskJournal journal = getTaskJournal();
+    TaskJournal.Entry entry =
+        journal == null
+            ? null
+            : journal.findSubmitted(TaskTracker.Kind.TASK, TaskJournal.hash(path, spec));
+    if (entry != null) {
+      LOG.info("Task {} was already submitted to {}, reattaching", entry.getId(), path);
+    }
+    return entry == null ? null : entry.getId();
+  }
+
+  /**
+   * Record in the task journal that a POST started a task
+   *
+   * @param path Endpoint, e.g. /v1/domains
+   * @param spec Request body
+   * @param taskId
+   */
+  public void recordSubmittedTask(String path, String spec, String taskId) {
+    TaskJournal journal = getTaskJournal();
+    if (journal != null) {
+      journal.submitted(TaskTracker.Kind.TASK, TaskJournal.hash(path, spec), taskId);
+    }
+  }
+
+  /**
+   * @return Shared tracker for long running tasks and validations, created on first use. Operations
+   *     left unfinished in the task journal by an earlier run are tracked again right away.
+   */
+  public synchronized TaskTracker getTaskTracker() {
+    if (taskTracker == null) {
+      taskTracker = new TaskTracker(this);
+    }
+    return taskTracker;
+  }
+
+  /**
+   * @param concurrency Maximum number of calls in flight
+   * @return Bulk executor running on the shared client executor and connection pool
+   */
+  public BulkExecutor newBulkExecutor(int concurrency) {
+    return new BulkExecutor(getExecutorService(), concurrency);
+  }
+
+  /** @return Bulk executor limited to the configured {@code bulkConcurrency} */
+  public BulkExecutor newBulkExecutor() {
+    return newBulkExecutor(getIntProperty("bulkConcurrency", DEFAULT_BULK_CONCURRENCY));
+  }
+
+  /** @return Shared license key and host FQDN lookup index, created on first use */
+  public synchronized InventoryIndex getInventoryIndex() {
+    if (inventoryIndex == null) {
+      inventoryIndex = new InventoryIndex(this);
+    }
+    return inventoryIndex;
   }
 
   /**
-   * Execute a REST call on SDDC Manager
+   * @return Inventory index if one was created, otherwise null. Callers that only keep the index up
+   *     to date use this, so that nothing is loaded for clients that never look anything up.
+   */
+  synchronized InventoryIndex getInventoryIndexIfCreated() {
+    return inventoryIndex;
+  }
+
+  /**
+   * @param family Endpoint family, e.g. hosts
+   * @return Rate and concurrency limiter of the family, or null if the family is unknown
+   */
+  public EndpointLimiter getEndpointLimiter(String family) {
+    return limiters.get(family);
+  }
+
+  /** @return Retry policy applied to every call */
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  /** @return Circuit breaker guarding every call */
+  public CircuitBreaker getCircuitBreaker() {
+    return circuitBreaker;
+  }
+
+  /**
+   * Build the limiter of an endpoint family. Every setting can be overridden per family by
+   * suffixing its name with the family, e.g. {@code rateLimitPermitsPerSecond.tasks}.
+   *
+   * @param family
+   * @return Endpoint limiter
+   */
+  private EndpointLimiter createLimiter(String family) {
+    TokenBucket rateLimiter =
+        new TokenBucket(
+            getFamilyProperty(
+                "rateLimitPermitsPerSecond", family, DEFAULT_RATE_LIMIT_PERMITS_PER_SECOND),
+            (int) getFamilyProperty("rateLimitBurst", family, DEFAULT_RATE_LIMIT_BURST));
+    AdaptiveConcurrencyLimit concurrencyLimit =
+        new AdaptiveConcurrencyLimit(
+            (int)
+                getFamilyProperty(
+                    "concurrencyLimitInitial", family, DEFAULT_CONCURRENCY_LIMIT_INITIAL),
+            (int) getFamilyProperty("concurrencyLimitMin", family, DEFAULT_CONCURRENCY_LIMIT_MIN),
+            (int) getFamilyProperty("concurrencyLimitMax", family, DEFAULT_CONCURRENCY_LIMIT_MAX),
+            getFamilyProperty(
+                "concurrencyLatencyBackoff", family, DEFAULT_CONCURRENCY_LATENCY_BACKOFF));
+    EndpointLimiter limiter =
+        new EndpointLimiter(
+            family,
+            rateLimiter,
+            concurrencyLimit,
+            getFamilyProperty(
+                "concurrencyLatencyTolerance", family, DEFAULT_CONCURRENCY_LATENCY_TOLERANCE));
+    instrumentation.bindLimiter(
+        family,
+        concurrencyLimit::getLimit,
+        concurrencyLimit::getInFlight,
+        rateLimiter::getAvailableTokens);
+    return limiter;
+  }
+
+  /** @return Sum of the maximum concurrency limits of all endpoint families */
+  private int sumOfConcurrencyLimits() {
+    int sum =
+        (int)
+            getFamilyProperty(
+                "concurrencyLimitMax", EndpointLimiter.OTHER, DEFAULT_CONCURRENCY_LIMIT_MAX);
+    for (String family : EndpointLimiter.FAMILIES) {
+      sum += (int) getFamilyProperty("concurrencyLimitMax", family, DEFAULT_CONCURRENCY_LIMIT_MAX);
+    }
+    return sum;
+  }
+
+  /**
+   * Build the connection pool. A single SSLContext is shared by all connections so that the JSSE
+   * session cache can resume TLS sessions instead of doing a full handshake per connection. The
+   * per-route limit is raised to at least the sum of the family concurrency limits.
+   *
+   * @return Pooling connection manager
+   */
+  private PoolingHttpClientConnectionManager createConnectionManager() {
+    final SSLContext sslContext;
+    try {
+      sslContext =
+          new SSLContextBuilder()
+              .loadTrustMaterial(null, (x509CertChain, authType) -> true)
+              .build();
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Unable to initialise SSL context", e);
+    }
+    // Timed so that connection and TLS setup can be told apart from SDDC Manager response time
+    SSLConnectionSocketFactory sslSocketFactory =
+        new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE) {
+          @Override
+          public Socket connectSocket(
+              int connectTimeout,
+              Socket socket,
+              HttpHost host,
+              InetSocketAddress remoteAddress,
+              InetSocketAddress localAddress,
+              HttpContext context)
+              throws IOException {
+            long start = System.nanoTime();
+            Socket connected =
+                super.connectSocket(
+                    connectTimeout, socket, host, remoteAddress, localAddress, context);
+            instrumentation.connectionOpened(System.nanoTime() - start);
+            return connected;
+          }
+
+          @Override
+          public Socket createLayeredSocket(
+              Socket socket, String target, int port, HttpContext context) throws IOException {
+            long start = System.nanoTime();
+            Socket layered = super.createLayeredSocket(socket, target, port, context);
+            instrumentation.tlsHandshake(System.nanoTime() - start);
+            return layered;
+          }
+        };
+    PoolingHttpClientConnectionManager manager =
+        new PoolingHttpClientConnectionManager(
+            RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("https", sslSocketFactory)
+                .build());
+    // Every family may have up to its concurrency limit in flight against the one SDDC Manager
+    // route, so a smaller pool would make requests queue for a connection the limiter granted
+    int perRoute =
+        Math.max(
+            getIntProperty("httpMaxConnectionsPerRoute", DEFAULT_MAX_CONNECTIONS_PER_ROUTE),
+            sumOfConcurrencyLimits());
+    manager.setMaxTotal(
+        Math.max(
+            getIntProperty("httpMaxTotalConnections", DEFAULT_MAX_TOTAL_CONNECTIONS), perRoute));
+    manager.setDefaultMaxPerRoute(perRoute);
+    manager.setValidateAfterInactivity(DEFAULT_VALIDATE_AFTER_INACTIVITY_MILLIS);
+    return manager;
+  }
+
+  /** @return Default connect, lease and socket timeouts of every request */
+  private RequestConfig createRequestConfig() {
+    return RequestConfig.custom()
+        .setConnectTimeout(
+            getIntProperty("httpConnectTimeoutMillis", DEFAULT_CONNECT_TIMEOUT_MILLIS))
+        .setConnectionRequestTimeout(
+            getIntProperty("httpConnectTimeoutMillis", DEFAULT_CONNECT_TIMEOUT_MILLIS))
+        .setSocketTimeout(getIntProperty("httpSocketTimeoutMillis", DEFAULT_SOCKET_TIMEOUT_MILLIS))
+        .build();
+  }
+
+  /**
+   * Build the shared HTTP client on top of the given pool
+   *
+   * @param manager
+   * @param requestConfig
+   * @return HTTP client
+   */
+  private CloseableHttpClient createHttpClient(
+      PoolingHttpClientConnectionManager manager, RequestConfig requestConfig) {
+    final long keepAliveMillis =
+        TimeUnit.SECONDS.toMillis(
+            getIntProperty("httpKeepAliveSeconds", DEFAULT_KEEP_ALIVE_SECONDS));
+    ConnectionKeepAliveStrategy keepAliveStrategy =
+        (response, context) -> {
+          long serverKeepAlive =
+              DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+          return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAliveMillis) : keepAliveMillis;
+        };
+    HttpRequestInterceptor requestSizeRecorder =
+        (request, context) -> {
+          if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity != null && entity.getContentLength() > 0) {
+              instrumentation.bytesSent(
+                  instrumentation.endpoint(URI.create(request.getRequestLine().getUri()).getPath()),
+                  entity.getContentLength());
+            }
+          }
+        };
+    return HttpClients.custom()
+        .setConnectionManager(manager)
+        .addInterceptorLast(requestSizeRecorder)
+        .setKeepAliveStrategy(keepAliveStrategy)
+        .setDefaultRequestConfig(requestConfig)
+        // Retries are decided by the RetryPolicy of the client, which knows what is safe to repeat
+        .disableAutomaticRetries()
+        // Pooled connections are not bound to a user token, so any idle connection can be leased
+        .disableConnectionState()
+        .evictExpiredConnections()
+        .evictIdleConnections(
+            getIntProperty(
+                "httpIdleConnectionEvictSeconds", DEFAULT_IDLE_CONNECTION_EVICT_SECONDS),
+            TimeUnit.SECONDS)
+        .build();
+  }
+
+  /**
+   * Read an integer setting from application.properties
+   *
+   * @param name
+   * @param defaultValue
+   * @return Property value or the default when unset
+   */
+  int getIntProperty(String name, int defaultValue) {
+    String value = properties.getProperty(name);
+    return value == null || value.trim().isEmpty() ? defaultValue : Integer.parseInt(value.trim());
+  }
+
+  /**
+   * Read a decimal setting from application.properties
+   *
+   * @param name
+   * @param defaultValue
+   * @return Property value or the default when unset
+   */
+  double getDoubleProperty(String name, double defaultValue) {
+    String value = properties.getProperty(name);
+    return value == null || value.trim().isEmpty()
+        ? defaultValue
+        : Double.parseDouble(value.trim());
+  }
+
+  /**
+   * Read a numeric setting that can be overridden per endpoint family
+   *
+   * @param name
+   * @param family
+   * @param defaultValue
+   * @return Value of name.family, else of name, else the default
+   */
+  double getFamilyProperty(String name, String family, double defaultValue) {
+    String familyName = name + "." + family;
+    return properties.getProperty(familyName) == null
+        ? getDoubleProperty(name, defaultValue)
+        : getDoubleProperty(familyName, defaultValue);
+  }
+
+  /**
+   * Read a comma separated list setting from application.properties
+   *
+   * @param name
+   * @param defaultValue
+   * @return Property values, or the default values when unset
+   */
+  List<String> getListProperty(String name, String defaultValue) {
+    String value = properties.getProperty(name, defaultValue).trim();
+    return value.isEmpty() ? Collections.emptyList() : Arrays.asList(value.split("\\s*,\\s*"));
+  }
+
+  /**
+   * Execute a REST call on SDDC Manager. The response entity is read once into a buffered {@link
+   * RestResponse} and the connection is returned to the pool. GETs on cacheable paths are served
+   * from the response cache; POST, PUT, PATCH and DELETE calls invalidate the cached entries of the
+   * resource family they touch.
    *
    * @param request
-   * @return Response String
+   * @return Buffered response
    * @throws KeyManagementException
    * @throws NoSuchAlgorithmException
    * @throws KeyStoreException
    * @throws ClientProtocolException
    * @throws IOException
    */
-  public HttpResponse execute(Request request)
+  public RestResponse execute(Request request)
       throws KeyManagementException, NoSuchAlgorithmException, KeyStoreException, IOException {
-    final SSLContext sslContext =
-        new SSLContextBuilder().loadTrustMaterial(null, (x509CertChain, authType) -> true).build();
-    CloseableHttpClient httpClient =
-        HttpClients.custom()
-            .setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE)
-            .setSSLContext(sslContext)
-            .build();
-    HttpResponse response =
-        Executor.newInstance(httpClient)
-            .execute(request.addHeader(getAuthHeader()))
-            .returnResponse();
-    System.out.println(
-        "Request - " + request + " , response code : " + response.getStatusLine().getStatusCode());
-    String responseContent =
-        IOUtils.toString(response.getEntity().getContent(), Charset.defaultCharset());
-    if (responseContent.contains("errorCode")) {
-      JSONObject responseJson = new JSONObject(responseContent);
-      StringBuilder message = new StringBuilder();
-      message.append(
-          responseJson.has("errorCode")
-              ? "Error Code : " + responseJson.getString("errorCode")
-              : "");
-      message.append(
-          responseJson.has("remediationMessage")
-              ? " , Remediation Message : " + responseJson.getString("remediationMessage")
-              : "");
-      System.out.println(message);
+    RequestLine requestLine = BasicLineParser.parseRequestLine(request.toString(), null);
+    String method = requestLine.getMethod();
+    URI uri = URI.create(requestLine.getUri());
+    if (method.equals("GET") && responseCache.isCacheable(uri.getRawPath())) {
+      return executeCached(request, uri);
+    }
+    RestResponse response = send(request, method, uri, true, true);
+    if (!method.equals("GET") && !method.equals("HEAD")) {
+      responseCache.invalidateFamily(uri.getRawPath());
+    }
+    return response;
+  }
+
+  /**
+   * Serve a GET from the response cache, revalidating stale entries with a conditional request
+   *
+   * @param request
+   * @param uri
+   * @return Cached or fresh response
+   * @throws IOException
+   */
+  private RestResponse executeCached(Request request, URI uri) throws IOException {
+    String key = target(uri);
+    ResponseCache.Entry entry = responseCache.get(key);
+    if (entry != null && responseCache.isFresh(entry, System.currentTimeMillis())) {
+      responseCache.recordHit();
+      LOG.debug("Request - {} , served from cache", request);
+      return entry.response;
+    }
+    if (entry != null) {
+      if (entry.getETag() != null) {
+        request.addHeader("If-None-Match", entry.getETag());
+      }
+      if (entry.getLastModified() != null) {
+        request.addHeader("If-Modified-Since", entry.getLastModified());
+      }
+    }
+    RestResponse response = send(request, "GET", uri, true, true);
+    if (entry != null && response.getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+      responseCache.recordHit();
+      responseCache.revalidated(key, entry);
+      return entry.response;
+    }
+    responseCache.recordMiss();
+    if (response.getStatusCode() == HttpStatus.SC_OK) {
+      responseCache.put(key, response);
+    }
+    return response;
+  }
+
+  /**
+   * Send a request without an Authorization header, for the token calls of the auth session
+   *
+   * @param request
+   * @return Buffered response
+   * @throws IOException
+   */
+  RestResponse sendUnauthenticated(Request request) throws IOException {
+    RequestLine requestLine = BasicLineParser.parseRequestLine(request.toString(), null);
+    return send(request, requestLine.getMethod(), URI.create(requestLine.getUri()), false, true);
+  }
+
+  /**
+   * Execute a REST call with a single attempt, bypassing the response cache, for callers that
+   * schedule their own retries. The task tracker checks statuses this way, so a failing check does
+   * not hold a poller thread in a backoff sleep and its operation is simply checked again later.
+   *
+   * @param request
+   * @return Buffered response
+   * @throws IOException
+   */
+  RestResponse executeOnce(Request request) throws IOException {
+    RequestLine requestLine = BasicLineParser.parseRequestLine(request.toString(), null);
+    return send(request, requestLine.getMethod(), URI.create(requestLine.getUri()), true, false);
+  }
+
+  /**
+   * Send a request over the pooled HTTP engine and buffer its response, retrying it as far as the
+   * {@link RetryPolicy} allows. A call rejected with 401 is sent once more if the auth session
+   * could renew its credentials.
+   *
+   * @param request
+   * @param method
+   * @param uri
+   * @param authenticate true to send the Authorization header of the auth session
+   * @param retry false to send a single attempt whatever the RetryPolicy allows
+   * @return Buffered response
+   * @throws CircuitBreakerOpenException if SDDC Manager is considered down
+   * @throws IOException
+   */
+  private RestResponse send(
+      Request request, String method, URI uri, boolean authenticate, boolean retry)
+      throws IOException {
+    String endpoint = instrumentation.endpoint(uri.getPath());
+    EndpointLimiter limiter = limiters.get(EndpointLimiter.family(uri.getPath()));
+    String target = authenticate && recording != null ? target(uri) : null;
+    Header authHeader = authenticate ? authSession.getAuthHeader() : null;
+    if (authHeader != null) {
+      request.setHeader(authHeader);
+    }
+    boolean renewed = false;
+    retryPolicy.onFirstAttempt();
+    for (int attempt = 1; ; attempt++) {
+      RestResponse response;
+      try {
+        response = sendOnce(request, method, endpoint, target, limiter);
+      } catch (IOException e) {
+        long delay = retry ? retryPolicy.retryDelay(method, attempt, e) : RetryPolicy.NO_RETRY;
+        if (delay == RetryPolicy.NO_RETRY) {
+          throw e;
+        }
+        backOff(request, endpoint, e.getClass().getSimpleName(), delay);
+        continue;
+      }
+      if (response.getStatusCode() == HttpStatus.SC_UNAUTHORIZED
+          && authHeader != null
+          && !renewed
+          && authSession.renew(authHeader)) {
+        renewed = true;
+        authHeader = authSession.getAuthHeader();
+        request.setHeader(authHeader);
+        instrumentation.retry(endpoint, String.valueOf(HttpStatus.SC_UNAUTHORIZED));
+        continue;
+      }
+      Header retryAfter = response.getFirstHeader("Retry-After");
+      long delay =
+          retry
+              ? retryPolicy.retryDelay(
+                  method,
+                  attempt,
+                  response.getStatusCode(),
+                  retryAfter == null ? null : retryAfter.getValue())
+              : RetryPolicy.NO_RETRY;
+      if (delay == RetryPolicy.NO_RETRY) {
+        return response;
+      }
+      backOff(request, endpoint, String.valueOf(response.getStatusCode()), delay);
+    }
+  }
+
+  /**
+   * Send one attempt of a request through the circuit breaker and the endpoint limiter
+   *
+   * @param request
+   * @param method
+   * @param endpoint
+   * @param target Path and query to record the exchange under, or null to not record it
+   * @param limiter
+   * @return Buffered response
+   * @throws IOException
+   */
+  private RestResponse sendOnce(
+      Request request, String method, String endpoint, String target, EndpointLimiter limiter)
+      throws IOException {
+    circuitBreaker.acquire();
+    instrumentation.limiterWait(limiter.getFamily(), limiter.acquire());
+    Tracer.Span span = instrumentation.requestStarted(method, endpoint);
+    long start = System.nanoTime();
+    RestResponse response;
+    try {
+      response =
+          executor
+              .execute(request)
+              .handleResponse(
+                  httpResponse ->
+                      new RestResponse(
+                          httpResponse.getStatusLine().getStatusCode(),
+                          httpResponse.getAllHeaders(),
+                          httpResponse.getEntity() == null
+                              ? null
+                              : EntityUtils.toByteArray(httpResponse.getEntity())));
+    } catch (IOException | RuntimeException e) {
+      onUnanswered(limiter, e);
+      instrumentation.requestFailed(span, method, endpoint, e, System.nanoTime() - start);
+      throw e;
+    }
+    circuitBreaker.onResponse(response.getStatusCode());
+    Header retryAfter = response.getFirstHeader("Retry-After");
+    if (limiter.onResponse(
+        endpoint,
+        response.getStatusCode(),
+        retryAfter == null ? null : retryAfter.getValue(),
+        System.nanoTime() - start)) {
+      instrumentation.throttled(limiter.getFamily(), String.valueOf(response.getStatusCode()));
+    }
+    instrumentation.requestCompleted(
+        span,
+        method,
+        endpoint,
+        response.getStatusCode(),
+        response.getBody().length,
+        response.getErrorCode(),
+        response.getRemediationMessage(),
+        System.nanoTime() - start);
+    if (target != null) {
+      record(method, target, response.getStatusCode(), response.getBody(), start);
+    }
+    LOG.debug("Request - {} , response code : {}", request, response.getStatusCode());
+    if (response.hasError()) {
+      printError(response);
     }
     return response;
   }
+
+  /**
+   * Feed a call that got no response to the endpoint limiter and the circuit breaker. Failures on
+   * the client side, such as an abort by the caller, release the limiter slot without counting
+   * against SDDC Manager.
+   *
+   * @param limiter
+   * @param error
+   */
+  private void onUnanswered(EndpointLimiter limiter, Exception error) {
+    if (error instanceof IOException && RetryPolicy.isLocalFailure((IOException) error)) {
+      limiter.onDropped();
+      return;
+    }
+    limiter.onFailure();
+    instrumentation.throttled(limiter.getFamily(), "IO_ERROR");
+    if (error instanceof IOException) {
+      circuitBreaker.onError((IOException) error);
+    }
+  }
+
+  /** @return Path and query of a request, the key its exchange is recorded under */
+  private static String target(URI uri) {
+    String query = uri.getRawQuery();
+    return query == null ? uri.getRawPath() : uri.getRawPath() + "?" + query;
+  }
+
+  /**
+   * Append an exchange to the recording. A failed write is logged and does not fail the call.
+   *
+   * @param method
+   * @param target
+   * @param statusCode
+   * @param body
+   * @param start System.nanoTime() when the request was sent
+   */
+  private void record(String method, String target, int statusCode, byte[] body, long start) {
+    try {
+      recording.record(method, target, statusCode, body, System.nanoTime() - start);
+    } catch (IOException e) {
+      LOG.warn("Unable to record {} {} : {}", method, target, e);
+    }
+  }
+
+  /**
+   * Wait before the next attempt of a request
+   *
+   * @param request
+   * @param endpoint
+   * @param reason Status code or exception that caused the retry
+   * @param delayMillis
+   * @throws InterruptedIOException if the thread is interrupted while waiting
+   */
+  private void backOff(Request request, String endpoint, String reason, long delayMillis)
+      throws InterruptedIOException {
+    instrumentation.retry(endpoint, reason);
+    LOG.info("Request - {} , retrying in {} ms after {}", request, delayMillis, reason);
+    try {
+      TimeUnit.MILLISECONDS.sleep(delayMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to retry " + endpoint);
+    }
+  }
+
+  /** @return Read cache for idempotent GETs, exposing hit and miss counters */
+  public ResponseCache getResponseCache() {
+    return responseCache;
+  }
+
+  /**
+   * Execute a GET on a list endpoint and stream its {@code elements} to a visitor without
+   * buffering or parsing the whole document
+   *
+   * @param request
+   * @param fields Top level fields to keep in each element, or null to keep all fields
+   * @param visitor
+   * @return Number of elements visited
+   * @throws KeyManagementException
+   * @throws NoSuchAlgorithmException
+   * @throws KeyStoreException
+   * @throws HttpResponseException if SDDC Manager did not answer with a 2xx status
+   * @throws IOException
+   */
+  public int streamElements(
+      Request request, Set<String> fields, JsonElementStream.ElementVisitor visitor)
+      throws KeyManagementException, NoSuchAlgorithmException, KeyStoreException, IOException {
+    return executeStreaming(request, in -> JsonElementStream.readElements(in, fields, visitor));
+  }
+
+  /**
+   * Execute a GET for one page of a list endpoint
+   *
+   * @param request
+   * @param fields Top level fields to keep in each element, or null to keep all fields
+   * @return Page of projected elements
+   * @throws KeyManagementException
+   * @throws NoSuchAlgorithmException
+   * @throws KeyStoreException
+   * @throws HttpResponseException if SDDC Manager did not answer with a 2xx status
+   * @throws IOException
+   */
+  public JsonElementStream.Page fetchPage(Request request, Set<String> fields)
+      throws KeyManagementException, NoSuchAlgorithmException, KeyStoreException, IOException {
+    return executeStreaming(request, in -> JsonElementStream.readPage(in, fields));
+  }
+
+  /**
+   * Lazily iterate over every element of a paged list endpoint, prefetching the following pages
+   * in the background while the current one is consumed
+   *
+   * @param path Endpoint path relative to the base URL, e.g. /v1/hosts
+   * @param fields Top level fields to keep in each element, or null to keep all fields
+   * @return Paged collection
+   */
+  public PagedCollection getPaged(String path, Set<String> fields) {
+    return new PagedCollection(
+        this,
+        path,
+        fields,
+        getIntProperty("pageSize", DEFAULT_PAGE_SIZE),
+        getIntProperty("pagePrefetchCount", DEFAULT_PAGE_PREFETCH_COUNT));
+  }
+
+  /** Reads a successful response entity as a stream */
+  @FunctionalInterface
+  interface EntityReader<T> {
+    T read(InputStream in) throws IOException;
+  }
+
+  /**
+   * Execute a REST call and hand the entity stream of a 2xx response to a reader, so that the body
+   * is parsed straight from the pooled connection. The call is retried as far as the {@link
+   * RetryPolicy} allows, but never once the reader has seen part of the entity, and sent once more
+   * after a 401 if the auth session could renew its credentials.
+   *
+   * @param request
+   * @param reader
+   * @return Reader result
+   * @throws IOException
+   */
+  <T> T executeStreaming(Request request, EntityReader<T> reader) throws IOException {
+    RequestLine requestLine = BasicLineParser.parseRequestLine(request.toString(), null);
+    String method = requestLine.getMethod();
+    URI uri = URI.create(requestLine.getUri());
+    String path = uri.getPath();
+    String endpoint = instrumentation.endpoint(path);
+    EndpointLimiter limiter = limiters.get(EndpointLimiter.family(path));
+    String target = recording != null ? target(uri) : null;
+    Header authHeader = authSession.getAuthHeader();
+    request.setHeader(authHeader);
+    boolean renewed = false;
+    retryPolicy.onFirstAttempt();
+    for (int attempt = 1; ; attempt++) {
+      boolean[] answered = new boolean[1];
+      long delay;
+      String reason;
+      try {
+        return executeStreamingOnce(
+            request, method, endpoint, target, limiter, reader, answered);
+      } catch (HttpResponseException e) {
+        if (e.getStatusCode() == HttpStatus.SC_UNAUTHORIZED
+            && !renewed
+            && authSession.renew(authHeader)) {
+          renewed = true;
+          authHeader = authSession.getAuthHeader();
+          request.setHeader(authHeader);
+          instrumentation.retry(endpoint, String.valueOf(HttpStatus.SC_UNAUTHORIZED));
+          continue;
+        }
+        delay = retryPolicy.retryDelay(method, attempt, e.getStatusCode(), null);
+        reason = String.valueOf(e.getStatusCode());
+        if (delay == RetryPolicy.NO_RETRY) {
+          throw e;
+        }
+      } catch (IOException e) {
+        delay = answered[0] ? RetryPolicy.NO_RETRY : retryPolicy.retryDelay(method, attempt, e);
+        reason = e.getClass().getSimpleName();
+        if (delay == RetryPolicy.NO_RETRY) {
+          throw e;
+        }
+      }
+      backOff(request, endpoint, reason, delay);
+    }
+  }
+
+  /**
+   * Execute one attempt of a streamed call through the circuit breaker and the endpoint limiter
+   *
+   * @param request
+   * @param method
+   * @param endpoint
+   * @param target Path and query to record the exchange under, or null to not record it
+   * @param limiter
+   * @param reader
+   * @param answered Set to true once a response arrived
+   * @return Reader result
+   * @throws IOException
+   */
+  private <T> T executeStreamingOnce(
+      Request request,
+      String method,
+      String endpoint,
+      String target,
+      EndpointLimiter limiter,
+      EntityReader<T> reader,
+      boolean[] answered)
+      throws IOException {
+    circuitBreaker.acquire();
+    instrumentation.limiterWait(limiter.getFamily(), limiter.acquire());
+    Tracer.Span span = instrumentation.requestStarted(method, endpoint);
+    long start = System.nanoTime();
+    try {
+      return executor
+          .execute(request)
+          .handleResponse(
+              httpResponse -> {
+                int statusCode = httpResponse.getStatusLine().getStatusCode();
+                Header retryAfter = httpResponse.getFirstHeader("Retry-After");
+                answered[0] = true;
+                circuitBreaker.onResponse(statusCode);
+                if (limiter.onResponse(
+                    endpoint,
+                    statusCode,
+                    retryAfter == null ? null : retryAfter.getValue(),
+                    System.nanoTime() - start)) {
+                  instrumentation.throttled(limiter.getFamily(), String.valueOf(statusCode));
+                }
+                LOG.debug("Request - {} , response code : {}", request, statusCode);
+                HttpEntity entity = httpResponse.getEntity();
+                if (statusCode >= HttpStatus.SC_MULTIPLE_CHOICES) {
+                  RestResponse response =
+                      new RestResponse(
+                          statusCode,
+                          httpResponse.getAllHeaders(),
+                          entity == null ? null : EntityUtils.toByteArray(entity));
+                  printError(response);
+                  instrumentation.requestCompleted(
+                      span,
+                      method,
+                      endpoint,
+                      statusCode,
+                      response.getBody().length,
+                      response.getErrorCode(),
+                      response.getRemediationMessage(),
+                      System.nanoTime() - start);
+                  if (target != null) {
+                    record(method, target, statusCode, response.getBody(), start);
+                  }
+                  throw new HttpResponseException(
+                      statusCode, "Request failed, error code : " + response.getErrorCode());
+                }
+                long length = entity == null ? 0 : Math.max(0, entity.getContentLength());
+                InputStream content =
+                    entity == null ? new ByteArrayInputStream(new byte[0]) : entity.getContent();
+                ByteArrayOutputStream copy = target == null ? null : new ByteArrayOutputStream();
+                T result;
+                try (InputStream in = copy == null ? content : recordingStream(content, copy)) {
+                  result = reader.read(in);
+                }
+                instrumentation.requestCompleted(
+                    span,
+                    method,
+                    endpoint,
+                    statusCode,
+                    length,
+                    null,
+                    null,
+                    System.nanoTime() - start);
+                if (copy != null) {
+                  record(method, target, statusCode, copy.toByteArray(), start);
+                }
+                return result;
+              });
+    } catch (HttpResponseException e) {
+      throw e;
+    } catch (IOException | RuntimeException e) {
+      if (!answered[0]) {
+        onUnanswered(limiter, e);
+      }
+      instrumentation.requestFailed(span, method, endpoint, e, System.nanoTime() - start);
+      throw e;
+    }
+  }
+
+  /**
+   * @param content Entity stream
+   * @param copy Receives everything read
+   * @return Stream that, when closed, reads the rest of the entity into the copy, so the whole
+   *     document is recorded even if the reader stopped early
+   */
+  private static InputStream recordingStream(InputStream content, OutputStream copy) {
+    return new TeeInputStream(content, copy) {
+      private boolean closed;
+
+      @Override
+      public void close() throws IOException {
+        if (!closed) {
+          closed = true;
+          transferTo(OutputStream.nullOutputStream());
+          super.close();
+        }
+      }
+    };
+  }
+
+  /**
+   * @return Shared executor for prefetching, bulk calls and fan-out, created on first use. In
+   *     virtual thread mode every task gets its own virtual thread.
+   */
+  public synchronized ExecutorService getExecutorService() {
+    if (executorService == null) {
+      executorService = newTaskExecutor("vcf-client");
+    }
+    return executorService;
+  }
+
+  /**
+   * @return true if blocking calls run on virtual threads. Requires {@code
+   *     clientThreadMode=virtual} and a JVM that supports virtual threads.
+   */
+  public boolean isVirtualThreadMode() {
+    return "virtual".equalsIgnoreCase(properties.getProperty("clientThreadMode", "virtual"))
+        && VIRTUAL_THREAD_EXECUTOR_FACTORY != null;
+  }
+
+  /**
+   * Create an executor for blocking calls: a virtual thread per task in virtual thread mode,
+   * otherwise a cached pool of daemon platform threads
+   *
+   * @param threadNamePrefix Name prefix of platform threads
+   * @return Executor service
+   */
+  ExecutorService newTaskExecutor(String threadNamePrefix) {
+    if (isVirtualThreadMode()) {
+      try {
+        return (ExecutorService) VIRTUAL_THREAD_EXECUTOR_FACTORY.invoke(null);
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException("Unable to create virtual thread executor", e);
+      }
+    }
+    return Executors.newCachedThreadPool(TaskTracker.daemonThreads(threadNamePrefix));
+  }
+
+  /**
+   * Open a scope for structured fan-out of blocking calls on the client executor
+   *
+   * @return New request scope, to be closed by the caller
+   */
+  public RequestScope openScope() {
+    return new RequestScope(getExecutorService());
+  }
+
+  /**
+   * Looked up reflectively so that the client still compiles for and runs on JDKs without virtual
+   * threads
+   *
+   * @return Executors.newVirtualThreadPerTaskExecutor, or null if the JVM does not provide it
+   */
+  private static Method findVirtualThreadExecutorFactory() {
+    try {
+      return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Stream a list endpoint and return the first element matching the predicate, stopping the scan
+   * as soon as it is found
+   *
+   * @param request
+   * @param fields Top level fields to keep in each element, or null to keep all fields
+   * @param predicate
+   * @return Matching element, or null
+   * @throws KeyManagementException
+   * @throws NoSuchAlgorithmException
+   * @throws KeyStoreException
+   * @throws IOException
+   */
+  public JSONObject findFirstElement(
+      Request request, Set<String> fields, Predicate<JSONObject> predicate)
+      throws KeyManagementException, NoSuchAlgorithmException, KeyStoreException, IOException {
+    JSONObject[] match = new JSONObject[1];
+    streamElements(
+        request,
+        fields,
+        element -> {
+          if (predicate.test(element)) {
+            match[0] = element;
+            return false;
+          }
+          return true;
+        });
+    return match[0];
+  }
+
+  /**
+   * Log the SDDC Manager error code and remediation message of a failed call, and at DEBUG the
+   * response document, truncated like every log argument
+   *
+   * @param response
+   */
+  private void printError(RestResponse response) {
+    if (!response.hasError()) {
+      return;
+    }
+    String remediationMessage = response.getRemediationMessage();
+    if (remediationMessage != null) {
+      LOG.warn(
+          "Error Code : {} , Remediation Message : {}",
+          response.getErrorCode(),
+          remediationMessage);
+    } else {
+      LOG.warn("Error Code : {}", response.getErrorCode());
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Response - {}", response.getBodyAsString());
+    }
+  }
+
+  /** Shut down the task tracker and the transport, closing pooled connections */
+  @Override
+  public void close() throws IOException {
+    authSession.close();
+    synchronized (this) {
+      if (taskTracker != null) {
+        taskTracker.close();
+      }
+      if (inventoryIndex != null) {
+        inventoryIndex.close();
+      }
+      if (taskJournal != null) {
+        taskJournal.close();
+      }
+      if (recording != null) {
+        recording.close();
+      }
+      if (executorService != null) {
+        executorService.shutdownNow();
+      }
+    }
+    transport.close();
+  }
 }
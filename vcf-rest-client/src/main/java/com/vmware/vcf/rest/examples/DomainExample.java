@@ -2,27 +2,45 @@
 package com.vmware.vcf.rest.examples;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.fluent.Request;
 import org.apache.http.entity.ContentType;
 import org.json.JSONObject;
 
+import com.vmware.vcf.rest.examples.logging.Log;
+import com.vmware.vcf.rest.examples.model.DomainSpec;
+import com.vmware.vcf.rest.examples.model.JsonBinder;
+import com.vmware.vcf.rest.examples.model.SpecTemplate;
+import com.vmware.vcf.rest.examples.model.Validation;
+
 public class DomainExample {
 
-  static int POLL_INTERVAL_SECONDS = 30;
   static int MAX_DOMAIN_CREATION_POLL_TIME_MINUTES = 180;
   static int MAX_DOMAIN_CREATION_VALIDATION_POLL_TIME_MINUTES = 20;
+  /** Hosts of the cluster in add_domain_template.json, referenced as hostId1 to hostId3 */
+  static int TEMPLATE_HOSTS_PER_DOMAIN = 3;
+
+  static final Set<String> HOST_ID_FIELDS = Collections.singleton("id");
+
+  private static final Log LOG = Log.getLog(DomainExample.class);
 
   Client client;
 
@@ -45,32 +63,18 @@ public class DomainExample {
   public boolean pollDomainCreationValidation(String id)
       throws InterruptedException, UnsupportedOperationException, IOException,
           KeyManagementException, NoSuchAlgorithmException, KeyStoreException {
-    boolean isValidationSuccessful = true;
-    String executionStatus = "IN_PROGRESS";
-    long timeout =
-        System.currentTimeMillis()
-            + TimeUnit.MINUTES.toMillis(MAX_DOMAIN_CREATION_VALIDATION_POLL_TIME_MINUTES);
-    String responseString = "";
-    while (System.currentTimeMillis() < timeout && executionStatus.equals("IN_PROGRESS")) {
-      System.out.println("Waiting for domain creation validation");
-      Thread.sleep(TimeUnit.SECONDS.toMillis(POLL_INTERVAL_SECONDS));
-      Request pollRequest =
-          Request.Get(client.baseUrl + "/v1/domains/validations/creations/" + id)
-              .addHeader("Content-Type", ContentType.APPLICATION_JSON.toString());
-      HttpResponse pollResponse = client.execute(pollRequest);
-      responseString =
-          IOUtils.toString(pollResponse.getEntity().getContent(), Charset.defaultCharset());
-      System.out.println(responseString);
-      executionStatus = new JSONObject(responseString).getString("executionStatus");
-    }
-    for (Object s : new JSONObject(responseString).getJSONArray("validationChecks")) {
-      if (new JSONObject(s).has("resultStatus")
-          && !new JSONObject(s).getString("resultStatus").equals("SUCCEEDED")) {
-        isValidationSuccessful = false;
-      }
-    }
-    System.out.println(
-        "Exit pollHostValidation, isValidationSuccessful - " + isValidationSuccessful);
+    LOG.info("Waiting for domain creation validation");
+    RestResponse pollResponse =
+        TaskTracker.await(
+            client
+                .getTaskTracker()
+                .track(
+                    TaskTracker.Kind.DOMAIN_CREATION_VALIDATION,
+                    id,
+                    MAX_DOMAIN_CREATION_VALIDATION_POLL_TIME_MINUTES,
+                    TimeUnit.MINUTES));
+    boolean isValidationSuccessful = pollResponse.read(JsonBinder::readValidation).isSuccessful();
+    LOG.info("Exit pollHostValidation, isValidationSuccessful - {}", isValidationSuccessful);
     return isValidationSuccessful;
   }
 
@@ -88,21 +92,14 @@ public class DomainExample {
   private String pollDomainCreation(String id)
       throws InterruptedException, KeyManagementException, NoSuchAlgorithmException,
           KeyStoreException, IOException {
-    String status = "";
-    long timeout =
-        System.currentTimeMillis()
-            + TimeUnit.MINUTES.toMillis(MAX_DOMAIN_CREATION_POLL_TIME_MINUTES);
-    while (System.currentTimeMillis() < timeout
-        && (status.equals("Pending") || status.equals("In Progress") || status.equals(""))) {
-      System.out.println("Waiting for Domain Creation, status - " + status);
-      Thread.sleep(TimeUnit.SECONDS.toMillis(POLL_INTERVAL_SECONDS));
-      Request pollRequest = Request.Get(client.baseUrl + "/v1/tasks/" + id);
-      HttpResponse pollResponse = client.execute(pollRequest);
-      String responseString =
-          IOUtils.toString(pollResponse.getEntity().getContent(), Charset.defaultCharset());
-      status = new JSONObject(responseString).getString("status");
-    }
-    System.out.println("Exit pollDomainCreation, status - " + status);
+    LOG.info("Waiting for Domain Creation, id - {}", id);
+    RestResponse pollResponse =
+        TaskTracker.await(
+            client
+                .getTaskTracker()
+                .trackTask(id, MAX_DOMAIN_CREATION_POLL_TIME_MINUTES, TimeUnit.MINUTES));
+    String status = pollResponse.read(JsonBinder::readTask).getStatus();
+    LOG.info("Exit pollDomainCreation, status - {}", status);
     return status;
   }
 
@@ -124,22 +121,17 @@ public class DomainExample {
     Request request =
         Request.Post(client.baseUrl + "/v1/domains/validations/creations")
             .bodyString(domainSpec, ContentType.APPLICATION_JSON);
-    HttpResponse response = client.execute(request);
-    String responseContent =
-        IOUtils.toString(response.getEntity().getContent(), Charset.defaultCharset());
-    if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-      System.out.println("Domain Creation Validation Started");
-      JSONObject responseJson = new JSONObject(responseContent);
-      String executionStatus = responseJson.getString("executionStatus");
-      String resultStatus = responseJson.getString("resultStatus");
-      System.out.println(
-          "Completed validateDomainCreation, executionStatus - "
-              + executionStatus
-              + " , resultStatus - "
-              + resultStatus);
+    RestResponse response = client.execute(request);
+    if (response.getStatusCode() == HttpStatus.SC_OK) {
+      LOG.info("Domain Creation Validation Started");
+      Validation validation = response.read(JsonBinder::readValidation);
+      LOG.info(
+          "Completed validateDomainCreation, executionStatus - {} , resultStatus - {}",
+          validation.getExecutionStatus(),
+          validation.getResultStatus());
       validated = true;
     } else {
-      System.err.println("Domain Creation Validation has not started");
+      LOG.warn("Domain Creation Validation has not started");
     }
     return validated;
   }
@@ -158,36 +150,163 @@ public class DomainExample {
   public void createDomain(String domainSpec)
       throws UnsupportedOperationException, IOException, KeyManagementException,
           NoSuchAlgorithmException, KeyStoreException, InterruptedException {
-    boolean validated = validateDomainCreation(domainSpec);
-    if (validated) {
+    String id = client.findSubmittedTask("/v1/domains", domainSpec);
+    if (id == null) {
+      boolean validated = validateDomainCreation(domainSpec);
+      if (!validated) {
+        LOG.warn("Validation failed, domain creation skipped");
+        return;
+      }
       Request request =
           Request.Post(client.baseUrl + "/v1/domains")
               .bodyString(domainSpec, ContentType.APPLICATION_JSON);
-      HttpResponse response = client.execute(request);
-      String responseContent =
-          IOUtils.toString(response.getEntity().getContent(), Charset.defaultCharset());
-      if (response.getStatusLine().getStatusCode() == HttpStatus.SC_ACCEPTED) {
-        System.out.println("Domain Creation Started");
-        JSONObject responseJson = new JSONObject(responseContent);
-        String id = responseJson.getString("id");
-        String status = pollDomainCreation(id);
-        System.out.println("Completed domain creation, status - " + status);
-      } else {
-        System.out.println("Domain creation has not started");
+      RestResponse response = client.execute(request);
+      if (response.getStatusCode() != HttpStatus.SC_ACCEPTED) {
+        LOG.warn("Domain creation has not started");
+        return;
       }
-    } else {
-      System.err.println("Validation failed, domain creation skipped");
+      LOG.info("Domain Creation Started");
+      id = response.read(JsonBinder::readTask).getId();
+      client.recordSubmittedTask("/v1/domains", domainSpec, id);
+    }
+    String status = pollDomainCreation(id);
+    LOG.info("Completed domain creation, status - {}", status);
+  }
+
+  /**
+   * Create several workload domains in parallel, with at most {@code maxConcurrentJobs} domain
+   * jobs on SDDC Manager at a time. Use {@link DomainOrchestrator} directly to add the host
+   * commissions and licenses the domains depend on.
+   *
+   * @param domainSpecs
+   * @param maxConcurrentJobs
+   * @return Outcome per domain, keyed by domain name
+   */
+  public Map<String, DomainOrchestrator.Outcome> createDomains(
+      List<DomainSpec> domainSpecs, int maxConcurrentJobs) {
+    DomainOrchestrator orchestrator = new DomainOrchestrator(client, maxConcurrentJobs);
+    for (DomainSpec domainSpec : domainSpecs) {
+      orchestrator.addDomain(domainSpec.getDomainName(), domainSpec.toJson());
+    }
+    return orchestrator.run();
+  }
+
+  /**
+   * Create workload domains generated from a domain spec template, at most {@code
+   * maxConcurrentJobs} at a time
+   *
+   * @param template Domain spec template
+   * @param domainCount Number of domains, capped by the template's bounded variables
+   * @param maxConcurrentJobs
+   * @return Outcome per domain, keyed by domain name
+   * @throws IOException if a generated spec is not valid JSON
+   */
+  public Map<String, DomainOrchestrator.Outcome> createDomains(
+      SpecTemplate template, int domainCount, int maxConcurrentJobs) throws IOException {
+    DomainOrchestrator orchestrator = new DomainOrchestrator(client, maxConcurrentJobs);
+    for (Iterator<String> specs = template.stream(domainCount).iterator(); specs.hasNext(); ) {
+      DomainSpec domainSpec =
+          JsonBinder.readDomainSpec(specs.next().getBytes(StandardCharsets.UTF_8));
+      orchestrator.addDomain(domainSpec.getDomainName(), domainSpec.toJson());
+    }
+    return orchestrator.run();
+  }
+
+  /**
+   * @return Ids of the hosts that are commissioned and not assigned to a domain yet
+   * @throws IOException
+   */
+  public List<String> getUnassignedHostIds() throws IOException {
+    try (Stream<JSONObject> hosts =
+        client.getPaged("/v1/hosts?status=UNASSIGNED_USEABLE", HOST_ID_FIELDS).stream()) {
+      return hosts
+          .filter(host -> host.has("id"))
+          .map(host -> host.getString("id"))
+          .collect(Collectors.toList());
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Give every generated domain its own hosts: domain {@code i} gets hosts {@code i * n} to
+   * {@code i * n + n - 1} of the pool as {@code hostId1} to {@code hostId<n>}, so the template
+   * yields at most one domain per {@code n} free hosts
+   *
+   * @param template Domain spec template
+   * @param hostIds Pool of unassigned host ids
+   * @param hostsPerDomain Number of host references in the template
+   * @return The template
+   */
+  public static SpecTemplate assignHosts(
+      SpecTemplate template, List<String> hostIds, int hostsPerDomain) {
+    int domains = hostIds.size() / hostsPerDomain;
+    for (int host = 0; host < hostsPerDomain; host++) {
+      List<String> ids = new ArrayList<>(domains);
+      for (int domain = 0; domain < domains; domain++) {
+        ids.add(hostIds.get(domain * hostsPerDomain + host));
+      }
+      template.values("hostId" + (host + 1), ids);
     }
+    return template;
   }
 
+  /**
+   * Without arguments the domain of add_domain.json is created. With a domain count, that many
+   * domains are generated from add_domain_template.json instead, each with its own names, five
+   * consecutive addresses for vCenter, NSX Manager and the NSX controllers, and three hosts taken
+   * from the unassigned hosts of SDDC Manager. Fewer domains are created when there are not
+   * enough free hosts.
+   *
+   * @param args [domainCount [maxConcurrentJobs]]
+   */
   public static void main(String[] args)
       throws IOException, URISyntaxException, KeyManagementException, NoSuchAlgorithmException,
           KeyStoreException, InterruptedException {
     DomainExample domainEx = new DomainExample();
-    String domainSpec =
-        new String(
+    if (args.length > 0) {
+      SpecTemplate template =
+          new SpecTemplate(
+                  new String(
+                      Files.readAllBytes(
+                          Paths.get(
+                              ClassLoader.getSystemResource("add_domain_template.json").toURI())),
+                      StandardCharsets.UTF_8))
+              .sequence("domain", 2, 1, 0)
+              .ipv4("vcenterIp", "10.0.0.43", 5)
+              .ipv4("nsxManagerIp", "10.0.0.44", 5)
+              .ipv4("nsxControllerIp1", "10.0.0.45", 5)
+              .ipv4("nsxControllerIp2", "10.0.0.46", 5)
+              .ipv4("nsxControllerIp3", "10.0.0.47", 5)
+              .constant("licenseKey", "AAAAA-BBBBB-CCCCC-DDDDD-EEEEE")
+              .constant("nsxLicenseKey", "AAAAA-BBBBB-CCCCC-DDDDD-EEEEE");
+      try {
+        List<String> hostIds = domainEx.getUnassignedHostIds();
+        assignHosts(template, hostIds, TEMPLATE_HOSTS_PER_DOMAIN);
+        LOG.info(
+            "{} unassigned hosts, creating {} domains",
+            hostIds.size(),
+            template.size(Integer.parseInt(args[0])));
+        Map<String, DomainOrchestrator.Outcome> outcomes =
+            domainEx.createDomains(
+                template,
+                Integer.parseInt(args[0]),
+                args.length > 1 ? Integer.parseInt(args[1]) : 2);
+        outcomes.values().forEach(outcome -> LOG.info("Domain - {}", outcome));
+      } finally {
+        domainEx.client.close();
+      }
+      return;
+    }
+    DomainSpec domainSpec =
+        JsonBinder.readDomainSpec(
             Files.readAllBytes(
                 Paths.get(ClassLoader.getSystemResource("add_domain.json").toURI())));
-    domainEx.createDomain(domainSpec);
+    domainEx.client.getTaskTracker().onEvent(event -> LOG.info("Task event - {}", event));
+    try {
+      domainEx.createDomain(domainSpec.toJson());
+    } finally {
+      domainEx.client.close();
+    }
   }
 }
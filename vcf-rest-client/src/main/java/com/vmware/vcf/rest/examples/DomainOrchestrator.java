@@ -0,0 +1,391 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.fluent.Request;
+import org.apache.http.entity.ContentType;
+
+import com.vmware.vcf.rest.examples.logging.Log;
+import com.vmware.vcf.rest.examples.model.Task;
+import com.vmware.vcf.rest.examples.model.Validation;
+
+/**
+ * Runs a set of license, host commission and workload domain operations as a dependency graph.
+ * Every operation starts as soon as all operations it depends on have succeeded, independent
+ * branches run in parallel, and at most {@code maxConcurrentJobs} operations hold a job on SDDC
+ * Manager at the same time. Operations whose prerequisites failed are skipped.
+ *
+ * <pre>
+ * Map&lt;String, Outcome&gt; outcomes =
+ *     new DomainOrchestrator(client, 4)
+ *         .addLicense("nsx-license", licenseSpec)
+ *         .addHostCommission("rack-1", hostsSpec)
+ *         .addDomain("wld-1", domainSpec, "rack-1", "nsx-license")
+ *         .run();
+ * </pre>
+ *
+ * @author VMware Inc
+ */
+public class DomainOrchestrator {
+
+  private static final Log LOG = Log.getLog(DomainOrchestrator.class);
+
+  /** Kinds of operations in the graph */
+  public enum NodeType {
+    LICENSE,
+    HOST_COMMISSION,
+    DOMAIN
+  }
+
+  /** Final state of an operation */
+  public enum State {
+    SUCCEEDED,
+    FAILED,
+    SKIPPED
+  }
+
+  /** Outcome of one operation of the graph */
+  public static class Outcome {
+    final String name;
+    final State state;
+    final String detail;
+    final Throwable error;
+
+    Outcome(String name, State state, String detail, Throwable error) {
+      this.name = name;
+      this.state = state;
+      this.detail = detail;
+      this.error = error;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public State getState() {
+      return state;
+    }
+
+    /** @return Final task status or reason the operation failed or was skipped */
+    public String getDetail() {
+      return detail;
+    }
+
+    public Throwable getError() {
+      return error;
+    }
+
+    @Override
+    public String toString() {
+      return "Outcome [name=" + name + ", state=" + state + ", detail=" + detail + "]";
+    }
+  }
+
+  /** One operation and the names of the operations it depends on */
+  static class Node {
+    final String name;
+    final NodeType type;
+    final String spec;
+    final List<String> dependencies;
+
+    Node(String name, NodeType type, String spec, List<String> dependencies) {
+      this.name = name;
+      this.type = type;
+      this.spec = spec;
+      this.dependencies = dependencies;
+    }
+  }
+
+  private final Client client;
+  private final Semaphore jobSlots;
+  private final HostCommissionPipeline hostPipeline;
+  private final Map<String, Node> nodes = new LinkedHashMap<>();
+
+  public DomainOrchestrator(Client client, int maxConcurrentJobs) {
+    this.client = client;
+    this.jobSlots = new Semaphore(Math.max(1, maxConcurrentJobs));
+    this.hostPipeline =
+        new HostCommissionPipeline(
+            client,
+            Integer.MAX_VALUE,
+            HostExample.MAX_HOST_VALIDATION_POLL_TIME_MINUTES,
+            HostExample.MAX_HOST_COMMISSION_POLL_TIME_MINUTES,
+            TimeUnit.MINUTES);
+  }
+
+  public DomainOrchestrator addLicense(String name, String licenseSpec, String... dependsOn) {
+    return add(new Node(name, NodeType.LICENSE, licenseSpec, Arrays.asList(dependsOn)));
+  }
+
+  public DomainOrchestrator addHostCommission(String name, String hostsSpec, String... dependsOn) {
+    return add(new Node(name, NodeType.HOST_COMMISSION, hostsSpec, Arrays.asList(dependsOn)));
+  }
+
+  public DomainOrchestrator addDomain(String name, String domainSpec, String... dependsOn) {
+    return add(new Node(name, NodeType.DOMAIN, domainSpec, Arrays.asList(dependsOn)));
+  }
+
+  private DomainOrchestrator add(Node node) {
+    if (nodes.putIfAbsent(node.name, node) != null) {
+      throw new IllegalArgumentException("Duplicate operation name - " + node.name);
+    }
+    return this;
+  }
+
+  /**
+   * Run the whole graph and wait for every operation to finish
+   *
+   * @return Outcome per operation name, in the order the operations were added
+   * @throws IllegalArgumentException if a dependency is unknown or the graph has a cycle
+   */
+  public Map<String, Outcome> run() {
+    Map<String, CompletableFuture<Outcome>> futures = new HashMap<>();
+    for (Node node : topologicalOrder()) {
+      List<CompletableFuture<Outcome>> prerequisites = new ArrayList<>();
+      for (String dependency : node.dependencies) {
+        prerequisites.add(futures.get(dependency));
+      }
+      futures.put(
+          node.name,
+          CompletableFuture.allOf(prerequisites.toArray(new CompletableFuture<?>[0]))
+              .thenCompose(ignored -> start(node, prerequisites)));
+    }
+    Map<String, Outcome> outcomes = new LinkedHashMap<>();
+    for (String name : nodes.keySet()) {
+      Outcome outcome = futures.get(name).join();
+      LOG.info("Orchestration - {}", outcome);
+      outcomes.put(name, outcome);
+    }
+    return outcomes;
+  }
+
+  /**
+   * Start an operation once its prerequisites are done, waiting for a free job slot
+   *
+   * @param node
+   * @param prerequisites
+   * @return Future outcome of the operation
+   */
+  private CompletableFuture<Outcome> start(
+      Node node, List<CompletableFuture<Outcome>> prerequisites) {
+    for (CompletableFuture<Outcome> prerequisite : prerequisites) {
+      Outcome outcome = prerequisite.join();
+      if (outcome.state != State.SUCCEEDED) {
+        String detail = "Prerequisite " + outcome.name + " failed";
+        return CompletableFuture.completedFuture(
+            new Outcome(node.name, State.SKIPPED, detail, null));
+      }
+    }
+    return CompletableFuture.supplyAsync(() -> executeInSlot(node), client.getExecutorService())
+        .thenCompose(outcome -> outcome)
+        .handle(
+            (outcome, e) -> {
+              if (e != null) {
+                Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                return new Outcome(node.name, State.FAILED, cause.getMessage(), cause);
+              }
+              return outcome;
+            });
+  }
+
+  /**
+   * Take a job slot and start an operation. The slot goes back once the operation finished, or at
+   * once if it could not be started, and only ever after it was taken.
+   *
+   * @param node
+   * @return Future outcome of the operation
+   */
+  private CompletableFuture<Outcome> executeInSlot(Node node) {
+    jobSlots.acquireUninterruptibly();
+    CompletableFuture<Outcome> outcome;
+    try {
+      outcome = execute(node);
+    } catch (RuntimeException e) {
+      jobSlots.release();
+      throw e;
+    }
+    return outcome.whenComplete((result, e) -> jobSlots.release());
+  }
+
+  private CompletableFuture<Outcome> execute(Node node) {
+    switch (node.type) {
+      case LICENSE:
+        return CompletableFuture.supplyAsync(() -> addLicense(node), client.getExecutorService());
+      case HOST_COMMISSION:
+        try {
+          return hostPipeline.submit(node.spec).thenApply(result -> hostOutcome(node, result));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new CompletionException(e);
+        }
+      default:
+        return createDomain(node);
+    }
+  }
+
+  private Outcome addLicense(Node node) {
+    RestResponse response =
+        post("/v1/license-keys", node.spec, HttpStatus.SC_CREATED, "License add failed");
+    return new Outcome(node.name, State.SUCCEEDED, "Status code " + response.getStatusCode(), null);
+  }
+
+  private Outcome hostOutcome(Node node, HostCommissionPipeline.Result result) {
+    Throwable error = result.getError();
+    if (error != null) {
+      return new Outcome(node.name, State.FAILED, error.getMessage(), error);
+    }
+    if (!result.isValidationPassed()) {
+      return new Outcome(node.name, State.FAILED, "Host validation failed", null);
+    }
+    return taskOutcome(node, result.getStatus());
+  }
+
+  /**
+   * Validate a domain spec, create the domain once validation succeeded and track the creation
+   * task. A domain whose creation an earlier run submitted and that is still in progress,
+   * according to the task journal, is only tracked.
+   *
+   * @param node
+   * @return Future outcome of the domain creation
+   */
+  private CompletableFuture<Outcome> createDomain(Node node) {
+    TaskTracker tracker = client.getTaskTracker();
+    String submittedTaskId = client.findSubmittedTask("/v1/domains", node.spec);
+    if (submittedTaskId != null) {
+      return trackDomainCreation(node, submittedTaskId);
+    }
+    return CompletableFuture.supplyAsync(
+            () ->
+                post(
+                    "/v1/domains/validations/creations",
+                    node.spec,
+                    HttpStatus.SC_OK,
+                    "Domain Creation Validation has not started"),
+            client.getExecutorService())
+        .thenCompose(
+            response -> {
+              Validation validation = HostCommissionPipeline.readValidation(response);
+              return validation.isInProgress()
+                  ? tracker.track(
+                      TaskTracker.Kind.DOMAIN_CREATION_VALIDATION,
+                      validation.getId(),
+                      DomainExample.MAX_DOMAIN_CREATION_VALIDATION_POLL_TIME_MINUTES,
+                      TimeUnit.MINUTES)
+                  : CompletableFuture.completedFuture(response);
+            })
+        .thenComposeAsync(
+            validation -> {
+              if (!HostCommissionPipeline.isValidationSuccessful(validation)) {
+                return CompletableFuture.completedFuture(
+                    new Outcome(node.name, State.FAILED, "Domain validation failed", null));
+              }
+              String taskId =
+                  HostCommissionPipeline.readTask(
+                          post(
+                              "/v1/domains",
+                              node.spec,
+                              HttpStatus.SC_ACCEPTED,
+                              "Domain creation failed"))
+                      .getId();
+              client.recordSubmittedTask("/v1/domains", node.spec, taskId);
+              return trackDomainCreation(node, taskId);
+            },
+            client.getExecutorService());
+  }
+
+  private CompletableFuture<Outcome> trackDomainCreation(Node node, String taskId) {
+    return client
+        .getTaskTracker()
+        .trackTask(taskId, DomainExample.MAX_DOMAIN_CREATION_POLL_TIME_MINUTES, TimeUnit.MINUTES)
+        .thenApply(task -> taskOutcome(node, HostCommissionPipeline.readTask(task).getStatus()));
+  }
+
+  private Outcome taskOutcome(Node node, String status) {
+    return new Outcome(
+        node.name,
+        Task.STATUS_SUCCESSFUL.equalsIgnoreCase(status) ? State.SUCCEEDED : State.FAILED,
+        status,
+        null);
+  }
+
+  /**
+   * @param path
+   * @param spec
+   * @param expectedStatus
+   * @param failureMessage
+   * @return Response of the POST
+   * @throws CompletionException if the call failed or returned an unexpected status
+   */
+  private RestResponse post(String path, String spec, int expectedStatus, String failureMessage) {
+    RestResponse response;
+    try {
+      response =
+          client.execute(
+              Request.Post(client.getBaseUrl() + path)
+                  .bodyString(spec, ContentType.APPLICATION_JSON));
+    } catch (Exception e) {
+      throw new CompletionException(e);
+    }
+    if (response.getStatusCode() != expectedStatus) {
+      throw new IllegalStateException(
+          failureMessage
+              + ", response code : "
+              + response.getStatusCode()
+              + " , error code : "
+              + response.getErrorCode());
+    }
+    return response;
+  }
+
+  /**
+   * Order the operations so that every operation comes after its dependencies (Kahn's algorithm)
+   *
+   * @return Operations in dependency order
+   * @throws IllegalArgumentException if a dependency is unknown or the graph has a cycle
+   */
+  List<Node> topologicalOrder() {
+    Map<String, Integer> pending = new HashMap<>();
+    Map<String, List<Node>> dependents = new HashMap<>();
+    Deque<Node> ready = new ArrayDeque<>();
+    for (Node node : nodes.values()) {
+      for (String dependency : node.dependencies) {
+        if (!nodes.containsKey(dependency)) {
+          throw new IllegalArgumentException(
+              "Operation " + node.name + " depends on unknown operation " + dependency);
+        }
+        dependents.computeIfAbsent(dependency, name -> new ArrayList<>()).add(node);
+      }
+      pending.put(node.name, node.dependencies.size());
+      if (node.dependencies.isEmpty()) {
+        ready.add(node);
+      }
+    }
+    List<Node> order = new ArrayList<>(nodes.size());
+    while (!ready.isEmpty()) {
+      Node node = ready.poll();
+      order.add(node);
+      for (Node dependent : dependents.getOrDefault(node.name, new ArrayList<>())) {
+        if (pending.merge(dependent.name, -1, Integer::sum) == 0) {
+          ready.add(dependent);
+        }
+      }
+    }
+    if (order.size() != nodes.size()) {
+      throw new IllegalArgumentException("Operation dependencies contain a cycle");
+    }
+    return order;
+  }
+}
@@ -0,0 +1,172 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control for one endpoint family of SDDC Manager, e.g. every call under /v1/hosts. A
+ * call first takes a token from the family's {@link TokenBucket}, which caps the request rate, and
+ * then a slot of its {@link AdaptiveConcurrencyLimit}, which caps the calls in flight.
+ *
+ * <p>The concurrency limit is fed from the outcome of every call: 429 and 503 answers and calls
+ * that fail without a response halve it, and a 429 or 503 with a Retry-After header also pauses the
+ * rate limiter for that long. A call that takes more than {@code latencyTolerance} times the usual
+ * latency of its endpoint shrinks the limit gently. The usual latency is the lowest one seen,
+ * drifting slowly upwards so that a lasting change of the server is eventually accepted.
+ *
+ * @author VMware Inc
+ */
+public class EndpointLimiter {
+
+  /** Endpoint families with their own limits; any other path belongs to {@link #OTHER} */
+  static List<String> FAMILIES = Arrays.asList("tasks", "hosts", "domains", "license-keys");
+
+  static String OTHER = "other";
+
+  /** Slower calls within this margin of the usual latency are never counted as slow */
+  static long MIN_SLOW_EXCESS_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  /** Share of the difference by which the usual latency moves up per slower call, as a shift */
+  static int BASELINE_DRIFT_SHIFT = 8;
+
+  private final String family;
+  private final TokenBucket rateLimiter;
+  private final AdaptiveConcurrencyLimit concurrencyLimit;
+  private final double latencyTolerance;
+  private final Map<String, AtomicLong> baselines = new ConcurrentHashMap<>();
+
+  /**
+   * @param family
+   * @param rateLimiter
+   * @param concurrencyLimit
+   * @param latencyTolerance Multiple of the usual latency above which a call counts as slow
+   */
+  public EndpointLimiter(
+      String family,
+      TokenBucket rateLimiter,
+      AdaptiveConcurrencyLimit concurrencyLimit,
+      double latencyTolerance) {
+    this.family = family;
+    this.rateLimiter = rateLimiter;
+    this.concurrencyLimit = concurrencyLimit;
+    this.latencyTolerance = latencyTolerance;
+  }
+
+  /**
+   * @param path Request path, e.g. /v1/hosts/validations/{id}
+   * @return Endpoint family of the path, e.g. hosts
+   */
+  public static String family(String path) {
+    String rest = path.startsWith("/v1/") ? path.substring(4) : path.replaceFirst("^/", "");
+    int end = rest.indexOf('/');
+    String family = end < 0 ? rest : rest.substring(0, end);
+    return FAMILIES.contains(family) ? family : OTHER;
+  }
+
+  public String getFamily() {
+    return family;
+  }
+
+  public TokenBucket getRateLimiter() {
+    return rateLimiter;
+  }
+
+  public AdaptiveConcurrencyLimit getConcurrencyLimit() {
+    return concurrencyLimit;
+  }
+
+  /**
+   * Wait for a token and a concurrency slot. Every successful call must be followed by exactly one
+   * call to {@link #onResponse}, {@link #onFailure} or {@link #onDropped}.
+   *
+   * @return Nanoseconds spent waiting
+   * @throws InterruptedIOException if the thread is interrupted while waiting
+   */
+  public long acquire() throws InterruptedIOException {
+    long start = System.nanoTime();
+    try {
+      rateLimiter.acquire();
+      concurrencyLimit.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for " + family + " limiter");
+    }
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * A call returned a response
+   *
+   * @param endpoint Endpoint of the call, e.g. /v1/tasks/{id}
+   * @param statusCode
+   * @param retryAfter Retry-After header value, or null
+   * @param nanos Time from sending the request to the response headers
+   * @return true if the server throttled the call
+   */
+  public boolean onResponse(String endpoint, int statusCode, String retryAfter, long nanos) {
+    if (statusCode == 429 || statusCode == 503) {
+      long pauseSeconds = parseRetryAfter(retryAfter);
+      if (pauseSeconds > 0) {
+        rateLimiter.pause(pauseSeconds, TimeUnit.SECONDS);
+      }
+      concurrencyLimit.onThrottled();
+      return true;
+    }
+    if (isSlow(endpoint, nanos)) {
+      concurrencyLimit.onSlow();
+    } else {
+      concurrencyLimit.onSuccess();
+    }
+    return false;
+  }
+
+  /** A call failed without a response, e.g. on a socket timeout */
+  public void onFailure() {
+    concurrencyLimit.onThrottled();
+  }
+
+  /** A call ended on the client side, e.g. aborted by its caller; the limit stays as it is */
+  public void onDropped() {
+    concurrencyLimit.onDropped();
+  }
+
+  /**
+   * Compare a latency with the usual latency of its endpoint and update the latter
+   *
+   * @param endpoint
+   * @param nanos
+   * @return true if the call was much slower than usual
+   */
+  private boolean isSlow(String endpoint, long nanos) {
+    AtomicLong baseline = baselines.get(endpoint);
+    if (baseline == null) {
+      baselines.putIfAbsent(endpoint, new AtomicLong(nanos));
+      return false;
+    }
+    long usual = baseline.get();
+    if (nanos <= usual) {
+      baseline.set(nanos);
+      return false;
+    }
+    baseline.compareAndSet(usual, usual + ((nanos - usual) >> BASELINE_DRIFT_SHIFT));
+    return nanos > usual * latencyTolerance && nanos - usual > MIN_SLOW_EXCESS_NANOS;
+  }
+
+  /** @return Seconds to wait from a Retry-After header in seconds form, 0 if absent or a date */
+  static long parseRetryAfter(String retryAfter) {
+    if (retryAfter == null) {
+      return 0;
+    }
+    try {
+      return Math.max(0, Long.parseLong(retryAfter.trim()));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,308 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.fluent.Request;
+import org.apache.http.entity.ContentType;
+import org.json.JSONArray;
+
+import com.vmware.vcf.rest.examples.model.JsonBinder;
+import com.vmware.vcf.rest.examples.model.Task;
+import com.vmware.vcf.rest.examples.model.Validation;
+
+/**
+ * Commissions many host spec batches concurrently. Each batch flows through validation
+ * (/v1/hosts/validations/commissions), commissioning (/v1/hosts) and task tracking on its own, so a
+ * batch is handed to commissioning as soon as its validation passes, independent of the others.
+ *
+ * <p>At most {@code maxInFlightJobs} batches hold a validation or commission job on SDDC Manager at
+ * any time. Submitting a further batch blocks the caller until a slot frees up, which gives
+ * backpressure to lazily generated spec sources.
+ *
+ * @author VMware Inc
+ */
+public class HostCommissionPipeline {
+
+  /** Outcome of one host spec batch */
+  public static class Result {
+    final String hostsSpec;
+    volatile String validationId;
+    volatile boolean validationPassed;
+    volatile String taskId;
+    volatile String status;
+    volatile Throwable error;
+
+    Result(String hostsSpec) {
+      this.hostsSpec = hostsSpec;
+    }
+
+    public String getHostsSpec() {
+      return hostsSpec;
+    }
+
+    public String getValidationId() {
+      return validationId;
+    }
+
+    public boolean isValidationPassed() {
+      return validationPassed;
+    }
+
+    /** @return Commission task id, or null if commissioning was not started */
+    public String getTaskId() {
+      return taskId;
+    }
+
+    /** @return Final commission task status, or null if commissioning was not started */
+    public String getStatus() {
+      return status;
+    }
+
+    /** @return Failure that stopped the batch, or null */
+    public Throwable getError() {
+      return error;
+    }
+
+    @Override
+    public String toString() {
+      return "Result [validationId="
+          + validationId
+          + ", validationPassed="
+          + validationPassed
+          + ", taskId="
+          + taskId
+          + ", status="
+          + status
+          + ", error="
+          + error
+          + "]";
+    }
+  }
+
+  private final Client client;
+  private final Semaphore inFlightJobs;
+  private final long validationTimeoutMillis;
+  private final long commissionTimeoutMillis;
+
+  public HostCommissionPipeline(
+      Client client,
+      int maxInFlightJobs,
+      long validationTimeout,
+      long commissionTimeout,
+      TimeUnit unit) {
+    this.client = client;
+    this.inFlightJobs = new Semaphore(Math.max(1, maxInFlightJobs));
+    this.validationTimeoutMillis = unit.toMillis(validationTimeout);
+    this.commissionTimeoutMillis = unit.toMillis(commissionTimeout);
+  }
+
+  /**
+   * Run every batch through the pipeline and wait for all of them
+   *
+   * @param hostsSpecs Host commission spec batches, each a JSON array of host specs
+   * @return Per batch outcome, in input order
+   * @throws InterruptedException
+   */
+  public List<Result> run(Stream<String> hostsSpecs) throws InterruptedException {
+    List<CompletableFuture<Result>> futures = new ArrayList<>();
+    for (Iterator<String> specs = hostsSpecs.iterator(); specs.hasNext(); ) {
+      futures.add(submit(specs.next()));
+    }
+    List<Result> results = new ArrayList<>(futures.size());
+    for (CompletableFuture<Result> future : futures) {
+      results.add(future.join());
+    }
+    InventoryIndex index = client.getInventoryIndexIfCreated();
+    if (index != null) {
+      index.refreshHostsAsync();
+    }
+    return results;
+  }
+
+  /**
+   * Start one batch, blocking while the in-flight job cap is reached. A batch whose commission an
+   * earlier run submitted and that is still in progress, according to the task journal, is not
+   * validated or submitted again; its task is tracked instead.
+   *
+   * @param hostsSpec JSON array of host specs
+   * @return Future completed with the batch outcome; it never completes exceptionally
+   * @throws InterruptedException
+   */
+  public CompletableFuture<Result> submit(String hostsSpec) throws InterruptedException {
+    inFlightJobs.acquire();
+    Result result = new Result(hostsSpec);
+    CompletableFuture<RestResponse> task;
+    try {
+      task = start(result);
+    } catch (RuntimeException e) {
+      // Nothing was started that would release the slot when it finishes
+      task = CompletableFuture.failedFuture(e);
+    }
+    return complete(result, task);
+  }
+
+  /**
+   * Start the jobs of one batch, or reattach to its journaled commission task
+   *
+   * @param result Outcome of the batch, filled in as its jobs progress
+   * @return Future completed with the commission task document, or with null if the batch stopped
+   *     at validation
+   */
+  private CompletableFuture<RestResponse> start(Result result) {
+    String hostsSpec = result.hostsSpec;
+    TaskTracker tracker = client.getTaskTracker();
+    String submittedTaskId = client.findSubmittedTask("/v1/hosts", hostsSpec);
+    if (submittedTaskId != null) {
+      result.validationPassed = true;
+      result.taskId = submittedTaskId;
+      return tracker.trackTask(submittedTaskId, commissionTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    return CompletableFuture.supplyAsync(
+            () -> readValidation(post("/v1/hosts/validations/commissions", hostsSpec)).getId(),
+            client.getExecutorService())
+        .thenCompose(
+            validationId -> {
+              result.validationId = validationId;
+              return tracker.track(
+                  TaskTracker.Kind.HOST_VALIDATION,
+                  validationId,
+                  validationTimeoutMillis,
+                  TimeUnit.MILLISECONDS);
+            })
+        .thenComposeAsync(
+            validation -> {
+              result.validationPassed = isValidationSuccessful(validation);
+              if (!result.validationPassed) {
+                return CompletableFuture.<RestResponse>completedFuture(null);
+              }
+              result.taskId = readTask(post("/v1/hosts", hostsSpec)).getId();
+              client.recordSubmittedTask("/v1/hosts", hostsSpec, result.taskId);
+              return tracker.trackTask(
+                  result.taskId, commissionTimeoutMillis, TimeUnit.MILLISECONDS);
+            },
+            client.getExecutorService());
+  }
+
+  /**
+   * Release the job slot of a batch and fill in its outcome once its commission task finished
+   *
+   * @param result
+   * @param task Future commission task document, or null if the batch stopped at validation
+   * @return Future completed with the batch outcome; it never completes exceptionally
+   */
+  private CompletableFuture<Result> complete(Result result, CompletableFuture<RestResponse> task) {
+    return task.handle(
+        (taskDocument, e) -> {
+          inFlightJobs.release();
+          if (e != null) {
+            result.error = e instanceof CompletionException ? e.getCause() : e;
+          } else if (taskDocument != null) {
+            try {
+              result.status = readTask(taskDocument).getStatus();
+            } catch (CompletionException readError) {
+              result.error = readError.getCause();
+            }
+          }
+          return result;
+        });
+  }
+
+  /**
+   * Start an SDDC Manager job
+   *
+   * @param path
+   * @param hostsSpec
+   * @return Accepted response, the validation or task document
+   * @throws CompletionException if the job was not accepted
+   */
+  private RestResponse post(String path, String hostsSpec) {
+    try {
+      RestResponse response =
+          client.execute(
+              Request.Post(client.getBaseUrl() + path)
+                  .bodyString(hostsSpec, ContentType.APPLICATION_JSON));
+      if (response.getStatusCode() != HttpStatus.SC_ACCEPTED) {
+        throw new IllegalStateException(
+            path
+                + " was not accepted, response code : "
+                + response.getStatusCode()
+                + " , error code : "
+                + response.getErrorCode());
+      }
+      return response;
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new CompletionException(e);
+    }
+  }
+
+  /**
+   * @param response Validation status document
+   * @return true if the validation finished and every check that reports a result succeeded
+   * @throws CompletionException if the document cannot be read
+   */
+  static boolean isValidationSuccessful(RestResponse response) {
+    return readValidation(response).isSuccessful();
+  }
+
+  /**
+   * @param response Validation status document
+   * @return Bound validation
+   * @throws CompletionException if the document cannot be read
+   */
+  static Validation readValidation(RestResponse response) {
+    return read(response, JsonBinder::readValidation);
+  }
+
+  /**
+   * @param response Task document
+   * @return Bound task
+   * @throws CompletionException if the document cannot be read
+   */
+  static Task readTask(RestResponse response) {
+    return read(response, JsonBinder::readTask);
+  }
+
+  private static <T> T read(RestResponse response, JsonBinder.Reader<T> reader) {
+    try {
+      return response.read(reader);
+    } catch (IOException e) {
+      throw new CompletionException(
+          new IOException(e.getMessage() + " , response code : " + response.getStatusCode(), e));
+    }
+  }
+
+  /**
+   * Split a host commission spec into batches of at most {@code batchSize} hosts
+   *
+   * @param hostsSpec JSON array of host specs
+   * @param batchSize
+   * @return Lazily built batches
+   */
+  public static Stream<String> batches(String hostsSpec, int batchSize) {
+    JSONArray hosts = new JSONArray(hostsSpec);
+    int size = Math.max(1, batchSize);
+    int batchCount = (hosts.length() + size - 1) / size;
+    return Stream.iterate(0, i -> i + 1)
+        .limit(batchCount)
+        .map(
+            batch -> {
+              JSONArray spec = new JSONArray();
+              for (int i = batch * size; i < Math.min(hosts.length(), (batch + 1) * size); i++) {
+                spec.put(hosts.get(i));
+              }
+              return spec.toString();
+            });
+  }
+}
@@ -2,28 +2,33 @@
 package com.vmware.vcf.rest.examples;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.fluent.Request;
 import org.apache.http.entity.ContentType;
-import org.json.JSONObject;
+
+import com.vmware.vcf.rest.examples.logging.Log;
+import com.vmware.vcf.rest.examples.model.HostSpec;
+import com.vmware.vcf.rest.examples.model.JsonBinder;
+import com.vmware.vcf.rest.examples.model.SpecTemplate;
 
 public class HostExample {
 
-  static int POLL_INTERVAL_SECONDS = 30;
   static int MAX_HOST_VALIDATION_POLL_TIME_MINUTES = 30;
   static int MAX_HOST_COMMISSION_POLL_TIME_MINUTES = 60;
 
+  private static final Log LOG = Log.getLog(HostExample.class);
+
   Client client;
 
   public HostExample() {
@@ -45,32 +50,18 @@ public class HostExample {
   public boolean pollHostValidation(String id)
       throws InterruptedException, UnsupportedOperationException, IOException,
           KeyManagementException, NoSuchAlgorithmException, KeyStoreException {
-    boolean isValidationSuccessful = true;
-    String executionStatus = "IN_PROGRESS";
-    long timeout =
-        System.currentTimeMillis()
-            + TimeUnit.MINUTES.toMillis(MAX_HOST_VALIDATION_POLL_TIME_MINUTES);
-    String responseString = "";
-    while (System.currentTimeMillis() < timeout && executionStatus.equals("IN_PROGRESS")) {
-      System.out.println("Waiting for Host validation");
-      Thread.sleep(TimeUnit.SECONDS.toMillis(POLL_INTERVAL_SECONDS));
-      Request pollRequest =
-          Request.Get(client.baseUrl + "/v1/hosts/validations/" + id)
-              .addHeader("Content-Type", ContentType.APPLICATION_JSON.toString());
-      HttpResponse pollResponse = client.execute(pollRequest);
-      responseString =
-          IOUtils.toString(pollResponse.getEntity().getContent(), Charset.defaultCharset());
-      System.out.println(responseString);
-      executionStatus = new JSONObject(responseString).getString("executionStatus");
-    }
-    for (Object s : new JSONObject(responseString).getJSONArray("validationChecks")) {
-      if (new JSONObject(s).has("resultStatus")
-          && !new JSONObject(s).getString("resultStatus").equals("SUCCEEDED")) {
-        isValidationSuccessful = false;
-      }
-    }
-    System.out.println(
-        "Exit pollHostValidation, isValidationSuccessful - " + isValidationSuccessful);
+    LOG.info("Waiting for Host validation");
+    RestResponse pollResponse =
+        TaskTracker.await(
+            client
+                .getTaskTracker()
+                .track(
+                    TaskTracker.Kind.HOST_VALIDATION,
+                    id,
+                    MAX_HOST_VALIDATION_POLL_TIME_MINUTES,
+                    TimeUnit.MINUTES));
+    boolean isValidationSuccessful = pollResponse.read(JsonBinder::readValidation).isSuccessful();
+    LOG.info("Exit pollHostValidation, isValidationSuccessful - {}", isValidationSuccessful);
     return isValidationSuccessful;
   }
 
@@ -89,23 +80,32 @@ public class HostExample {
   public String pollHostCommission(String id)
       throws InterruptedException, UnsupportedOperationException, IOException,
           KeyManagementException, NoSuchAlgorithmException, KeyStoreException {
-    String status = "In Progress";
-    long timeout =
-        System.currentTimeMillis()
-            + TimeUnit.MINUTES.toMillis(MAX_HOST_COMMISSION_POLL_TIME_MINUTES);
-    while (System.currentTimeMillis() < timeout && status.equals("In Progress")) {
-      System.out.println("Waiting for Host commission, status - " + status);
-      Thread.sleep(TimeUnit.SECONDS.toMillis(POLL_INTERVAL_SECONDS));
-      Request pollRequest = Request.Get(client.baseUrl + "/v1/tasks/" + id);
-      HttpResponse pollResponse = client.execute(pollRequest);
-      String responseString =
-          IOUtils.toString(pollResponse.getEntity().getContent(), Charset.defaultCharset());
-      status = new JSONObject(responseString).getString("status");
-    }
-    System.out.println("Exit pollHostCommission, status - " + status);
+    LOG.info("Waiting for Host commission, id - {}", id);
+    RestResponse pollResponse =
+        TaskTracker.await(
+            client
+                .getTaskTracker()
+                .trackTask(id, MAX_HOST_COMMISSION_POLL_TIME_MINUTES, TimeUnit.MINUTES));
+    String status = pollResponse.read(JsonBinder::readTask).getStatus();
+    LOG.info("Exit pollHostCommission, status - {}", status);
     return status;
   }
 
+  /**
+   * Resolve a host FQDN to its id through the client's inventory index
+   *
+   * @param fqdn
+   * @return Host id, or null if the host is not known
+   * @throws IOException
+   */
+  public String getHostId(String fqdn) throws IOException {
+    try {
+      return client.getInventoryIndex().getHostId(fqdn);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
   /**
    * Validate Host commission spec
    *
@@ -122,20 +122,33 @@ public class HostExample {
     Request request =
         Request.Post(client.baseUrl + "/v1/hosts/validations/commissions")
             .bodyString(hostsSpec, ContentType.APPLICATION_JSON);
-    HttpResponse response = client.execute(request);
-    String responseContent =
-        IOUtils.toString(response.getEntity().getContent(), Charset.defaultCharset());
-    if (response.getStatusLine().getStatusCode() == HttpStatus.SC_ACCEPTED) {
-      System.out.println("Host Validation Started");
-      JSONObject responseJson = new JSONObject(responseContent);
-      String id = responseJson.getString("id");
+    RestResponse response = client.execute(request);
+    if (response.getStatusCode() == HttpStatus.SC_ACCEPTED) {
+      LOG.info("Host Validation Started");
+      String id = response.read(JsonBinder::readValidation).getId();
       boolean validationStatus = pollHostValidation(id);
-      System.out.println("Exit validateHosts, validationStatus - " + validationStatus);
+      LOG.info("Exit validateHosts, validationStatus - {}", validationStatus);
     } else {
-      System.out.println("Host Validation has not started");
+      LOG.warn("Host Validation has not started");
     }
   }
 
+  /**
+   * Validate typed host specs
+   *
+   * @param hosts
+   * @throws KeyManagementException
+   * @throws NoSuchAlgorithmException
+   * @throws KeyStoreException
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  public void validateHosts(List<HostSpec> hosts)
+      throws KeyManagementException, NoSuchAlgorithmException, KeyStoreException, IOException,
+          InterruptedException {
+    validateHosts(JsonBinder.writeHostSpecs(hosts));
+  }
+
   /**
    * Commission Hosts
    *
@@ -150,31 +163,146 @@ public class HostExample {
   public void commissionHosts(String hostsSpec)
       throws KeyManagementException, NoSuchAlgorithmException, KeyStoreException, IOException,
           UnsupportedOperationException, InterruptedException {
-    Request request =
-        Request.Post(client.baseUrl + "/v1/hosts")
-            .bodyString(hostsSpec, ContentType.APPLICATION_JSON);
-    HttpResponse response = client.execute(request);
-    String responseContent =
-        IOUtils.toString(response.getEntity().getContent(), Charset.defaultCharset());
-    if (response.getStatusLine().getStatusCode() == HttpStatus.SC_ACCEPTED) {
-      System.out.println("Host Validation Started");
-      JSONObject responseJson = new JSONObject(responseContent);
-      String id = responseJson.getString("id");
-      String status = pollHostCommission(id);
-      System.out.println("Exit host commission, status - " + status);
-    } else {
-      System.out.println("Host Validation has not started");
+    String id = client.findSubmittedTask("/v1/hosts", hostsSpec);
+    if (id == null) {
+      Request request =
+          Request.Post(client.baseUrl + "/v1/hosts")
+              .bodyString(hostsSpec, ContentType.APPLICATION_JSON);
+      RestResponse response = client.execute(request);
+      if (response.getStatusCode() != HttpStatus.SC_ACCEPTED) {
+        LOG.warn("Host Validation has not started");
+        return;
+      }
+      LOG.info("Host Validation Started");
+      id = response.read(JsonBinder::readTask).getId();
+      client.recordSubmittedTask("/v1/hosts", hostsSpec, id);
+    }
+    String status = pollHostCommission(id);
+    // Commissioned hosts get their ids server side, so pick them up with a background refresh
+    InventoryIndex index = client.getInventoryIndexIfCreated();
+    if (index != null) {
+      index.refreshHostsAsync();
     }
+    LOG.info("Exit host commission, status - {}", status);
   }
 
+  /**
+   * Commission typed host specs
+   *
+   * @param hosts
+   * @throws KeyManagementException
+   * @throws NoSuchAlgorithmException
+   * @throws KeyStoreException
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  public void commissionHosts(List<HostSpec> hosts)
+      throws KeyManagementException, NoSuchAlgorithmException, KeyStoreException, IOException,
+          InterruptedException {
+    commissionHosts(JsonBinder.writeHostSpecs(hosts));
+  }
+
+  /**
+   * Commission a large host spec in parallel: the hosts are split into batches and every batch is
+   * validated, commissioned and tracked independently, with at most {@code maxInFlightJobs} jobs
+   * on SDDC Manager at a time
+   *
+   * @param hostsSpec
+   * @param batchSize
+   * @param maxInFlightJobs
+   * @return Per batch outcome
+   * @throws InterruptedException
+   */
+  public List<HostCommissionPipeline.Result> commissionHostsInParallel(
+      String hostsSpec, int batchSize, int maxInFlightJobs) throws InterruptedException {
+    HostCommissionPipeline pipeline =
+        new HostCommissionPipeline(
+            client,
+            maxInFlightJobs,
+            MAX_HOST_VALIDATION_POLL_TIME_MINUTES,
+            MAX_HOST_COMMISSION_POLL_TIME_MINUTES,
+            TimeUnit.MINUTES);
+    List<HostCommissionPipeline.Result> results =
+        pipeline.run(HostCommissionPipeline.batches(hostsSpec, batchSize));
+    for (HostCommissionPipeline.Result result : results) {
+      LOG.info("Host commission batch - {}", result);
+    }
+    return results;
+  }
+
+  /**
+   * Commission a fleet generated from a host spec template. Batches are rendered only as the
+   * pipeline takes them, so with {@code maxInFlightJobs} jobs running no more than that many
+   * batches of specs exist at a time, however large {@code hostCount} is.
+   *
+   * @param template Host spec template, one host object
+   * @param hostCount Number of hosts, capped by the template's bounded variables
+   * @param batchSize
+   * @param maxInFlightJobs
+   * @return Per batch outcome
+   * @throws InterruptedException
+   */
+  public List<HostCommissionPipeline.Result> commissionHosts(
+      SpecTemplate template, int hostCount, int batchSize, int maxInFlightJobs)
+      throws InterruptedException {
+    HostCommissionPipeline pipeline =
+        new HostCommissionPipeline(
+            client,
+            maxInFlightJobs,
+            MAX_HOST_VALIDATION_POLL_TIME_MINUTES,
+            MAX_HOST_COMMISSION_POLL_TIME_MINUTES,
+            TimeUnit.MINUTES);
+    List<HostCommissionPipeline.Result> results =
+        pipeline.run(template.batches(hostCount, batchSize));
+    for (HostCommissionPipeline.Result result : results) {
+      LOG.info("Host commission batch - {}", result);
+    }
+    return results;
+  }
+
+  /**
+   * Without arguments the hosts of hostcommission.json are commissioned. With a host count, and
+   * optionally the first host number, a batch size and a job cap, that many hosts are generated
+   * from hostcommission_template.json instead and commissioned in parallel.
+   *
+   * @param args [hostCount [firstHost [batchSize [maxInFlightJobs]]]]
+   */
   public static void main(String[] args)
       throws IOException, URISyntaxException, KeyManagementException, NoSuchAlgorithmException,
           KeyStoreException, InterruptedException {
     HostExample hostEx = new HostExample();
-    String hostsSpec =
-        new String(
+    if (args.length > 0) {
+      SpecTemplate template =
+          new SpecTemplate(
+                  new String(
+                      Files.readAllBytes(
+                          Paths.get(
+                              ClassLoader.getSystemResource("hostcommission_template.json")
+                                  .toURI())),
+                      StandardCharsets.UTF_8))
+              .sequence("host", args.length > 1 ? Long.parseLong(args[1]) : 5, 1, 0)
+              .constant("networkPoolId", "b671edf8-103a-4e6e-bc84-ed06fd96758f")
+              .constant("networkPoolName", "bringup-networkpool");
+      try {
+        hostEx.commissionHosts(
+            template,
+            Integer.parseInt(args[0]),
+            args.length > 2 ? Integer.parseInt(args[2]) : 8,
+            args.length > 3 ? Integer.parseInt(args[3]) : 4);
+      } finally {
+        hostEx.client.close();
+      }
+      return;
+    }
+    List<HostSpec> hosts =
+        JsonBinder.readHostSpecs(
             Files.readAllBytes(
                 Paths.get(ClassLoader.getSystemResource("hostcommission.json").toURI())));
-    hostEx.commissionHosts(hostsSpec);
+    hostEx.client.getTaskTracker().onEvent(event -> LOG.info("Task event - {}", event));
+    try {
+      hostEx.commissionHosts(hosts);
+    } finally {
+      hostEx.client.close();
+    }
   }
 }
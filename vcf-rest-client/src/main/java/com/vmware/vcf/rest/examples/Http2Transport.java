@@ -0,0 +1,316 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import com.vmware.vcf.rest.examples.instrumentation.ClientInstrumentation;
+import com.vmware.vcf.rest.examples.logging.Log;
+
+/**
+ * Transport on the JDK {@link HttpClient}, which negotiates HTTP/2 over TLS and multiplexes
+ * concurrent calls as streams of a single connection, so hundreds of polls and list calls in
+ * flight do not need hundreds of TLS connections to SDDC Manager. Requests are sent
+ * asynchronously by the JDK client and the calling thread only waits for the response head;
+ * bodies stream from the connection as with the blocking transport.
+ *
+ * <p>The request timeout of the JDK client ends when the response head arrives. Bodies are
+ * guarded by a watchdog instead, which closes a body that received no data for the same timeout,
+ * so a stalled read fails with a {@link SocketTimeoutException} like a socket timeout of the
+ * blocking transport rather than hanging.
+ *
+ * <p>If SDDC Manager does not offer HTTP/2 the JDK client falls back to HTTP/1.1 with its own
+ * unbounded connection pool, and the endpoint concurrency limits of the client are then what
+ * keeps the number of connections in check. Like the default transport, it trusts any
+ * certificate, as the examples run against appliances with self-signed ones.
+ *
+ * @author VMware Inc
+ */
+public class Http2Transport implements Transport {
+
+  private static final Log LOG = Log.getLog(Http2Transport.class);
+  /** Headers the JDK client sets itself and refuses from callers */
+  private static final Set<String> RESTRICTED_HEADERS =
+      Set.of("connection", "content-length", "expect", "host", "upgrade");
+  private static final ProtocolVersion HTTP_2 = new ProtocolVersion("HTTP", 2, 0);
+  private static final ProtocolVersion HTTP_1_1 = new ProtocolVersion("HTTP", 1, 1);
+
+  /** Response body closed by the watchdog once no data arrived for the read timeout */
+  private class WatchedBody extends FilterInputStream {
+    private volatile long lastReadNanos = System.nanoTime();
+    private volatile boolean timedOut;
+    private boolean closed;
+    private ScheduledFuture<?> check;
+
+    WatchedBody(InputStream body) {
+      super(body);
+      schedule(readTimeoutNanos);
+    }
+
+    private synchronized void schedule(long delayNanos) {
+      if (!closed) {
+        check = watchdog.schedule(this::check, delayNanos, TimeUnit.NANOSECONDS);
+      }
+    }
+
+    private void check() {
+      long idleNanos = System.nanoTime() - lastReadNanos;
+      if (idleNanos < readTimeoutNanos) {
+        schedule(readTimeoutNanos - idleNanos);
+        return;
+      }
+      timedOut = true;
+      try {
+        in.close();
+      } catch (IOException e) {
+        // The reader fails with the timeout either way
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      try {
+        int b = in.read();
+        lastReadNanos = System.nanoTime();
+        return b;
+      } catch (IOException e) {
+        throw timedOut ? timeout(e) : e;
+      }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      try {
+        int n = in.read(b, off, len);
+        lastReadNanos = System.nanoTime();
+        return n;
+      } catch (IOException e) {
+        throw timedOut ? timeout(e) : e;
+      }
+    }
+
+    private SocketTimeoutException timeout(IOException cause) {
+      SocketTimeoutException timeout =
+          new SocketTimeoutException(
+              "No response data for " + TimeUnit.NANOSECONDS.toMillis(readTimeoutNanos) + " ms");
+      timeout.initCause(cause);
+      return timeout;
+    }
+
+    @Override
+    public void close() throws IOException {
+      synchronized (this) {
+        closed = true;
+        if (check != null) {
+          check.cancel(false);
+        }
+      }
+      in.close();
+    }
+  }
+
+  /** A response whose entity streams from the JDK client */
+  private static class StreamedResponse extends BasicHttpResponse implements CloseableHttpResponse {
+    private final InputStream body;
+
+    StreamedResponse(ProtocolVersion version, int statusCode, InputStream body) {
+      super(new BasicStatusLine(version, statusCode, null));
+      this.body = body;
+    }
+
+    @Override
+    public void close() throws IOException {
+      body.close();
+    }
+  }
+
+  private final HttpClient httpClient;
+  private final Duration requestTimeout;
+  private final long readTimeoutNanos;
+  private final ScheduledThreadPoolExecutor watchdog;
+  private final ClientInstrumentation instrumentation;
+  private final AtomicBoolean versionLogged = new AtomicBoolean();
+
+  /**
+   * @param connectTimeoutMillis
+   * @param requestTimeoutMillis Time to wait for the response head, and for data of the body
+   * @param instrumentation Receives the request sizes
+   */
+  public Http2Transport(
+      int connectTimeoutMillis, int requestTimeoutMillis, ClientInstrumentation instrumentation) {
+    this.httpClient =
+        HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+            .sslContext(trustAllSslContext())
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .build();
+    this.requestTimeout = Duration.ofMillis(requestTimeoutMillis);
+    this.readTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(requestTimeoutMillis);
+    this.watchdog = new ScheduledThreadPoolExecutor(1, TaskTracker.daemonThreads("http2-watchdog"));
+    // Most bodies are read long before their check is due
+    this.watchdog.setRemoveOnCancelPolicy(true);
+    this.instrumentation = instrumentation;
+  }
+
+  @Override
+  public String getName() {
+    return "http2";
+  }
+
+  @Override
+  public CloseableHttpResponse execute(HttpUriRequest request, HttpContext context)
+      throws IOException {
+    HttpRequest.Builder builder =
+        HttpRequest.newBuilder(request.getURI()).timeout(requestTimeout);
+    for (Header header : request.getAllHeaders()) {
+      if (!RESTRICTED_HEADERS.contains(header.getName().toLowerCase(Locale.ROOT))) {
+        builder.header(header.getName(), header.getValue());
+      }
+    }
+    HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.noBody();
+    HttpEntity entity =
+        request instanceof HttpEntityEnclosingRequest
+            ? ((HttpEntityEnclosingRequest) request).getEntity()
+            : null;
+    if (entity != null) {
+      byte[] bytes = EntityUtils.toByteArray(entity);
+      body = HttpRequest.BodyPublishers.ofByteArray(bytes);
+      if (entity.getContentType() != null && !request.containsHeader("Content-Type")) {
+        builder.header("Content-Type", entity.getContentType().getValue());
+      }
+      if (bytes.length > 0) {
+        instrumentation.bytesSent(
+            instrumentation.endpoint(request.getURI().getPath()), bytes.length);
+      }
+    }
+    builder.method(request.getMethod(), body);
+    HttpResponse<InputStream> response;
+    try {
+      response = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+    } catch (HttpConnectTimeoutException e) {
+      // Surfaced like the blocking transport does, so the retry policy treats both alike
+      ConnectTimeoutException timeout = new ConnectTimeoutException(e.getMessage());
+      timeout.initCause(e);
+      throw timeout;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for " + request.getURI());
+    }
+    return toHttpResponse(response);
+  }
+
+  private CloseableHttpResponse toHttpResponse(HttpResponse<InputStream> response) {
+    boolean http2 = response.version() == HttpClient.Version.HTTP_2;
+    if (versionLogged.compareAndSet(false, true)) {
+      LOG.info("SDDC Manager answered over {}", http2 ? "HTTP/2" : "HTTP/1.1");
+    }
+    InputStream body = new WatchedBody(response.body());
+    StreamedResponse converted =
+        new StreamedResponse(http2 ? HTTP_2 : HTTP_1_1, response.statusCode(), body);
+    for (Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+      for (String value : header.getValue()) {
+        converted.addHeader(header.getKey(), value);
+      }
+    }
+    BasicHttpEntity entity = new BasicHttpEntity();
+    entity.setContent(body);
+    entity.setContentLength(response.headers().firstValueAsLong("Content-Length").orElse(-1));
+    response.headers().firstValue("Content-Type").ifPresent(entity::setContentType);
+    converted.setEntity(entity);
+    return converted;
+  }
+
+  private static SSLContext trustAllSslContext() {
+    // An extended trust manager, so that the JDK does not add its own host name check on top
+    TrustManager trustAll =
+        new X509ExtendedTrustManager() {
+          @Override
+          public void checkClientTrusted(X509Certificate[] chain, String authType) {}
+
+          @Override
+          public void checkServerTrusted(X509Certificate[] chain, String authType) {}
+
+          @Override
+          public void checkClientTrusted(
+              X509Certificate[] chain, String authType, Socket socket) {}
+
+          @Override
+          public void checkServerTrusted(
+              X509Certificate[] chain, String authType, Socket socket) {}
+
+          @Override
+          public void checkClientTrusted(
+              X509Certificate[] chain, String authType, SSLEngine engine) {}
+
+          @Override
+          public void checkServerTrusted(
+              X509Certificate[] chain, String authType, SSLEngine engine) {}
+
+          @Override
+          public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+          }
+        };
+    try {
+      SSLContext sslContext = SSLContext.getInstance("TLS");
+      sslContext.init(null, new TrustManager[] {trustAll}, null);
+      return sslContext;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Unable to initialise SSL context", e);
+    }
+  }
+
+  /**
+   * Stop the watchdog and close the JDK client on Java 21 and later. Earlier clients cannot be
+   * closed; their connections go with the last reference.
+   */
+  @Override
+  public void close() throws IOException {
+    watchdog.shutdownNow();
+    if (httpClient instanceof AutoCloseable) {
+      try {
+        ((AutoCloseable) httpClient).close();
+      } catch (Exception e) {
+        throw new IOException("Unable to close HTTP client", e);
+      }
+    }
+  }
+}
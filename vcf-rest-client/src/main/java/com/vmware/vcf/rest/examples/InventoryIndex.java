@@ -0,0 +1,211 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.json.JSONObject;
+
+import com.vmware.vcf.rest.examples.logging.Log;
+
+/**
+ * In-memory lookup index over the SDDC Manager inventory: license key to license id and host FQDN
+ * to host id. The maps are loaded from the paged list endpoints on first use, refreshed in the
+ * background, and updated in place by the examples after successful add, commission and delete
+ * calls, so a lookup costs a hash map read instead of a list call and a linear scan.
+ *
+ * <p>A refresh builds a new map and swaps it in, so entries put while a refresh is running can be
+ * dropped until the next refresh brings them back.
+ *
+ * @author VMware Inc
+ */
+public class InventoryIndex implements AutoCloseable {
+
+  static int DEFAULT_REFRESH_SECONDS = 300;
+
+  private static final Log LOG = Log.getLog(InventoryIndex.class);
+
+  static final Set<String> LICENSE_FIELDS =
+      Collections.unmodifiableSet(new HashSet<>(Arrays.asList("id", "key")));
+  static final Set<String> HOST_FIELDS =
+      Collections.unmodifiableSet(new HashSet<>(Arrays.asList("id", "fqdn")));
+
+  private final Client client;
+  private final ScheduledExecutorService refresher;
+  private volatile Map<String, String> licenseKeyIds;
+  private volatile Map<String, String> hostIds;
+
+  public InventoryIndex(Client client) {
+    this.client = client;
+    this.refresher =
+        Executors.newSingleThreadScheduledExecutor(TaskTracker.daemonThreads("inventory-index"));
+    long refreshSeconds =
+        client.getIntProperty("inventoryIndexRefreshSeconds", DEFAULT_REFRESH_SECONDS);
+    if (refreshSeconds > 0) {
+      refresher.scheduleWithFixedDelay(
+          this::refreshQuietly, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * @param key
+   * @return License key id, or null if the key is not known
+   */
+  public String getLicenseKeyId(String key) {
+    Map<String, String> ids = licenseKeyIds;
+    if (ids == null) {
+      synchronized (this) {
+        ids = licenseKeyIds != null ? licenseKeyIds : refreshLicenseKeys();
+      }
+    }
+    return ids.get(key);
+  }
+
+  /**
+   * @param fqdn
+   * @return Host id, or null if the host is not known
+   */
+  public String getHostId(String fqdn) {
+    Map<String, String> ids = hostIds;
+    if (ids == null) {
+      synchronized (this) {
+        ids = hostIds != null ? hostIds : refreshHosts();
+      }
+    }
+    return ids.get(fqdn);
+  }
+
+  public void putLicenseKey(String key, String id) {
+    Map<String, String> ids = licenseKeyIds;
+    if (ids != null) {
+      ids.put(key, id);
+    }
+  }
+
+  public void removeLicenseKey(String key) {
+    Map<String, String> ids = licenseKeyIds;
+    if (ids != null) {
+      ids.remove(key);
+    }
+  }
+
+  public void putHost(String fqdn, String id) {
+    Map<String, String> ids = hostIds;
+    if (ids != null) {
+      ids.put(fqdn, id);
+    }
+  }
+
+  public void removeHost(String fqdn) {
+    Map<String, String> ids = hostIds;
+    if (ids != null) {
+      ids.remove(fqdn);
+    }
+  }
+
+  /**
+   * Reload the license key index from /v1/license-keys
+   *
+   * @return New license key to id map
+   */
+  public synchronized Map<String, String> refreshLicenseKeys() {
+    Map<String, String> ids = load("/v1/license-keys", LICENSE_FIELDS, "key");
+    licenseKeyIds = ids;
+    return ids;
+  }
+
+  /**
+   * Reload the host index from /v1/hosts
+   *
+   * @return New host FQDN to id map
+   */
+  public synchronized Map<String, String> refreshHosts() {
+    Map<String, String> ids = load("/v1/hosts", HOST_FIELDS, "fqdn");
+    hostIds = ids;
+    return ids;
+  }
+
+  /**
+   * Reload the host index in the background, e.g. after a commission task finished. Nothing is
+   * fetched while the host index has not been loaded, as the first lookup loads it anyway.
+   */
+  public void refreshHostsAsync() {
+    if (hostIds == null) {
+      return;
+    }
+    refresher.execute(
+        () -> {
+          try {
+            refreshHosts();
+          } catch (RuntimeException e) {
+            LOG.warn("Host index refresh failed - {}", e.getMessage());
+          }
+        });
+  }
+
+  /**
+   * Reload the license key index in the background, e.g. after a key was added. Nothing is
+   * fetched while the license key index has not been loaded.
+   */
+  public void refreshLicenseKeysAsync() {
+    if (licenseKeyIds == null) {
+      return;
+    }
+    refresher.execute(
+        () -> {
+          try {
+            refreshLicenseKeys();
+          } catch (RuntimeException e) {
+            LOG.warn("License key index refresh failed - {}", e.getMessage());
+          }
+        });
+  }
+
+  /** Periodic refresh of the indexes that have been loaded so far */
+  private void refreshQuietly() {
+    try {
+      if (licenseKeyIds != null) {
+        refreshLicenseKeys();
+      }
+      if (hostIds != null) {
+        refreshHosts();
+      }
+    } catch (RuntimeException e) {
+      LOG.warn("Inventory index refresh failed - {}", e.getMessage());
+    }
+  }
+
+  /**
+   * @param path List endpoint
+   * @param fields Fields to project
+   * @param keyField Field used as map key
+   * @return Map from key field to id
+   * @throws UncheckedIOException if the list call failed
+   */
+  private Map<String, String> load(String path, Set<String> fields, String keyField) {
+    Map<String, String> ids = new ConcurrentHashMap<>();
+    try (Stream<JSONObject> elements = client.getPaged(path, fields).stream()) {
+      elements.forEach(
+          element -> {
+            if (element.has(keyField) && element.has("id")) {
+              ids.put(element.getString(keyField), element.getString("id"));
+            }
+          });
+    }
+    return ids;
+  }
+
+  @Override
+  public void close() {
+    refresher.shutdownNow();
+  }
+}
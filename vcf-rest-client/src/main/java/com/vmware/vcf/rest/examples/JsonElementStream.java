@@ -0,0 +1,217 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Pull parser for SDDC Manager list responses. Instead of building the whole document, the
+ * {@code elements} array is read one element at a time and only the requested top level fields of
+ * each element are materialised. Visitors can stop the scan as soon as they found what they need.
+ *
+ * @author VMware Inc
+ */
+public class JsonElementStream {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  /** Receives list elements one at a time */
+  @FunctionalInterface
+  public interface ElementVisitor {
+
+    /**
+     * @param element Projected element
+     * @return true to continue with the next element, false to stop reading
+     */
+    boolean visit(JSONObject element);
+  }
+
+  /** One page of a list response: the projected elements and the page metadata */
+  public static class Page {
+    final List<JSONObject> elements;
+    final int pageNumber;
+    final int totalPages;
+
+    Page(List<JSONObject> elements, int pageNumber, int totalPages) {
+      this.elements = elements;
+      this.pageNumber = pageNumber;
+      this.totalPages = totalPages;
+    }
+
+    public List<JSONObject> getElements() {
+      return elements;
+    }
+
+    public int getPageNumber() {
+      return pageNumber;
+    }
+
+    public int getTotalPages() {
+      return totalPages;
+    }
+  }
+
+  private JsonElementStream() {}
+
+  /**
+   * Read the elements of a list response. The stream may hold either a page object with an {@code
+   * elements} array or a bare JSON array.
+   *
+   * @param in
+   * @param fields Top level fields to keep in each element, or null to keep all fields
+   * @param visitor
+   * @return Number of elements visited
+   * @throws IOException
+   */
+  public static int readElements(InputStream in, Set<String> fields, ElementVisitor visitor)
+      throws IOException {
+    int count = 0;
+    try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+      JsonToken token = parser.nextToken();
+      if (token == JsonToken.START_OBJECT) {
+        if (!moveToField(parser, "elements")) {
+          return 0;
+        }
+        token = parser.nextToken();
+      }
+      if (token != JsonToken.START_ARRAY) {
+        return 0;
+      }
+      while ((token = parser.nextToken()) != null && token != JsonToken.END_ARRAY) {
+        if (token != JsonToken.START_OBJECT) {
+          parser.skipChildren();
+          continue;
+        }
+        count++;
+        if (!visitor.visit(readObject(parser, fields))) {
+          break;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Read one page of a list response. Responses without {@code pageMetadata} are treated as a
+   * single page numbered 0.
+   *
+   * @param in
+   * @param fields Top level fields to keep in each element, or null to keep all fields
+   * @return Page
+   * @throws IOException
+   */
+  public static Page readPage(InputStream in, Set<String> fields) throws IOException {
+    List<JSONObject> elements = new ArrayList<>();
+    int pageNumber = 0;
+    int totalPages = 1;
+    try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        return new Page(elements, pageNumber, totalPages);
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String name = parser.currentName();
+        JsonToken token = parser.nextToken();
+        if (name.equals("elements") && token == JsonToken.START_ARRAY) {
+          while ((token = parser.nextToken()) != null && token != JsonToken.END_ARRAY) {
+            if (token == JsonToken.START_OBJECT) {
+              elements.add(readObject(parser, fields));
+            } else {
+              parser.skipChildren();
+            }
+          }
+        } else if (name.equals("pageMetadata") && token == JsonToken.START_OBJECT) {
+          JSONObject pageMetadata = readObject(parser, null);
+          pageNumber = pageMetadata.optInt("pageNumber", pageNumber);
+          totalPages = pageMetadata.optInt("totalPages", totalPages);
+        } else {
+          parser.skipChildren();
+        }
+      }
+    }
+    return new Page(elements, pageNumber, totalPages);
+  }
+
+  /**
+   * Read selected top level fields of a single JSON object, skipping everything else
+   *
+   * @param in
+   * @param fields Top level fields to keep, or null to keep all fields
+   * @return Projected object, empty if the stream does not hold an object
+   * @throws IOException
+   */
+  public static JSONObject readFields(InputStream in, Set<String> fields) throws IOException {
+    try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        return new JSONObject();
+      }
+      return readObject(parser, fields);
+    }
+  }
+
+  /**
+   * Advance to the value of a top level field of the current object, skipping the other fields
+   *
+   * @param parser
+   * @param name
+   * @return true if the field was found
+   * @throws IOException
+   */
+  private static boolean moveToField(JsonParser parser, String name) throws IOException {
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      if (name.equals(parser.currentName())) {
+        return true;
+      }
+      parser.nextToken();
+      parser.skipChildren();
+    }
+    return false;
+  }
+
+  private static JSONObject readObject(JsonParser parser, Set<String> fields) throws IOException {
+    JSONObject object = new JSONObject();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.currentName();
+      parser.nextToken();
+      if (fields == null || fields.contains(name)) {
+        object.put(name, readValue(parser));
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return object;
+  }
+
+  private static Object readValue(JsonParser parser) throws IOException {
+    switch (parser.currentToken()) {
+      case START_OBJECT:
+        return readObject(parser, null);
+      case START_ARRAY:
+        JSONArray array = new JSONArray();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+          array.put(readValue(parser));
+        }
+        return array;
+      case VALUE_STRING:
+        return parser.getText();
+      case VALUE_NUMBER_INT:
+      case VALUE_NUMBER_FLOAT:
+        return parser.getNumberValue();
+      case VALUE_TRUE:
+        return Boolean.TRUE;
+      case VALUE_FALSE:
+        return Boolean.FALSE;
+      default:
+        return JSONObject.NULL;
+    }
+  }
+}
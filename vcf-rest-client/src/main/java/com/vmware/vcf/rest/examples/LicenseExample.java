@@ -2,25 +2,29 @@
 package com.vmware.vcf.rest.examples;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
-import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.stream.Stream;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.fluent.Request;
 import org.apache.http.entity.ContentType;
-import org.json.JSONArray;
-import org.json.JSONObject;
+
+import com.vmware.vcf.rest.examples.logging.Log;
+import com.vmware.vcf.rest.examples.model.JsonBinder;
+import com.vmware.vcf.rest.examples.model.LicenseKey;
 
 public class LicenseExample {
 
+  private static final Log LOG = Log.getLog(LicenseExample.class);
+
   Client client;
 
   public LicenseExample() {
@@ -40,35 +44,86 @@ public class LicenseExample {
    */
   public void addLicense(String licenseSpec)
       throws KeyManagementException, NoSuchAlgorithmException, KeyStoreException, IOException {
+    RestResponse response = postLicense(licenseSpec);
+    if (response.getStatusCode() == HttpStatus.SC_CREATED) {
+      LOG.info("License add successful");
+    } else {
+      LOG.warn("License add failed");
+    }
+  }
+
+  /**
+   * Add a typed license key
+   *
+   * @param licenseKey
+   * @throws KeyManagementException
+   * @throws NoSuchAlgorithmException
+   * @throws KeyStoreException
+   * @throws IOException
+   */
+  public void addLicense(LicenseKey licenseKey)
+      throws KeyManagementException, NoSuchAlgorithmException, KeyStoreException, IOException {
+    addLicense(JsonBinder.writeLicenseKey(licenseKey));
+  }
+
+  /**
+   * Add many license keys with at most {@code concurrency} calls in flight over the shared
+   * connection pool
+   *
+   * @param licenseSpecs
+   * @param concurrency
+   * @return Per license spec outcome, in input order
+   * @throws InterruptedException
+   */
+  public List<OperationResult<String>> addLicenses(Stream<String> licenseSpecs, int concurrency)
+      throws InterruptedException {
+    return client.newBulkExecutor(concurrency).run(licenseSpecs.iterator(), this::postLicense);
+  }
+
+  /**
+   * Post a license spec and record the new key in the inventory index
+   *
+   * @param licenseSpec
+   * @return Response of the add call
+   * @throws KeyManagementException
+   * @throws NoSuchAlgorithmException
+   * @throws KeyStoreException
+   * @throws IOException
+   */
+  RestResponse postLicense(String licenseSpec)
+      throws KeyManagementException, NoSuchAlgorithmException, KeyStoreException, IOException {
     Request request =
         Request.Post(client.baseUrl + "/v1/license-keys")
             .bodyString(licenseSpec, ContentType.APPLICATION_JSON);
-    HttpResponse response = client.execute(request);
-    if (response.getStatusLine().getStatusCode() == HttpStatus.SC_CREATED) {
-      System.out.println("License add successful");
-    } else {
-      System.out.println("License add failed");
+    RestResponse response = client.execute(request);
+    InventoryIndex index = client.getInventoryIndexIfCreated();
+    if (index != null && response.getStatusCode() == HttpStatus.SC_CREATED) {
+      LicenseKey added = response.isJsonObject() ? response.read(JsonBinder::readLicenseKey) : null;
+      if (added != null && added.getId() != null && added.getKey() != null) {
+        index.putLicenseKey(added.getKey(), added.getId());
+      } else {
+        index.refreshLicenseKeysAsync();
+      }
     }
+    return response;
   }
 
   /**
    * Get all license keys
    *
-   * @return JSONObject
+   * @return License keys
    * @throws UnsupportedOperationException
    * @throws IOException
    * @throws KeyManagementException
    * @throws NoSuchAlgorithmException
    * @throws KeyStoreException
    */
-  public JSONObject getAllLicenseKeys()
+  public List<LicenseKey> getAllLicenseKeys()
       throws UnsupportedOperationException, IOException, KeyManagementException,
           NoSuchAlgorithmException, KeyStoreException {
     Request request = Request.Get(client.baseUrl + "/v1/license-keys");
-    HttpResponse response = client.execute(request);
-    String responseContent =
-        IOUtils.toString(response.getEntity().getContent(), Charset.defaultCharset());
-    JSONObject licenseKeys = new JSONObject(responseContent);
+    RestResponse response = client.execute(request);
+    List<LicenseKey> licenseKeys = response.read(JsonBinder::readLicenseKeys);
     return licenseKeys;
   }
 
@@ -76,22 +131,36 @@ public class LicenseExample {
    * Get license key metrics like usage and validity of a license key
    *
    * @param key
-   * @return JSONObject
+   * @return License key
    * @throws UnsupportedOperationException
    * @throws IOException
    * @throws KeyManagementException
    * @throws NoSuchAlgorithmException
    * @throws KeyStoreException
    */
-  public JSONObject getLicenseKey(String key)
+  public LicenseKey getLicenseKey(String key)
       throws UnsupportedOperationException, IOException, KeyManagementException,
           NoSuchAlgorithmException, KeyStoreException {
     Request request = Request.Get(client.baseUrl + "/v1/license-keys/"+key);
-    HttpResponse response = client.execute(request);
-    String responseContent =
-        IOUtils.toString(response.getEntity().getContent(), Charset.defaultCharset());
-    JSONObject licenseKeys = new JSONObject(responseContent);
-    return licenseKeys;
+    RestResponse response = client.execute(request);
+    LicenseKey licenseKey = response.read(JsonBinder::readLicenseKey);
+    return licenseKey;
+  }
+
+  /**
+   * Resolve a license key to its id through the client's inventory index. The index is loaded
+   * with one paged list call on first use, so repeated lookups cost a hash map read.
+   *
+   * @param key
+   * @return License key id, or null if the key is not present
+   * @throws IOException
+   */
+  public String findLicenseKeyId(String key) throws IOException {
+    try {
+      return client.getInventoryIndex().getLicenseKeyId(key);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
   }
 
   /**
@@ -106,36 +175,85 @@ public class LicenseExample {
    */
   public void deleteLicense(String key)
       throws KeyManagementException, NoSuchAlgorithmException, KeyStoreException, IOException {
-    JSONObject licenseKeys = getAllLicenseKeys();
-    String licenseKeyUuid = null;
-    System.out.println();
-    for (Object license : (JSONArray) licenseKeys.get("elements")) {
-      JSONObject lic = (JSONObject) license;
-      if (lic.keySet().contains("key") && lic.get("key").equals(key)) {
-        licenseKeyUuid = (String) lic.get("id");
-      }
-    }
+    String licenseKeyUuid = findLicenseKeyId(key);
     if (licenseKeyUuid == null) {
-      System.err.println("License key - " + key + " not found");
+      LOG.warn("License key - {} not found", key);
     } else {
-      Request request = Request.Delete(client.baseUrl + "/licensing/licensekeys/" + licenseKeyUuid);
-      HttpResponse response = client.execute(request);
-      if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-        System.out.println("License delete successful");
+      RestResponse response = deleteLicenseKey(key, licenseKeyUuid);
+      if (response.getStatusCode() == HttpStatus.SC_OK) {
+        LOG.info("License delete successful");
       }
     }
   }
 
+  /**
+   * Delete many license keys with at most {@code concurrency} calls in flight. The keys are
+   * resolved through the inventory index, so the whole batch costs one list call.
+   *
+   * @param keys
+   * @param concurrency
+   * @return Per key outcome, in input order
+   * @throws InterruptedException
+   * @throws IOException
+   */
+  public List<OperationResult<String>> deleteLicenses(Stream<String> keys, int concurrency)
+      throws InterruptedException, IOException {
+    try {
+      client.getInventoryIndex().refreshLicenseKeys();
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    return client
+        .newBulkExecutor(concurrency)
+        .run(
+            keys.iterator(),
+            key -> {
+              String licenseKeyUuid = findLicenseKeyId(key);
+              if (licenseKeyUuid == null) {
+                throw new IllegalArgumentException("License key - " + key + " not found");
+              }
+              return deleteLicenseKey(key, licenseKeyUuid);
+            });
+  }
+
+  /**
+   * Delete a license key by id and drop it from the cache and the inventory index
+   *
+   * @param key
+   * @param licenseKeyUuid
+   * @return Response of the delete call
+   * @throws KeyManagementException
+   * @throws NoSuchAlgorithmException
+   * @throws KeyStoreException
+   * @throws IOException
+   */
+  RestResponse deleteLicenseKey(String key, String licenseKeyUuid)
+      throws KeyManagementException, NoSuchAlgorithmException, KeyStoreException, IOException {
+    Request request = Request.Delete(client.baseUrl + "/licensing/licensekeys/" + licenseKeyUuid);
+    RestResponse response = client.execute(request);
+    // The delete path is outside /v1/license-keys, so drop the cached license views explicitly
+    client.getResponseCache().invalidate("/v1/license-keys");
+    InventoryIndex index = client.getInventoryIndexIfCreated();
+    if (index != null && response.getStatusCode() == HttpStatus.SC_OK) {
+      index.removeLicenseKey(key);
+    }
+    return response;
+  }
+
   public static void main(String[] args)
       throws IOException, KeyManagementException, NoSuchAlgorithmException, KeyStoreException,
           URISyntaxException {
     LicenseExample lic = new LicenseExample();
-    String licenseSpec =
-        new String(
+    LicenseKey licenseKey =
+        JsonBinder.readLicenseKey(
             Files.readAllBytes(Paths.get(ClassLoader.getSystemResource("license.json").toURI())));
-    lic.addLicense(licenseSpec);
-    System.out.println(lic.getAllLicenseKeys());
-    System.out.println(lic.getLicenseKey("AAAAA-BBBBB-CCCCC-DDDDD-EEEEE"));
-    lic.deleteLicense("AAAAA-BBBBB-CCCCC-DDDDD-EEEEE");
+    try {
+      lic.addLicense(licenseKey);
+      LOG.info("License keys - {}", lic.getAllLicenseKeys());
+      LOG.info("License key - {}", lic.getLicenseKey(licenseKey.getKey()));
+      lic.deleteLicense(licenseKey.getKey());
+    } finally {
+      lic.client.close();
+    }
   }
 }
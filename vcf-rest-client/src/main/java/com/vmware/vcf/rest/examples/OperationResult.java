@@ -0,0 +1,106 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+/**
+ * Outcome of one item of a bulk operation: the HTTP status, the SDDC Manager error code and
+ * remediation message when the call failed on the server, the client side exception when it
+ * failed locally, and the call latency.
+ *
+ * @author VMware Inc
+ */
+public class OperationResult<T> {
+
+  private final T item;
+  private final int statusCode;
+  private final String errorCode;
+  private final String remediationMessage;
+  private final Exception error;
+  private final long latencyMillis;
+
+  OperationResult(
+      T item,
+      int statusCode,
+      String errorCode,
+      String remediationMessage,
+      Exception error,
+      long latencyMillis) {
+    this.item = item;
+    this.statusCode = statusCode;
+    this.errorCode = errorCode;
+    this.remediationMessage = remediationMessage;
+    this.error = error;
+    this.latencyMillis = latencyMillis;
+  }
+
+  /**
+   * @param item
+   * @param response
+   * @param latencyMillis
+   * @return Result of a call that reached SDDC Manager
+   */
+  static <T> OperationResult<T> of(T item, RestResponse response, long latencyMillis) {
+    return new OperationResult<>(
+        item,
+        response.getStatusCode(),
+        response.getErrorCode(),
+        response.getRemediationMessage(),
+        null,
+        latencyMillis);
+  }
+
+  /**
+   * @param item
+   * @param error
+   * @param latencyMillis
+   * @return Result of a call that failed on the client side
+   */
+  static <T> OperationResult<T> failed(T item, Exception error, long latencyMillis) {
+    return new OperationResult<>(item, 0, null, error.getMessage(), error, latencyMillis);
+  }
+
+  public T getItem() {
+    return item;
+  }
+
+  /** @return HTTP status code, or 0 if the call did not get a response */
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  public String getErrorCode() {
+    return errorCode;
+  }
+
+  public String getRemediationMessage() {
+    return remediationMessage;
+  }
+
+  /** @return Client side failure, or null */
+  public Exception getError() {
+    return error;
+  }
+
+  public long getLatencyMillis() {
+    return latencyMillis;
+  }
+
+  /** @return true for a 2xx answer without an SDDC Manager error code */
+  public boolean isSuccessful() {
+    return error == null && errorCode == null && statusCode >= 200 && statusCode < 300;
+  }
+
+  @Override
+  public String toString() {
+    return "OperationResult [item="
+        + item
+        + ", statusCode="
+        + statusCode
+        + ", errorCode="
+        + errorCode
+        + ", remediationMessage="
+        + remediationMessage
+        + ", latencyMillis="
+        + latencyMillis
+        + "]";
+  }
+}
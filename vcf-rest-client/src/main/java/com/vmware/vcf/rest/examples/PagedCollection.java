@@ -0,0 +1,191 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.http.client.fluent.Request;
+import org.json.JSONObject;
+
+/**
+ * Lazy view over all elements of a paged SDDC Manager list endpoint. The first page is fetched when
+ * iteration starts; after that up to {@code prefetchCount} following pages are requested
+ * concurrently over the pooled connections while the caller consumes the current page, so at most
+ * a few pages are held in memory at any time. Cancelling the iteration aborts the prefetches that
+ * are still in flight, which closes their connections instead of downloading pages nobody reads.
+ *
+ * <p>Endpoints that do not return {@code pageMetadata} are treated as a single page.
+ *
+ * @author VMware Inc
+ */
+public class PagedCollection implements Iterable<JSONObject> {
+
+  private final Client client;
+  private final String path;
+  private final Set<String> fields;
+  private final int pageSize;
+  private final int prefetchCount;
+
+  PagedCollection(Client client, String path, Set<String> fields, int pageSize, int prefetchCount) {
+    this.client = client;
+    this.path = path;
+    this.fields = fields;
+    this.pageSize = pageSize;
+    this.prefetchCount = Math.max(1, prefetchCount);
+  }
+
+  @Override
+  public PageIterator iterator() {
+    return new PageIterator();
+  }
+
+  /**
+   * @return Sequential stream over all elements. Close the stream to cancel outstanding page
+   *     prefetches when it is not consumed to the end.
+   */
+  public Stream<JSONObject> stream() {
+    PageIterator iterator = iterator();
+    return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(
+                iterator, Spliterator.ORDERED | Spliterator.NONNULL),
+            false)
+        .onClose(iterator::cancel);
+  }
+
+  /**
+   * @param pageNumber Page to request, or null for the server default first page
+   * @return GET request for the page
+   */
+  Request pageRequest(Integer pageNumber) {
+    StringBuilder url = new StringBuilder(client.getBaseUrl()).append(path);
+    char separator = path.indexOf('?') < 0 ? '?' : '&';
+    if (pageSize > 0) {
+      url.append(separator).append("pageSize=").append(pageSize);
+      separator = '&';
+    }
+    if (pageNumber != null) {
+      url.append(separator).append("pageNumber=").append(pageNumber);
+    }
+    return Request.Get(url.toString());
+  }
+
+  /** A page request running in the background */
+  private static class Prefetch {
+    final Request request;
+    final Future<JsonElementStream.Page> page;
+
+    Prefetch(Request request, Future<JsonElementStream.Page> page) {
+      this.request = request;
+      this.page = page;
+    }
+
+    /**
+     * Abort the HTTP exchange, which releases its connection even while the body is being read,
+     * and interrupt the task if it is still waiting for a connection, a permit or a retry
+     */
+    void cancel() {
+      request.abort();
+      page.cancel(true);
+    }
+  }
+
+  private Prefetch fetchAsync(int pageNumber) {
+    Request request = pageRequest(pageNumber);
+    return new Prefetch(
+        request, client.getExecutorService().submit(() -> client.fetchPage(request, fields)));
+  }
+
+  /** Iterator over the elements of all pages, with background prefetch of following pages */
+  public class PageIterator implements Iterator<JSONObject> {
+
+    private final Deque<Prefetch> prefetched = new ArrayDeque<>();
+    private Iterator<JSONObject> current;
+    private int nextPageNumber;
+    private int lastPageNumber;
+
+    @Override
+    public boolean hasNext() {
+      if (current == null) {
+        start();
+      }
+      while (!current.hasNext()) {
+        if (prefetched.isEmpty()) {
+          return false;
+        }
+        current = join(prefetched.poll()).getElements().iterator();
+        prefetch();
+      }
+      return true;
+    }
+
+    @Override
+    public JSONObject next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return current.next();
+    }
+
+    /** Abort the page requests that have not been consumed yet */
+    public void cancel() {
+      for (Prefetch prefetch : prefetched) {
+        prefetch.cancel();
+      }
+      prefetched.clear();
+      current = Collections.emptyIterator();
+    }
+
+    /** Fetch the first page synchronously and derive the page range from its metadata */
+    private void start() {
+      JsonElementStream.Page first;
+      try {
+        first = client.fetchPage(pageRequest(null), fields);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+      current = first.getElements().iterator();
+      nextPageNumber = first.getPageNumber() + 1;
+      lastPageNumber = first.getPageNumber() + first.getTotalPages() - 1;
+      prefetch();
+    }
+
+    private void prefetch() {
+      while (prefetched.size() < prefetchCount && nextPageNumber <= lastPageNumber) {
+        prefetched.add(fetchAsync(nextPageNumber++));
+      }
+    }
+
+    private JsonElementStream.Page join(Prefetch prefetch) {
+      try {
+        return prefetch.page.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        cancel();
+        throw new IllegalStateException("Interrupted while waiting for page", e);
+      } catch (ExecutionException e) {
+        cancel();
+        if (e.getCause() instanceof IOException) {
+          throw new UncheckedIOException((IOException) e.getCause());
+        }
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+  }
+}
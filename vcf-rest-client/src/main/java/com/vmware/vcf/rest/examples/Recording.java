@@ -0,0 +1,208 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Record of the REST exchanges of a client with SDDC Manager, written when {@code recordPath} is
+ * set and served back by a replay server. Every exchange keeps its time since the start of the
+ * recording, so repeated polls of a task capture how its status progressed.
+ *
+ * <p>The file is a gzip stream of a header ({@code int} magic, {@code byte} version, {@code long}
+ * start epoch millis) followed by one record per exchange:
+ *
+ * <pre>
+ * [int offset millis][int latency millis][UTF method][UTF path and query][short status]
+ * [int body length][body]
+ * </pre>
+ *
+ * <p>Only responses are kept: request bodies and headers, which carry credentials, are never
+ * written, and the token calls of the auth session are not recorded. The gzip stream is sync
+ * flushed every {@code FLUSH_INTERVAL_RECORDS} records, so a file cut short by a crash is read up
+ * to the last flushed record and loses at most the records written since.
+ *
+ * @author VMware Inc
+ */
+public class Recording implements AutoCloseable {
+
+  static int MAGIC = 0x56434652;
+  static int VERSION = 1;
+  static int FLUSH_INTERVAL_RECORDS = 32;
+
+  /** One recorded request and its response */
+  public static class Exchange {
+    private final long offsetMillis;
+    private final int latencyMillis;
+    private final String method;
+    private final String target;
+    private final int statusCode;
+    private final byte[] body;
+
+    public Exchange(
+        long offsetMillis,
+        int latencyMillis,
+        String method,
+        String target,
+        int statusCode,
+        byte[] body) {
+      this.offsetMillis = offsetMillis;
+      this.latencyMillis = latencyMillis;
+      this.method = method;
+      this.target = target;
+      this.statusCode = statusCode;
+      this.body = body;
+    }
+
+    /** @return Time from the start of the recording to the response */
+    public long getOffsetMillis() {
+      return offsetMillis;
+    }
+
+    /** @return Time SDDC Manager took to answer */
+    public int getLatencyMillis() {
+      return latencyMillis;
+    }
+
+    public String getMethod() {
+      return method;
+    }
+
+    /** @return Request path with its query, e.g. /v1/hosts?status=ASSIGNED */
+    public String getTarget() {
+      return target;
+    }
+
+    public int getStatusCode() {
+      return statusCode;
+    }
+
+    public byte[] getBody() {
+      return body;
+    }
+
+    @Override
+    public String toString() {
+      return "Exchange [offsetMillis="
+          + offsetMillis
+          + ", method="
+          + method
+          + ", target="
+          + target
+          + ", statusCode="
+          + statusCode
+          + ", bodyLength="
+          + body.length
+          + "]";
+    }
+  }
+
+  private final Path path;
+  private final DataOutputStream out;
+  private final long start;
+  private int unflushed;
+
+  /**
+   * Start a new recording, replacing any file at the path
+   *
+   * @param path
+   * @throws IOException
+   */
+  public Recording(Path path) throws IOException {
+    this.path = path;
+    this.start = System.currentTimeMillis();
+    this.out =
+        new DataOutputStream(
+            new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(path), 1 << 16, true)));
+    out.writeInt(MAGIC);
+    out.writeByte(VERSION);
+    out.writeLong(start);
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  /**
+   * Append one exchange
+   *
+   * @param method
+   * @param target Path and query
+   * @param statusCode
+   * @param body Response body
+   * @param latencyNanos Time SDDC Manager took to answer
+   * @throws IOException
+   */
+  public synchronized void record(
+      String method, String target, int statusCode, byte[] body, long latencyNanos)
+      throws IOException {
+    out.writeInt((int) (System.currentTimeMillis() - start));
+    out.writeInt((int) TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+    out.writeUTF(method);
+    out.writeUTF(target);
+    out.writeShort(statusCode);
+    out.writeInt(body.length);
+    out.write(body);
+    if (++unflushed >= FLUSH_INTERVAL_RECORDS) {
+      unflushed = 0;
+      out.flush();
+    }
+  }
+
+  /** Finish the gzip stream and close the file */
+  @Override
+  public synchronized void close() throws IOException {
+    out.close();
+  }
+
+  /**
+   * @param path
+   * @return Exchanges of a recording, in the order they completed
+   * @throws IOException if the file is not a recording
+   */
+  public static List<Exchange> read(Path path) throws IOException {
+    List<Exchange> exchanges = new ArrayList<>();
+    try (DataInputStream in =
+        new DataInputStream(
+            new BufferedInputStream(new GZIPInputStream(Files.newInputStream(path), 1 << 16)))) {
+      if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+        throw new IOException(path + " is not a recording");
+      }
+      in.readLong();
+      while (true) {
+        int offset;
+        try {
+          offset = in.readInt();
+        } catch (EOFException e) {
+          break;
+        }
+        try {
+          int latency = in.readInt();
+          String method = in.readUTF();
+          String target = in.readUTF();
+          int statusCode = in.readUnsignedShort();
+          byte[] body = new byte[in.readInt()];
+          in.readFully(body);
+          exchanges.add(new Exchange(offset, latency, method, target, statusCode, body));
+        } catch (EOFException e) {
+          break;
+        }
+      }
+    } catch (EOFException e) {
+      // Cut short before the first record
+    }
+    return exchanges;
+  }
+}
@@ -0,0 +1,183 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Structured fan-out/fan-in of blocking REST calls. Calls forked in a scope run concurrently on the
+ * client executor, one thread (virtual when available) per call; {@link #join()} waits until all
+ * of them finished or the first one failed, in which case the remaining calls are cancelled.
+ * Closing the scope cancels whatever is still running, so no call outlives the block that started
+ * it.
+ *
+ * <p>The scope state is guarded by a {@link ReentrantLock} rather than a monitor, so that a virtual
+ * thread waiting in {@link #join()} does not pin its carrier.
+ *
+ * <pre>
+ * try (RequestScope scope = client.openScope()) {
+ *   RequestScope.Subtask&lt;RestResponse&gt; hosts = scope.fork(() -&gt; client.execute(getHosts));
+ *   RequestScope.Subtask&lt;RestResponse&gt; tasks = scope.fork(() -&gt; client.execute(getTasks));
+ *   scope.join().throwIfFailed();
+ *   process(hosts.get(), tasks.get());
+ * }
+ * </pre>
+ *
+ * @author VMware Inc
+ */
+public class RequestScope implements AutoCloseable {
+
+  /** Handle to the result of a forked call */
+  public static class Subtask<T> {
+    private final Future<T> future;
+
+    Subtask(Future<T> future) {
+      this.future = future;
+    }
+
+    /**
+     * @return Result of the call
+     * @throws IllegalStateException if the call has not completed successfully
+     */
+    public T get() {
+      if (!future.isDone()) {
+        throw new IllegalStateException("Subtask has not completed, call join() first");
+      }
+      try {
+        return future.get();
+      } catch (InterruptedException | ExecutionException | CancellationException e) {
+        throw new IllegalStateException("Subtask did not complete successfully", e);
+      }
+    }
+  }
+
+  private final ExecutorService executorService;
+  private final List<Future<?>> forked = new ArrayList<>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition changed = lock.newCondition();
+  private int running;
+  private Throwable firstFailure;
+
+  RequestScope(ExecutorService executorService) {
+    this.executorService = executorService;
+  }
+
+  /**
+   * Start a call in this scope. The call may throw any checked exception.
+   *
+   * @param call
+   * @return Handle to read the result after {@link #join()}
+   */
+  public <T> Subtask<T> fork(Callable<T> call) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    lock.lock();
+    try {
+      running++;
+      forked.add(
+          executorService.submit(
+              () -> {
+                Throwable failure = null;
+                try {
+                  result.complete(call.call());
+                } catch (Throwable e) {
+                  failure = e;
+                  result.completeExceptionally(e);
+                } finally {
+                  finished(failure);
+                }
+              }));
+    } finally {
+      lock.unlock();
+    }
+    return new Subtask<>(result);
+  }
+
+  private void finished(Throwable failure) {
+    lock.lock();
+    try {
+      running--;
+      if (failure != null && firstFailure == null) {
+        firstFailure = failure;
+      }
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Wait until every forked call finished, or until the first failure, which cancels the others
+   *
+   * @return This scope
+   * @throws InterruptedException
+   */
+  public RequestScope join() throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      while (running > 0 && firstFailure == null) {
+        changed.await();
+      }
+      if (firstFailure != null) {
+        cancelAll();
+      }
+    } finally {
+      lock.unlock();
+    }
+    return this;
+  }
+
+  /**
+   * Rethrow the first failure of a forked call, if any. Checked exceptions other than {@link
+   * IOException} are wrapped in an IOException.
+   *
+   * @throws IOException
+   */
+  public void throwIfFailed() throws IOException {
+    Throwable failure;
+    lock.lock();
+    try {
+      failure = firstFailure;
+    } finally {
+      lock.unlock();
+    }
+    if (failure == null) {
+      return;
+    }
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    }
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    }
+    if (failure instanceof Error) {
+      throw (Error) failure;
+    }
+    throw new IOException(failure);
+  }
+
+  private void cancelAll() {
+    lock.lock();
+    try {
+      for (Future<?> call : forked) {
+        call.cancel(true);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Cancel every call of this scope that is still running */
+  @Override
+  public void close() {
+    cancelAll();
+  }
+}
@@ -0,0 +1,217 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+
+/**
+ * Bounded read cache for idempotent SDDC Manager GETs. Entries are evicted least recently used
+ * first once {@code maxEntries} is reached and are served without a round trip while younger than
+ * the TTL. Stale entries that carry an ETag or Last-Modified header are revalidated with a
+ * conditional GET instead of being downloaded again.
+ *
+ * <p>Only paths under the configured prefixes, and outside the excluded ones, are cached, so task
+ * and validation status polls are never answered from the cache. Cached responses are shared
+ * between callers and must be treated as read only.
+ *
+ * @author VMware Inc
+ */
+public class ResponseCache {
+
+  /** Cached response and the time it was stored or last revalidated */
+  static class Entry {
+    final RestResponse response;
+    final long storedAt;
+
+    Entry(RestResponse response, long storedAt) {
+      this.response = response;
+      this.storedAt = storedAt;
+    }
+
+    String getETag() {
+      Header header = response.getFirstHeader("ETag");
+      return header == null ? null : header.getValue();
+    }
+
+    String getLastModified() {
+      Header header = response.getFirstHeader("Last-Modified");
+      return header == null ? null : header.getValue();
+    }
+  }
+
+  private final int maxEntries;
+  private final long ttlMillis;
+  private final List<String> cachedPathPrefixes;
+  private final List<String> excludedPathPrefixes;
+  private final Map<String, Entry> entries;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong revalidations = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public ResponseCache(
+      int maxEntries,
+      long ttlMillis,
+      List<String> cachedPathPrefixes,
+      List<String> excludedPathPrefixes) {
+    this.maxEntries = maxEntries;
+    this.ttlMillis = ttlMillis;
+    this.cachedPathPrefixes = new ArrayList<>(cachedPathPrefixes);
+    this.excludedPathPrefixes = new ArrayList<>(excludedPathPrefixes);
+    this.entries =
+        new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > ResponseCache.this.maxEntries) {
+              evictions.incrementAndGet();
+              return true;
+            }
+            return false;
+          }
+        };
+  }
+
+  /**
+   * @param path Request path without query string
+   * @return true if GETs on this path may be cached
+   */
+  public boolean isCacheable(String path) {
+    if (maxEntries <= 0) {
+      return false;
+    }
+    for (String prefix : excludedPathPrefixes) {
+      if (path.startsWith(prefix)) {
+        return false;
+      }
+    }
+    for (String prefix : cachedPathPrefixes) {
+      if (path.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param key
+   * @return Cached entry, fresh or stale, or null
+   */
+  synchronized Entry get(String key) {
+    return entries.get(key);
+  }
+
+  /**
+   * @param entry
+   * @param now
+   * @return true if the entry can be served without contacting SDDC Manager
+   */
+  boolean isFresh(Entry entry, long now) {
+    return now - entry.storedAt < ttlMillis;
+  }
+
+  /**
+   * Store a response
+   *
+   * @param key
+   * @param response
+   */
+  synchronized void put(String key, RestResponse response) {
+    Header cacheControl = response.getFirstHeader("Cache-Control");
+    if (cacheControl != null && cacheControl.getValue().contains("no-store")) {
+      return;
+    }
+    entries.put(key, new Entry(response, System.currentTimeMillis()));
+  }
+
+  /**
+   * Mark a stale entry as valid again after a 304 Not Modified answer
+   *
+   * @param key
+   * @param entry
+   */
+  synchronized void revalidated(String key, Entry entry) {
+    revalidations.incrementAndGet();
+    entries.put(key, new Entry(entry.response, System.currentTimeMillis()));
+  }
+
+  void recordHit() {
+    hits.incrementAndGet();
+  }
+
+  void recordMiss() {
+    misses.incrementAndGet();
+  }
+
+  /**
+   * Drop every cached entry whose path starts with the given prefix
+   *
+   * @param pathPrefix
+   */
+  public synchronized void invalidate(String pathPrefix) {
+    for (Iterator<String> keys = entries.keySet().iterator(); keys.hasNext(); ) {
+      if (keys.next().startsWith(pathPrefix)) {
+        keys.remove();
+      }
+    }
+  }
+
+  /**
+   * Drop the cached entries of the resource family a mutating call touched, e.g. a DELETE on
+   * /v1/license-keys/{key} invalidates /v1/license-keys and every key below it
+   *
+   * @param path Path of the POST, PUT, PATCH or DELETE request
+   */
+  public void invalidateFamily(String path) {
+    int familyEnd = path.indexOf('/', path.indexOf('/', 1) + 1);
+    invalidate(familyEnd < 0 ? path : path.substring(0, familyEnd));
+  }
+
+  /** Drop all cached entries */
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public long getRevalidationCount() {
+    return revalidations.get();
+  }
+
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  @Override
+  public String toString() {
+    return "ResponseCache [size="
+        + size()
+        + ", hits="
+        + hits
+        + ", misses="
+        + misses
+        + ", revalidations="
+        + revalidations
+        + ", evictions="
+        + evictions
+        + "]";
+  }
+}
@@ -0,0 +1,128 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.http.Header;
+import org.json.JSONObject;
+
+import com.vmware.vcf.rest.examples.model.JsonBinder;
+
+/**
+ * Buffered response of an SDDC Manager REST call. The body is read from the wire exactly once;
+ * the UTF-8 text and the JSON tree are derived from it lazily and cached, so callers can inspect
+ * the response as often as they like.
+ *
+ * @author VMware Inc
+ */
+public class RestResponse {
+
+  private static final byte[] EMPTY_BODY = new byte[0];
+
+  private final int statusCode;
+  private final List<Header> headers;
+  private final byte[] body;
+
+  private String bodyString;
+  private JSONObject json;
+
+  public RestResponse(int statusCode, Header[] headers, byte[] body) {
+    this.statusCode = statusCode;
+    this.headers =
+        headers == null
+            ? Collections.emptyList()
+            : Collections.unmodifiableList(Arrays.asList(headers));
+    this.body = body == null ? EMPTY_BODY : body;
+  }
+
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  public List<Header> getHeaders() {
+    return headers;
+  }
+
+  /**
+   * @param name
+   * @return First header with the given name, or null
+   */
+  public Header getFirstHeader(String name) {
+    for (Header header : headers) {
+      if (header.getName().equalsIgnoreCase(name)) {
+        return header;
+      }
+    }
+    return null;
+  }
+
+  /** @return Raw body bytes. The array is shared and must not be modified. */
+  public byte[] getBody() {
+    return body;
+  }
+
+  /** @return Body decoded as UTF-8, decoded once and cached */
+  public synchronized String getBodyAsString() {
+    if (bodyString == null) {
+      bodyString = new String(body, StandardCharsets.UTF_8);
+    }
+    return bodyString;
+  }
+
+  /** @return true when the body holds a JSON object */
+  public boolean isJsonObject() {
+    for (byte b : body) {
+      if (!Character.isWhitespace(b)) {
+        return b == '{';
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return Body parsed as a JSON object, parsed once and cached
+   * @throws org.json.JSONException if the body is not a JSON object
+   */
+  public synchronized JSONObject getJson() {
+    if (json == null) {
+      json = new JSONObject(getBodyAsString());
+    }
+    return json;
+  }
+
+  /**
+   * Bind the body to a model object, e.g. {@code response.read(JsonBinder::readTask)}. Unlike
+   * {@link #getJson()} no JSON tree is built.
+   *
+   * @param reader
+   * @return Bound object
+   * @throws IOException if the body is not valid JSON
+   */
+  public <T> T read(JsonBinder.Reader<T> reader) throws IOException {
+    return reader.read(body);
+  }
+
+  /** @return SDDC Manager error code from the body, or null */
+  public String getErrorCode() {
+    return isJsonObject() ? getJson().optString("errorCode", null) : null;
+  }
+
+  /** @return SDDC Manager remediation message from the body, or null */
+  public String getRemediationMessage() {
+    return isJsonObject() ? getJson().optString("remediationMessage", null) : null;
+  }
+
+  /** @return true when SDDC Manager reported an error code in the body */
+  public boolean hasError() {
+    return getErrorCode() != null;
+  }
+
+  @Override
+  public String toString() {
+    return "RestResponse [statusCode=" + statusCode + ", bodyLength=" + body.length + "]";
+  }
+}
@@ -0,0 +1,163 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.net.ssl.SSLException;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.impl.execchain.RequestAbortedException;
+
+/**
+ * Decides whether and when a failed call is sent again.
+ *
+ * <p>GET and HEAD calls are retried on I/O errors and on 429, 502, 503 and 504 answers. Any other
+ * method is only retried when SDDC Manager cannot have acted on it: the connection was never
+ * established, or the answer was 429 or 503. A POST that timed out or lost its connection after
+ * being sent is never repeated, since that could start the same workflow twice.
+ *
+ * <p>Failures on the client side are never retried: an aborted or interrupted call, and a call
+ * that timed out waiting for a pooled connection. HttpClient reports the latter as a {@link
+ * ConnectTimeoutException}, but the request never left the client, so it is a sign of a pool that
+ * is too small rather than of SDDC Manager failing.
+ *
+ * <p>Delays grow exponentially with full jitter, so that clients that failed together do not
+ * retry together, and are at least the Retry-After time of the answer. Retries are paid from a
+ * budget that every first attempt refills by {@code budgetRatio}: while SDDC Manager is down,
+ * retries stay a small share of the traffic instead of multiplying it.
+ *
+ * @author VMware Inc
+ */
+public class RetryPolicy {
+
+  /** Returned by the delay methods when the call must not be retried */
+  public static final long NO_RETRY = -1;
+
+  /** The budget saves up the retries earned by at most this many first attempts */
+  static int BUDGET_WINDOW_ATTEMPTS = 100;
+
+  private final int maxAttempts;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+  private final double budgetRatio;
+  private final double budgetMinRetries;
+  private double budget;
+
+  /**
+   * @param maxAttempts Attempts per call including the first one, 1 disables retries
+   * @param initialBackoffMillis Upper bound of the first delay
+   * @param maxBackoffMillis Upper bound of any delay
+   * @param budgetRatio Retries earned per first attempt
+   * @param budgetMinRetries Retries available regardless of traffic, also the initial budget
+   */
+  public RetryPolicy(
+      int maxAttempts,
+      long initialBackoffMillis,
+      long maxBackoffMillis,
+      double budgetRatio,
+      int budgetMinRetries) {
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.initialBackoffMillis = initialBackoffMillis;
+    this.maxBackoffMillis = maxBackoffMillis;
+    this.budgetRatio = budgetRatio;
+    this.budgetMinRetries = budgetMinRetries;
+    this.budget = budgetMinRetries;
+  }
+
+  /** A call is sent for the first time */
+  public synchronized void onFirstAttempt() {
+    budget =
+        Math.min(budget + budgetRatio, budgetMinRetries + budgetRatio * BUDGET_WINDOW_ATTEMPTS);
+  }
+
+  /**
+   * @param method
+   * @param attempt Number of the attempt that failed, starting at 1
+   * @param statusCode
+   * @param retryAfter Retry-After header value, or null
+   * @return Milliseconds to wait before the next attempt, or {@link #NO_RETRY}
+   */
+  public long retryDelay(String method, int attempt, int statusCode, String retryAfter) {
+    boolean retryable =
+        statusCode == 429
+            || statusCode == 503
+            || (isIdempotent(method) && (statusCode == 502 || statusCode == 504));
+    if (!retryable) {
+      return NO_RETRY;
+    }
+    long retryAfterMillis = EndpointLimiter.parseRetryAfter(retryAfter) * 1000;
+    return delay(attempt, retryAfterMillis);
+  }
+
+  /**
+   * @param method
+   * @param attempt Number of the attempt that failed, starting at 1
+   * @param error
+   * @return Milliseconds to wait before the next attempt, or {@link #NO_RETRY}
+   */
+  public long retryDelay(String method, int attempt, IOException error) {
+    if (isLocalFailure(error)) {
+      return NO_RETRY;
+    }
+    boolean retryable =
+        error instanceof ConnectException
+            || error instanceof ConnectTimeoutException
+            || (isIdempotent(method) && isTransient(error));
+    return retryable ? delay(attempt, 0) : NO_RETRY;
+  }
+
+  /**
+   * @param method
+   * @return true if repeating the call cannot change the state of SDDC Manager
+   */
+  public static boolean isIdempotent(String method) {
+    return method.equals("GET") || method.equals("HEAD");
+  }
+
+  /**
+   * @param error
+   * @return true for failures caused on the client side, which say nothing about the health of
+   *     SDDC Manager: the call was interrupted or aborted by its caller, or no pooled connection
+   *     became free in time
+   */
+  public static boolean isLocalFailure(IOException error) {
+    return error instanceof RequestAbortedException
+        || error instanceof ConnectionPoolTimeoutException
+        || error.getClass() == InterruptedIOException.class;
+  }
+
+  /** @return false for errors that a retry cannot fix or that the caller caused */
+  private static boolean isTransient(IOException error) {
+    return !(error instanceof CircuitBreakerOpenException
+        || error instanceof UnknownHostException
+        || error instanceof SSLException
+        || isLocalFailure(error));
+  }
+
+  private long delay(int attempt, long retryAfterMillis) {
+    if (attempt >= maxAttempts || !withdraw()) {
+      return NO_RETRY;
+    }
+    long ceiling = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 30));
+    long jittered = ThreadLocalRandom.current().nextLong(ceiling + 1);
+    return Math.max(jittered, retryAfterMillis);
+  }
+
+  private synchronized boolean withdraw() {
+    if (budget < 1) {
+      return false;
+    }
+    budget -= 1;
+    return true;
+  }
+
+  /** @return Retries currently affordable */
+  public synchronized double getBudget() {
+    return budget;
+  }
+}
@@ -0,0 +1,98 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+/**
+ * Change observed on a tracked SDDC Manager operation. Events are only emitted for differences to
+ * the previously seen status document: a status transition, a subtask or validation check whose
+ * status changed, and the final completion.
+ *
+ * @author VMware Inc
+ */
+public class TaskEvent {
+
+  /** Kinds of changes */
+  public enum Type {
+    /** Overall status of the operation changed */
+    STATUS_CHANGED,
+    /** Status of a subtask or validation check changed */
+    PROGRESS,
+    /** Operation left its in-progress state */
+    COMPLETED,
+    /** Tracking stopped because the timeout elapsed */
+    TIMED_OUT,
+    /** Tracking stopped because a status check failed */
+    FAILED
+  }
+
+  private final TaskTracker.Kind kind;
+  private final String id;
+  private final Type type;
+  private final String name;
+  private final String previousStatus;
+  private final String status;
+  private final long timestamp;
+
+  TaskEvent(
+      TaskTracker.Kind kind,
+      String id,
+      Type type,
+      String name,
+      String previousStatus,
+      String status) {
+    this.kind = kind;
+    this.id = id;
+    this.type = type;
+    this.name = name;
+    this.previousStatus = previousStatus;
+    this.status = status;
+    this.timestamp = System.currentTimeMillis();
+  }
+
+  public TaskTracker.Kind getKind() {
+    return kind;
+  }
+
+  /** @return Task or validation id */
+  public String getId() {
+    return id;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /** @return Subtask or validation check name for {@link Type#PROGRESS} events, otherwise null */
+  public String getName() {
+    return name;
+  }
+
+  /** @return Status before the change, or null if none was seen yet */
+  public String getPreviousStatus() {
+    return previousStatus;
+  }
+
+  /** @return Status after the change, or the failure message for {@link Type#FAILED} */
+  public String getStatus() {
+    return status;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  @Override
+  public String toString() {
+    return "TaskEvent [kind="
+        + kind
+        + ", id="
+        + id
+        + ", type="
+        + type
+        + (name == null ? "" : ", name=" + name)
+        + ", previousStatus="
+        + previousStatus
+        + ", status="
+        + status
+        + "]";
+  }
+}
@@ -0,0 +1,415 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.vmware.vcf.rest.examples.logging.Log;
+
+/**
+ * Append-only journal of the operations submitted to SDDC Manager, so that a restarted JVM can
+ * reattach to long running tasks instead of losing them or submitting them again.
+ *
+ * <p>The journal is a memory-mapped file of records, each a length, a CRC32 and a JSON document
+ * holding the changed fields of one operation: the hash of the submitted spec, the last known
+ * status and the tracking deadline. Appending is a copy into the mapping; the pages are forced to
+ * disk in batches by a background flusher every {@code flushIntervalMillis}. Records reach the
+ * page cache as soon as they are written, so a JVM crash loses nothing; only an OS crash can lose
+ * the last batch.
+ *
+ * <p>Opening a journal replays it, stopping at the first torn or empty record, and compacts it
+ * into one record per operation, dropping operations that finished longer than {@code
+ * retentionMillis} ago.
+ *
+ * <p>A journal has a single writer. An exclusive lock on the sibling {@code <path>.lock} file is
+ * taken before the journal is replayed and held until it is closed; the lock file rather than the
+ * journal is locked because compaction replaces the journal file. Opening a journal that another
+ * JVM or another client holds fails with an IOException.
+ *
+ * @author VMware Inc
+ */
+public class TaskJournal implements AutoCloseable {
+
+  static int INITIAL_MAP_SIZE = 1 << 20;
+  static int RECORD_HEADER_SIZE = 8;
+
+  private static final Log LOG = Log.getLog(TaskJournal.class);
+
+  /** Last known state of one journaled operation */
+  public static class Entry {
+    private final TaskTracker.Kind kind;
+    private final String id;
+    private String specHash;
+    private String status;
+    private long deadline;
+    private long updatedAt;
+
+    Entry(TaskTracker.Kind kind, String id) {
+      this.kind = kind;
+      this.id = id;
+    }
+
+    public TaskTracker.Kind getKind() {
+      return kind;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    /** @return Hash of the submitted call, or null if the operation was only tracked */
+    public String getSpecHash() {
+      return specHash;
+    }
+
+    /** @return Last known status, or null if it was never checked */
+    public String getStatus() {
+      return status;
+    }
+
+    /** @return Time in epoch milliseconds until which the operation is tracked, 0 if unknown */
+    public long getDeadline() {
+      return deadline;
+    }
+
+    public long getUpdatedAt() {
+      return updatedAt;
+    }
+
+    /** @return true if the operation left its in-progress state */
+    public boolean isFinished() {
+      return status != null && !kind.isInProgress(status);
+    }
+
+    String key() {
+      return kind + ":" + id;
+    }
+
+    @Override
+    public String toString() {
+      return "Entry [kind=" + kind + ", id=" + id + ", status=" + status + "]";
+    }
+  }
+
+  private final Path path;
+  private final FileChannel lockChannel;
+  private final FileChannel channel;
+  private final Map<String, Entry> entries = new LinkedHashMap<>();
+  private final ScheduledExecutorService flusher;
+  private MappedByteBuffer buffer;
+  private volatile boolean dirty;
+
+  /**
+   * Open the journal, replaying and compacting what an earlier run left
+   *
+   * @param path
+   * @param flushIntervalMillis Interval between forcing appended records to disk
+   * @param retentionMillis Time finished operations are kept
+   * @throws IOException if the journal cannot be read or written, or is locked by another writer
+   */
+  public TaskJournal(Path path, long flushIntervalMillis, long retentionMillis)
+      throws IOException {
+    this.path = path;
+    this.lockChannel = lock(path.resolveSibling(path.getFileName() + ".lock"));
+    try {
+      if (Files.exists(path)) {
+        replay(path);
+      }
+      long cutoff = System.currentTimeMillis() - retentionMillis;
+      entries.values().removeIf(entry -> entry.isFinished() && entry.updatedAt < cutoff);
+      compact();
+      this.channel =
+          FileChannel.open(
+              path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+    } catch (IOException | RuntimeException e) {
+      lockChannel.close();
+      throw e;
+    }
+    int size = (int) channel.size();
+    this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, INITIAL_MAP_SIZE));
+    this.buffer.position(size);
+    this.flusher = Executors.newSingleThreadScheduledExecutor(TaskTracker.daemonThreads("journal"));
+    flusher.scheduleWithFixedDelay(
+        this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Take the exclusive writer lock of a journal. The lock is released when the returned channel is
+   * closed.
+   *
+   * @param lockFile
+   * @return Channel holding the lock
+   * @throws IOException if the lock is held by another JVM or by another journal in this JVM
+   */
+  private static FileChannel lock(Path lockFile) throws IOException {
+    FileChannel lockChannel =
+        FileChannel.open(lockFile, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+    FileLock lock;
+    try {
+      lock = lockChannel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      lock = null;
+    } catch (IOException e) {
+      lockChannel.close();
+      throw e;
+    }
+    if (lock == null) {
+      lockChannel.close();
+      throw new IOException("Task journal is in use by another writer, lock file " + lockFile);
+    }
+    return lockChannel;
+  }
+
+  /**
+   * @param path Endpoint the spec was posted to
+   * @param spec Request body
+   * @return Hex SHA-256 of the call, identifying a submission across runs
+   */
+  public static String hash(String path, String spec) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(path.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) '\n');
+      byte[] hash = digest.digest(spec.getBytes(StandardCharsets.UTF_8));
+      StringBuilder hex = new StringBuilder(hash.length * 2);
+      for (byte b : hash) {
+        hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  /**
+   * Record that a call started an operation
+   *
+   * @param kind
+   * @param specHash See {@link #hash(String, String)}
+   * @param id
+   */
+  public synchronized void submitted(TaskTracker.Kind kind, String specHash, String id) {
+    Entry entry = entry(kind, id);
+    entry.specHash = specHash;
+    append(entry, new JSONObject().put("specHash", specHash));
+  }
+
+  /**
+   * Record the deadline until which an operation is tracked
+   *
+   * @param kind
+   * @param id
+   * @param deadline Epoch milliseconds
+   */
+  public synchronized void tracked(TaskTracker.Kind kind, String id, long deadline) {
+    Entry entry = entry(kind, id);
+    if (entry.deadline != deadline) {
+      entry.deadline = deadline;
+      append(entry, new JSONObject().put("deadline", deadline));
+    }
+  }
+
+  /**
+   * Record the status of an operation, if it changed
+   *
+   * @param kind
+   * @param id
+   * @param status
+   */
+  public synchronized void statusChanged(TaskTracker.Kind kind, String id, String status) {
+    Entry entry = entry(kind, id);
+    if (!status.equals(entry.status)) {
+      entry.status = status;
+      append(entry, new JSONObject().put("status", status));
+    }
+  }
+
+  /**
+   * Find the operation started by an earlier identical call, so that it is reattached to rather
+   * than started again
+   *
+   * @param kind
+   * @param specHash See {@link #hash(String, String)}
+   * @return Latest operation of the call that is still in progress, or null if there is none. A
+   *     finished operation is never returned, so an identical call made after it completed is
+   *     submitted again.
+   */
+  public synchronized Entry findSubmitted(TaskTracker.Kind kind, String specHash) {
+    Entry found = null;
+    for (Entry entry : entries.values()) {
+      if (entry.kind == kind && specHash.equals(entry.specHash)) {
+        found = entry;
+      }
+    }
+    return found == null || found.isFinished() ? null : found;
+  }
+
+  /** @return Operations that were still in progress when last checked */
+  public synchronized List<Entry> getUnfinished() {
+    List<Entry> unfinished = new ArrayList<>();
+    for (Entry entry : entries.values()) {
+      if (!entry.isFinished()) {
+        unfinished.add(entry);
+      }
+    }
+    return unfinished;
+  }
+
+  private Entry entry(TaskTracker.Kind kind, String id) {
+    return entries.computeIfAbsent(kind + ":" + id, key -> new Entry(kind, id));
+  }
+
+  private void append(Entry entry, JSONObject changes) {
+    entry.updatedAt = System.currentTimeMillis();
+    byte[] record =
+        changes
+            .put("kind", entry.kind.name())
+            .put("id", entry.id)
+            .put("updatedAt", entry.updatedAt)
+            .toString()
+            .getBytes(StandardCharsets.UTF_8);
+    try {
+      ensureCapacity(RECORD_HEADER_SIZE + record.length);
+    } catch (IOException e) {
+      LOG.warn("Unable to grow task journal {} : {}", path, e);
+      return;
+    }
+    buffer.putInt(record.length).putInt(crc(record)).put(record);
+    dirty = true;
+  }
+
+  /** Remap a larger region when the record does not fit into the current one */
+  private void ensureCapacity(int recordSize) throws IOException {
+    if (buffer.remaining() >= recordSize) {
+      return;
+    }
+    int position = buffer.position();
+    long size = buffer.capacity();
+    while (size - position < recordSize) {
+      size *= 2;
+    }
+    buffer.force();
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    buffer.position(position);
+  }
+
+  /** Force appended records to disk if there are any */
+  public void flush() {
+    if (!dirty) {
+      return;
+    }
+    dirty = false;
+    MappedByteBuffer mapped;
+    synchronized (this) {
+      mapped = buffer;
+    }
+    mapped.force();
+  }
+
+  /** Merge every intact record of a journal file into the entries */
+  private void replay(Path file) throws IOException {
+    ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+    while (data.remaining() >= RECORD_HEADER_SIZE) {
+      int length = data.getInt();
+      int crc = data.getInt();
+      if (length <= 0 || length > data.remaining()) {
+        break;
+      }
+      byte[] record = new byte[length];
+      data.get(record);
+      if (crc(record) != crc) {
+        break;
+      }
+      try {
+        merge(new JSONObject(new String(record, StandardCharsets.UTF_8)));
+      } catch (JSONException | IllegalArgumentException e) {
+        break;
+      }
+    }
+  }
+
+  private void merge(JSONObject record) {
+    Entry entry = entry(TaskTracker.Kind.valueOf(record.getString("kind")), record.getString("id"));
+    entry.specHash = record.optString("specHash", entry.specHash);
+    entry.status = record.optString("status", entry.status);
+    entry.deadline = record.optLong("deadline", entry.deadline);
+    entry.updatedAt = record.optLong("updatedAt", entry.updatedAt);
+  }
+
+  /** Rewrite the journal with one record per entry and atomically replace the old file */
+  private void compact() throws IOException {
+    Path compacted = path.resolveSibling(path.getFileName() + ".tmp");
+    try (FileChannel out =
+        FileChannel.open(
+            compacted,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      for (Entry entry : entries.values()) {
+        JSONObject snapshot =
+            new JSONObject()
+                .put("kind", entry.kind.name())
+                .put("id", entry.id)
+                .put("updatedAt", entry.updatedAt)
+                .put("deadline", entry.deadline);
+        if (entry.specHash != null) {
+          snapshot.put("specHash", entry.specHash);
+        }
+        if (entry.status != null) {
+          snapshot.put("status", entry.status);
+        }
+        byte[] record = snapshot.toString().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer framed = ByteBuffer.allocate(RECORD_HEADER_SIZE + record.length);
+        framed.putInt(record.length).putInt(crc(record)).put(record).flip();
+        while (framed.hasRemaining()) {
+          out.write(framed);
+        }
+      }
+      out.force(true);
+    }
+    Files.move(
+        compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static int crc(byte[] record) {
+    CRC32 crc = new CRC32();
+    crc.update(record);
+    return (int) crc.getValue();
+  }
+
+  /** Stop the flusher, force the last records to disk and release the writer lock */
+  @Override
+  public void close() throws IOException {
+    flusher.shutdownNow();
+    try {
+      synchronized (this) {
+        buffer.force();
+      }
+      channel.close();
+    } finally {
+      lockChannel.close();
+    }
+  }
+}
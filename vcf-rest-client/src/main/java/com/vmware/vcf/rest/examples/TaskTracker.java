@@ -0,0 +1,544 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.fluent.Request;
+import org.apache.http.entity.ContentType;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.vmware.vcf.rest.examples.instrumentation.Tracer;
+import com.vmware.vcf.rest.examples.logging.Log;
+
+/**
+ * Tracks long running SDDC Manager operations (tasks and validations) without blocking a thread
+ * per operation. A single scheduler loop finds the operations that are due for a status check and
+ * hands the GETs to a small pool of poller threads. Each tracked operation is exposed as a {@link
+ * CompletableFuture} that completes with the last status document once the operation leaves its
+ * in-progress state or its timeout elapses.
+ *
+ * <p>Polling is adaptive: an operation is checked quickly at first, then with exponential backoff
+ * and jitter up to the maximum interval, and the interval resets whenever its status changes. A
+ * check that fails with an I/O error, a 429 or a 5xx answer does not fail the operation, which
+ * keeps running on SDDC Manager; it is checked again with backoff until its timeout elapses. Any
+ * other 4xx answer, e.g. 404 for an unknown or expired id, fails the operation at once with an
+ * {@link HttpResponseException}, as checking again would only read the same error. Due checks are
+ * sent in bounded waves, one GET of the status document per operation: the /v1/tasks list cannot
+ * be filtered by id, so reading several tasks from it would cost a page of every task on the
+ * appliance rather than save a request.
+ *
+ * <p>Futures are completed on poller threads, so dependent stages should not block. In virtual
+ * thread mode every status check runs on its own virtual thread and the wave size alone bounds
+ * how many checks are in flight.
+ *
+ * <p>Progress is published as a stream of {@link TaskEvent}s through {@link #events()}. A status
+ * check only reads the status field and the subtask or validation check list of the document, and
+ * compares them with what the previous check saw, so an event is emitted per change rather than
+ * per check. Events are delivered asynchronously and dropped for subscribers that fall more than a
+ * buffer behind, so a slow consumer never stalls polling.
+ *
+ * @author VMware Inc
+ */
+public class TaskTracker implements AutoCloseable {
+
+  static int DEFAULT_POLL_INITIAL_INTERVAL_SECONDS = 2;
+  static int DEFAULT_POLL_MAX_INTERVAL_SECONDS = 30;
+  static int DEFAULT_POLL_THREADS = 4;
+  static int DEFAULT_POLL_WAVE_SIZE = 16;
+  static long LOOP_TICK_MILLIS = 500;
+  /** Throttled status checks are retried like 5xx ones, HttpStatus has no constant for it */
+  static final int SC_TOO_MANY_REQUESTS = 429;
+
+  private static final Log LOG = Log.getLog(TaskTracker.class);
+  /** While SDDC Manager is down every tracked operation fails its check on every tick */
+  private static final Log CHECK_FAILURE_LOG = LOG.sampled(10);
+
+  /** Kinds of SDDC Manager operations that can be tracked */
+  public enum Kind {
+    TASK("/v1/tasks/", "status", "subTasks", "name", "status") {
+      @Override
+      boolean isInProgress(String status) {
+        return status.isEmpty() || status.equals("Pending") || status.equals("In Progress");
+      }
+    },
+    HOST_VALIDATION(
+        "/v1/hosts/validations/",
+        "executionStatus",
+        "validationChecks",
+        "description",
+        "resultStatus"),
+    DOMAIN_CREATION_VALIDATION(
+        "/v1/domains/validations/creations/",
+        "executionStatus",
+        "validationChecks",
+        "description",
+        "resultStatus");
+
+    final String path;
+    final String statusField;
+    final String partsField;
+    final String partNameField;
+    final String partStatusField;
+    final Set<String> snapshotFields;
+
+    Kind(
+        String path,
+        String statusField,
+        String partsField,
+        String partNameField,
+        String partStatusField) {
+      this.path = path;
+      this.statusField = statusField;
+      this.partsField = partsField;
+      this.partNameField = partNameField;
+      this.partStatusField = partStatusField;
+      this.snapshotFields =
+          Collections.unmodifiableSet(new HashSet<>(Arrays.asList(statusField, partsField)));
+    }
+
+    boolean isInProgress(String status) {
+      return status.equals("IN_PROGRESS");
+    }
+  }
+
+  /** State of one tracked operation */
+  static class TrackedOperation {
+    final Kind kind;
+    final String id;
+    final long deadline;
+    final CompletableFuture<RestResponse> future = new CompletableFuture<>();
+    volatile long nextPollAt;
+    volatile long intervalMillis;
+    volatile String lastStatus;
+    volatile String publishedStatus;
+    volatile Map<String, String> publishedPartStatuses = Collections.emptyMap();
+    volatile boolean polling;
+    volatile int polls;
+    final long startedAtNanos = System.nanoTime();
+    volatile Tracer.Span span = Tracer.Span.NOOP;
+
+    TrackedOperation(Kind kind, String id, long intervalMillis, long now, long deadline) {
+      this.kind = kind;
+      this.id = id;
+      this.intervalMillis = intervalMillis;
+      this.nextPollAt = now + intervalMillis;
+      this.deadline = deadline;
+    }
+
+    String key() {
+      return kind + ":" + id;
+    }
+  }
+
+  private final Client client;
+  private final long initialIntervalMillis;
+  private final long maxIntervalMillis;
+  private final int waveSize;
+  private final Map<String, TrackedOperation> inFlight = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService scheduler;
+  private final ExecutorService pollers;
+  private final SubmissionPublisher<TaskEvent> events;
+  private final TaskJournal journal;
+
+  public TaskTracker(Client client) {
+    this.client = client;
+    this.initialIntervalMillis =
+        TimeUnit.SECONDS.toMillis(
+            client.getIntProperty(
+                "taskPollInitialIntervalSeconds", DEFAULT_POLL_INITIAL_INTERVAL_SECONDS));
+    this.maxIntervalMillis =
+        Math.max(
+            initialIntervalMillis,
+            TimeUnit.SECONDS.toMillis(
+                client.getIntProperty(
+                    "taskPollMaxIntervalSeconds", DEFAULT_POLL_MAX_INTERVAL_SECONDS)));
+    this.waveSize = client.getIntProperty("taskPollWaveSize", DEFAULT_POLL_WAVE_SIZE);
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("task-tracker"));
+    this.pollers =
+        client.isVirtualThreadMode()
+            ? client.newTaskExecutor("task-poller")
+            : Executors.newFixedThreadPool(
+                client.getIntProperty("taskPollThreads", DEFAULT_POLL_THREADS),
+                daemonThreads("task-poller"));
+    this.events = new SubmissionPublisher<>(client.getExecutorService(), Flow.defaultBufferSize());
+    this.journal = client.getTaskJournal();
+    reattach();
+    scheduler.scheduleWithFixedDelay(
+        this::pollDueOperations, LOOP_TICK_MILLIS, LOOP_TICK_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /** Track again the operations that an earlier run left unfinished in the task journal */
+  private void reattach() {
+    if (journal == null) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    for (TaskJournal.Entry entry : journal.getUnfinished()) {
+      if (entry.getDeadline() > now) {
+        LOG.info("Reattaching to {}", entry);
+        track(entry.getKind(), entry.getId(), entry.getDeadline() - now, TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
+  /**
+   * Track an operation until it leaves its in-progress state. Tracking the same operation twice
+   * returns the future of the first registration. The operation, its deadline and every status
+   * change are recorded in the task journal, if the client has one.
+   *
+   * @param kind
+   * @param id
+   * @param timeout
+   * @param unit
+   * @return Future completed with the last status document of the operation
+   */
+  public CompletableFuture<RestResponse> track(Kind kind, String id, long timeout, TimeUnit unit) {
+    long now = System.currentTimeMillis();
+    TrackedOperation operation =
+        new TrackedOperation(kind, id, initialIntervalMillis, now, now + unit.toMillis(timeout));
+    TrackedOperation existing = inFlight.putIfAbsent(operation.key(), operation);
+    if (existing != null) {
+      return existing.future;
+    }
+    operation.span = client.getInstrumentation().operationTracked(kind.name(), id);
+    if (journal != null) {
+      journal.tracked(kind, id, operation.deadline);
+    }
+    return operation.future;
+  }
+
+  /**
+   * Track a task returned by SDDC Manager (/v1/tasks/{id})
+   *
+   * @param id
+   * @param timeout
+   * @param unit
+   * @return Future completed with the last task document
+   */
+  public CompletableFuture<RestResponse> trackTask(String id, long timeout, TimeUnit unit) {
+    return track(Kind.TASK, id, timeout, unit);
+  }
+
+  /**
+   * @return Publisher of status transitions, subtask progress and completion of every tracked
+   *     operation
+   */
+  public Flow.Publisher<TaskEvent> events() {
+    return events;
+  }
+
+  /**
+   * Subscribe a callback to the task event stream
+   *
+   * @param consumer
+   * @return Future completed when the stream is closed
+   */
+  public CompletableFuture<Void> onEvent(Consumer<TaskEvent> consumer) {
+    return events.consume(consumer);
+  }
+
+  /** @return Number of operations currently being tracked */
+  public int getInFlightCount() {
+    return inFlight.size();
+  }
+
+  /**
+   * Scheduler loop: collect the operations that are due, most overdue first, and dispatch a wave of
+   * at most {@code taskPollWaveSize} GETs. Operations left over stay due and go out on the next
+   * tick.
+   */
+  private void pollDueOperations() {
+    long now = System.currentTimeMillis();
+    List<TrackedOperation> due = new ArrayList<>();
+    for (TrackedOperation operation : inFlight.values()) {
+      if (!operation.polling && now >= operation.nextPollAt) {
+        due.add(operation);
+      }
+    }
+    due.sort(Comparator.comparingLong(operation -> operation.nextPollAt));
+    for (TrackedOperation operation : due.subList(0, Math.min(waveSize, due.size()))) {
+      operation.polling = true;
+      pollers.execute(() -> poll(operation));
+    }
+  }
+
+  /**
+   * Check the status of a single operation and complete its future when it is done
+   *
+   * @param operation
+   */
+  private void poll(TrackedOperation operation) {
+    try {
+      Request pollRequest = Request.Get(client.getBaseUrl() + operation.kind.path + operation.id);
+      if (operation.kind != Kind.TASK) {
+        pollRequest.addHeader("Content-Type", ContentType.APPLICATION_JSON.toString());
+      }
+      countPoll(operation);
+      // One attempt per check: a failed check is rescheduled below instead of backing off here
+      RestResponse response = client.executeOnce(pollRequest);
+      int statusCode = response.getStatusCode();
+      if ((statusCode >= HttpStatus.SC_INTERNAL_SERVER_ERROR || statusCode == SC_TOO_MANY_REQUESTS)
+          && keepTracking(operation, "status " + statusCode)) {
+        return;
+      }
+      if (statusCode >= HttpStatus.SC_BAD_REQUEST) {
+        // The operation cannot be checked any more, so a later run must not reattach to it
+        journalStatus(operation, TaskEvent.Type.FAILED.name());
+        fail(
+            operation,
+            new HttpResponseException(
+                statusCode,
+                "Status check of "
+                    + operation.kind
+                    + " "
+                    + operation.id
+                    + " failed, error code : "
+                    + response.getErrorCode()));
+        return;
+      }
+      JSONObject snapshot = readSnapshot(operation.kind, response);
+      String status = snapshot.optString(operation.kind.statusField, "");
+      publishChanges(operation, status, snapshot);
+      journalStatus(operation, status);
+      long now = System.currentTimeMillis();
+      if (!operation.kind.isInProgress(status)) {
+        inFlight.remove(operation.key());
+        publish(operation, TaskEvent.Type.COMPLETED, null, null, status);
+        recordCompletion(operation, status);
+        operation.future.complete(response);
+      } else if (now >= operation.deadline) {
+        inFlight.remove(operation.key());
+        publish(operation, TaskEvent.Type.TIMED_OUT, null, null, status);
+        recordCompletion(operation, TaskEvent.Type.TIMED_OUT.name());
+        operation.future.complete(response);
+      } else {
+        reschedule(operation, status, now);
+      }
+    } catch (IOException e) {
+      if (!keepTracking(operation, e.toString())) {
+        fail(operation, e);
+      }
+    } catch (Exception e) {
+      fail(operation, e);
+    } finally {
+      operation.polling = false;
+    }
+  }
+
+  /**
+   * Ride out a transient failure of a status check: the operation keeps running on SDDC Manager,
+   * so it is checked again later, with backoff, until its deadline
+   *
+   * @param operation
+   * @param reason
+   * @return false if the deadline has passed and the operation must fail
+   */
+  private boolean keepTracking(TrackedOperation operation, String reason) {
+    long now = System.currentTimeMillis();
+    if (now >= operation.deadline) {
+      return false;
+    }
+    CHECK_FAILURE_LOG.warn(
+        "Status check of {} {} failed, {}", operation.kind, operation.id, reason);
+    reschedule(operation, null, now);
+    return true;
+  }
+
+  private void fail(TrackedOperation operation, Exception e) {
+    inFlight.remove(operation.key());
+    publish(operation, TaskEvent.Type.FAILED, null, operation.publishedStatus, e.toString());
+    operation.span.error(e);
+    recordCompletion(operation, TaskEvent.Type.FAILED.name());
+    operation.future.completeExceptionally(e);
+  }
+
+  private void journalStatus(TrackedOperation operation, String status) {
+    if (journal != null) {
+      journal.statusChanged(operation.kind, operation.id, status);
+    }
+  }
+
+  private void countPoll(TrackedOperation operation) {
+    operation.polls++;
+    client.getInstrumentation().pollIteration(operation.kind.name());
+  }
+
+  private void recordCompletion(TrackedOperation operation, String outcome) {
+    client
+        .getInstrumentation()
+        .operationCompleted(
+            operation.span,
+            operation.kind.name(),
+            outcome,
+            operation.polls,
+            System.nanoTime() - operation.startedAtNanos);
+  }
+
+  /**
+   * Read only the status field and the subtask or validation check list of a status document. The
+   * full document is parsed later, and only once, by whoever consumes the completed future.
+   *
+   * @param kind
+   * @param response
+   * @return Projected status document
+   * @throws IOException
+   */
+  private static JSONObject readSnapshot(Kind kind, RestResponse response) throws IOException {
+    if (response.getBody().length == 0) {
+      return new JSONObject();
+    }
+    return JsonElementStream.readFields(
+        new ByteArrayInputStream(response.getBody()), kind.snapshotFields);
+  }
+
+  /**
+   * Publish the differences between a status snapshot and the one seen by the previous check: a
+   * status transition and every subtask or validation check whose status changed. Nothing is
+   * computed while the stream has no subscribers.
+   *
+   * @param operation
+   * @param status
+   * @param snapshot
+   */
+  private void publishChanges(TrackedOperation operation, String status, JSONObject snapshot) {
+    if (!events.hasSubscribers()) {
+      return;
+    }
+    String previousStatus = operation.publishedStatus;
+    if (!status.equals(previousStatus)) {
+      operation.publishedStatus = status;
+      publish(operation, TaskEvent.Type.STATUS_CHANGED, null, previousStatus, status);
+    }
+    JSONArray parts = snapshot.optJSONArray(operation.kind.partsField);
+    if (parts == null) {
+      return;
+    }
+    Map<String, String> previousPartStatuses = operation.publishedPartStatuses;
+    Map<String, String> partStatuses = new HashMap<>();
+    for (int i = 0; i < parts.length(); i++) {
+      JSONObject part = parts.optJSONObject(i);
+      if (part == null) {
+        continue;
+      }
+      String name = part.optString(operation.kind.partNameField, String.valueOf(i));
+      String partStatus = part.optString(operation.kind.partStatusField, "");
+      partStatuses.put(name, partStatus);
+      String previousPartStatus = previousPartStatuses.get(name);
+      if (!partStatus.equals(previousPartStatus)) {
+        publish(operation, TaskEvent.Type.PROGRESS, name, previousPartStatus, partStatus);
+      }
+    }
+    operation.publishedPartStatuses = partStatuses;
+  }
+
+  private void publish(
+      TrackedOperation operation,
+      TaskEvent.Type type,
+      String name,
+      String previousStatus,
+      String status) {
+    if (events.hasSubscribers()) {
+      events.offer(
+          new TaskEvent(operation.kind, operation.id, type, name, previousStatus, status),
+          (subscriber, event) -> false);
+    }
+  }
+
+  /**
+   * Schedule the next status check. The interval resets when the status changed since the last
+   * check and doubles otherwise, capped at the maximum interval, with +/-10% jitter so that
+   * operations submitted together do not stay in lock step.
+   *
+   * @param operation
+   * @param status Status seen by the check, or null if the check failed
+   * @param now
+   */
+  private void reschedule(TrackedOperation operation, String status, long now) {
+    long interval;
+    if (status != null && !status.equals(operation.lastStatus)) {
+      operation.lastStatus = status;
+      interval = initialIntervalMillis;
+    } else {
+      interval = Math.min(operation.intervalMillis * 2, maxIntervalMillis);
+    }
+    operation.intervalMillis = interval;
+    long jitter = ThreadLocalRandom.current().nextLong(interval / 5 + 1) - interval / 10;
+    operation.nextPollAt = now + interval + jitter;
+  }
+
+  /**
+   * Block until a tracked operation finishes, unwrapping the failure cause
+   *
+   * @param future
+   * @return Last status document of the operation
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  public static RestResponse await(CompletableFuture<RestResponse> future)
+      throws IOException, InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  static ThreadFactory daemonThreads(String prefix) {
+    AtomicInteger counter = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /** Stop tracking, cancelling every operation that has not finished yet */
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+    pollers.shutdownNow();
+    for (TrackedOperation operation : inFlight.values()) {
+      recordCompletion(operation, "CANCELLED");
+      operation.future.completeExceptionally(new CancellationException("Task tracker closed"));
+    }
+    inFlight.clear();
+    events.close();
+  }
+}
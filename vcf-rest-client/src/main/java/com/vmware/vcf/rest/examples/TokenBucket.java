@@ -0,0 +1,82 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter. Tokens refill continuously at {@code permitsPerSecond} up to {@code
+ * burst}; a caller that finds the bucket empty reserves the next token and sleeps until it is due,
+ * so waiting callers are served in arrival order without spinning. The bucket can be paused, e.g.
+ * for the Retry-After period of a 429 answer.
+ *
+ * @author VMware Inc
+ */
+public class TokenBucket {
+
+  private final double permitsPerNano;
+  private final double burst;
+  private double tokens;
+  private long lastRefillNanos;
+  private long pausedUntilNanos;
+
+  /**
+   * @param permitsPerSecond Sustained rate, 0 or less disables limiting
+   * @param burst Tokens that can be spent at once after an idle period
+   */
+  public TokenBucket(double permitsPerSecond, int burst) {
+    this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+    this.burst = Math.max(1, burst);
+    this.tokens = this.burst;
+    this.lastRefillNanos = System.nanoTime();
+  }
+
+  /**
+   * Take one token, sleeping until it is available
+   *
+   * @throws InterruptedException
+   */
+  public void acquire() throws InterruptedException {
+    long waitNanos = reserve();
+    if (waitNanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+  }
+
+  /** @return Nanoseconds until the reserved token is due, 0 if it can be used right away */
+  synchronized long reserve() {
+    if (permitsPerNano <= 0) {
+      return 0;
+    }
+    long now = System.nanoTime();
+    refill(now);
+    tokens -= 1;
+    long wait = tokens >= 0 ? 0 : (long) Math.ceil(-tokens / permitsPerNano);
+    return Math.max(wait, pausedUntilNanos - now);
+  }
+
+  /**
+   * Hold back every caller for the given time and start again from an empty bucket
+   *
+   * @param duration
+   * @param unit
+   */
+  public synchronized void pause(long duration, TimeUnit unit) {
+    long now = System.nanoTime();
+    pausedUntilNanos = Math.max(pausedUntilNanos, now + unit.toNanos(duration));
+    tokens = Math.min(tokens, 0);
+    lastRefillNanos = Math.max(lastRefillNanos, pausedUntilNanos);
+  }
+
+  private void refill(long now) {
+    if (now > lastRefillNanos) {
+      tokens = Math.min(burst, tokens + (now - lastRefillNanos) * permitsPerNano);
+      lastRefillNanos = now;
+    }
+  }
+
+  /** @return Tokens currently available, negative when callers are queued */
+  public synchronized double getAvailableTokens() {
+    refill(System.nanoTime());
+    return tokens;
+  }
+}
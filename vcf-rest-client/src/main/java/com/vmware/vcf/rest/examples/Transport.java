@@ -0,0 +1,38 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Moves requests to SDDC Manager and back. Every call of the client, buffered or streamed, goes
+ * through the transport of the client once the retry, circuit breaker and rate limit decisions
+ * are made, so a transport only has to send and receive bytes.
+ *
+ * <p>Two transports come with the client, chosen with {@code httpTransport}: {@code http1}, the
+ * blocking Apache HttpClient pool with one request per connection at a time, and {@code http2},
+ * {@link Http2Transport}, which multiplexes concurrent calls over a few connections. Other
+ * implementations can be passed to {@link Client#Client(java.util.Properties, Transport)}.
+ *
+ * @author VMware Inc
+ */
+public interface Transport extends Closeable {
+
+  /** @return Short name for logs, e.g. http1 */
+  String getName();
+
+  /**
+   * Send a request and wait for the response head. The response entity streams from the
+   * connection; closing the response releases it.
+   *
+   * @param request Request as prepared by the fluent API, with its headers and entity
+   * @param context Execution context of the fluent executor, e.g. its cookie store
+   * @return Response
+   * @throws IOException if no response arrived
+   */
+  CloseableHttpResponse execute(HttpUriRequest request, HttpContext context) throws IOException;
+}
@@ -0,0 +1,59 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.BasicHttpClientConnectionManager;
+import org.apache.http.impl.execchain.ClientExecChain;
+
+/**
+ * Builds the HttpClient the fluent {@link org.apache.http.client.fluent.Executor} drives on top of
+ * a {@link Transport}, so callers keep building fluent requests whatever the transport.
+ *
+ * <p>The client is a regular Apache client whose last stage hands the request, as built by the
+ * caller, to the transport. It carries the default request config of the client, which the fluent
+ * API copies into every request, so the pooled HTTP/1.1 transport applies the configured connect
+ * and socket timeouts. Redirects, retries, cookies and content decoding are left to the transport
+ * and to the RetryPolicy of the client.
+ *
+ * @author VMware Inc
+ */
+final class TransportHttpClient {
+
+  private TransportHttpClient() {}
+
+  /**
+   * @param transport Transport to send every request over, not closed by the returned client
+   * @param requestConfig Default config of every request
+   * @return Client executing requests on the transport
+   */
+  static CloseableHttpClient create(Transport transport, RequestConfig requestConfig) {
+    HttpClientBuilder builder =
+        new HttpClientBuilder() {
+          @Override
+          protected ClientExecChain decorateMainExec(ClientExecChain mainExec) {
+            return (route, request, context, execAware) -> {
+              if (!(request.getOriginal() instanceof HttpUriRequest)) {
+                throw new ClientProtocolException(
+                    "Unsupported request " + request.getRequestLine());
+              }
+              return transport.execute((HttpUriRequest) request.getOriginal(), context);
+            };
+          }
+        };
+    return builder
+        // Never leased, the transport owns its connections
+        .setConnectionManager(new BasicHttpClientConnectionManager())
+        .setDefaultRequestConfig(requestConfig)
+        .disableRedirectHandling()
+        .disableAutomaticRetries()
+        .disableCookieManagement()
+        .disableContentCompression()
+        .disableAuthCaching()
+        .disableConnectionState()
+        .build();
+  }
+}
@@ -0,0 +1,306 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples.instrumentation;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+/**
+ * Records what the client does into the installed {@link MetricsRegistry} and {@link Tracer}.
+ * Both default to no-op implementations, so an uninstrumented client pays a virtual call per
+ * event and nothing more.
+ *
+ * <p>Meters, all tagged with a low-cardinality endpoint such as {@code /v1/tasks/{id}}:
+ *
+ * <ul>
+ *   <li>{@code vcf.client.requests} timer per method, endpoint and status; {@code status=IO_ERROR}
+ *       for calls that failed without a response
+ *   <li>{@code vcf.client.requests.inflight} gauge per endpoint
+ *   <li>{@code vcf.client.connect} and {@code vcf.client.tls.handshake} timers for new
+ *       connections, which separate TLS cost from SDDC Manager response time
+ *   <li>{@code vcf.client.pool.leased}, {@code .available}, {@code .pending} and {@code .max}
+ *       connection pool gauges
+ *   <li>{@code vcf.client.bytes.sent} and {@code vcf.client.bytes.received} counters
+ *   <li>{@code vcf.client.errors} counter per SDDC Manager error code
+ *   <li>{@code vcf.client.retries} counter per endpoint and reason
+ *   <li>{@code vcf.client.limit.concurrency}, {@code .inflight} and {@code .tokens} gauges, a
+ *       {@code vcf.client.limit.wait} timer and a {@code vcf.client.throttled} counter per
+ *       endpoint family
+ *   <li>{@code vcf.tasks.polls} counter, {@code vcf.tasks.poll.iterations} summary and {@code
+ *       vcf.tasks.duration} timer per tracked operation kind
+ * </ul>
+ *
+ * @author VMware Inc
+ */
+public class ClientInstrumentation {
+
+  private static final Pattern ID_SEGMENT =
+      Pattern.compile(".*\\d.*|[A-Z0-9]{5}(-[A-Z0-9]{5}){4}");
+
+  private volatile MetricsRegistry registry = MetricsRegistry.NOOP;
+  private volatile Tracer tracer = Tracer.NOOP;
+  private volatile PoolingHttpClientConnectionManager connectionManager;
+  private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+  private final Map<String, String> endpoints = new ConcurrentHashMap<>();
+  private final Map<String, List<Supplier<Number>>> limiters = new ConcurrentHashMap<>();
+
+  public MetricsRegistry getRegistry() {
+    return registry;
+  }
+
+  /**
+   * Install a registry and register the pool and in-flight gauges with it
+   *
+   * @param registry
+   */
+  public void setRegistry(MetricsRegistry registry) {
+    this.registry = registry == null ? MetricsRegistry.NOOP : registry;
+    bindPool(connectionManager);
+    inFlight.forEach(this::registerInFlightGauge);
+    limiters.forEach(this::registerLimiterGauges);
+  }
+
+  public Tracer getTracer() {
+    return tracer;
+  }
+
+  public void setTracer(Tracer tracer) {
+    this.tracer = tracer == null ? Tracer.NOOP : tracer;
+  }
+
+  /**
+   * Expose the statistics of a connection pool as gauges
+   *
+   * @param manager
+   */
+  public void bindPool(PoolingHttpClientConnectionManager manager) {
+    this.connectionManager = manager;
+    if (manager == null) {
+      return;
+    }
+    MetricsRegistry metrics = registry;
+    metrics.gauge("vcf.client.pool.leased", () -> manager.getTotalStats().getLeased());
+    metrics.gauge("vcf.client.pool.available", () -> manager.getTotalStats().getAvailable());
+    metrics.gauge("vcf.client.pool.pending", () -> manager.getTotalStats().getPending());
+    metrics.gauge("vcf.client.pool.max", () -> manager.getTotalStats().getMax());
+  }
+
+  /**
+   * Expose the state of an endpoint family limiter as gauges
+   *
+   * @param family
+   * @param concurrencyLimit
+   * @param inFlight
+   * @param tokens Tokens available in the rate limiter
+   */
+  public void bindLimiter(
+      String family,
+      Supplier<Number> concurrencyLimit,
+      Supplier<Number> inFlight,
+      Supplier<Number> tokens) {
+    List<Supplier<Number>> gauges = List.of(concurrencyLimit, inFlight, tokens);
+    limiters.put(family, gauges);
+    registerLimiterGauges(family, gauges);
+  }
+
+  /**
+   * @param family
+   * @param nanos Time a call waited for the rate and concurrency limits
+   */
+  public void limiterWait(String family, long nanos) {
+    registry.timer("vcf.client.limit.wait", "family", family).record(nanos);
+  }
+
+  /**
+   * SDDC Manager throttled a call, or a call failed without a response
+   *
+   * @param family
+   * @param reason Status code or IO_ERROR
+   */
+  public void throttled(String family, String reason) {
+    registry.counter("vcf.client.throttled", "family", family, "reason", reason).increment(1);
+  }
+
+  /**
+   * Reduce a request path to its endpoint: the query is dropped and every id segment, i.e. one
+   * containing a digit or shaped like a license key, becomes {id}
+   *
+   * @param path
+   * @return Endpoint, e.g. /v1/hosts/validations/{id}
+   */
+  public String endpoint(String path) {
+    String cached = endpoints.get(path);
+    if (cached != null) {
+      return cached;
+    }
+    String[] segments = path.split("/");
+    StringBuilder endpoint = new StringBuilder();
+    for (int i = 1; i < segments.length; i++) {
+      boolean id = i > 1 && ID_SEGMENT.matcher(segments[i]).matches();
+      endpoint.append('/').append(id ? "{id}" : segments[i]);
+    }
+    String result = endpoint.length() == 0 ? "/" : endpoint.toString();
+    if (endpoints.size() < 10_000) {
+      endpoints.put(path, result);
+    }
+    return result;
+  }
+
+  /**
+   * A REST call is about to be sent
+   *
+   * @param method
+   * @param endpoint
+   * @return Span of the call
+   */
+  public Tracer.Span requestStarted(String method, String endpoint) {
+    inFlight.computeIfAbsent(endpoint, this::newInFlightGauge).incrementAndGet();
+    return tracer
+        .startSpan("vcf.request")
+        .tag("http.method", method)
+        .tag("vcf.endpoint", endpoint);
+  }
+
+  /**
+   * A REST call returned a response
+   *
+   * @param span
+   * @param method
+   * @param endpoint
+   * @param statusCode
+   * @param bytesReceived
+   * @param errorCode SDDC Manager error code, or null
+   * @param remediationMessage SDDC Manager remediation message, or null
+   * @param nanos Time from sending the request to the buffered response
+   */
+  public void requestCompleted(
+      Tracer.Span span,
+      String method,
+      String endpoint,
+      int statusCode,
+      long bytesReceived,
+      String errorCode,
+      String remediationMessage,
+      long nanos) {
+    inFlight.get(endpoint).decrementAndGet();
+    MetricsRegistry metrics = registry;
+    String status = String.valueOf(statusCode);
+    metrics
+        .timer("vcf.client.requests", "method", method, "endpoint", endpoint, "status", status)
+        .record(nanos);
+    metrics.counter("vcf.client.bytes.received", "endpoint", endpoint).increment(bytesReceived);
+    span.tag("http.status_code", status);
+    if (errorCode != null) {
+      metrics.counter("vcf.client.errors", "endpoint", endpoint, "code", errorCode).increment(1);
+      span.tag("vcf.error_code", errorCode);
+      if (remediationMessage != null) {
+        span.tag("vcf.remediation_message", remediationMessage);
+      }
+    }
+    span.end();
+  }
+
+  /**
+   * A REST call failed without a response
+   *
+   * @param span
+   * @param method
+   * @param endpoint
+   * @param error
+   * @param nanos
+   */
+  public void requestFailed(
+      Tracer.Span span, String method, String endpoint, Throwable error, long nanos) {
+    inFlight.get(endpoint).decrementAndGet();
+    registry
+        .timer("vcf.client.requests", "method", method, "endpoint", endpoint, "status", "IO_ERROR")
+        .record(nanos);
+    span.error(error);
+    span.end();
+  }
+
+  /**
+   * @param endpoint
+   * @param bytes Request body size
+   */
+  public void bytesSent(String endpoint, long bytes) {
+    registry.counter("vcf.client.bytes.sent", "endpoint", endpoint).increment(bytes);
+  }
+
+  /** @param nanos Time to open a connection, including the TLS handshake */
+  public void connectionOpened(long nanos) {
+    registry.timer("vcf.client.connect").record(nanos);
+  }
+
+  /** @param nanos Time of the TLS handshake alone */
+  public void tlsHandshake(long nanos) {
+    registry.timer("vcf.client.tls.handshake").record(nanos);
+  }
+
+  /**
+   * A call is sent again
+   *
+   * @param endpoint
+   * @param reason e.g. the status code or exception that caused the retry
+   */
+  public void retry(String endpoint, String reason) {
+    registry.counter("vcf.client.retries", "endpoint", endpoint, "reason", reason).increment(1);
+  }
+
+  /**
+   * @param kind Kind of tracked operation
+   * @param id
+   * @return Span covering the whole tracked operation
+   */
+  public Tracer.Span operationTracked(String kind, String id) {
+    return tracer.startSpan("vcf.track").tag("vcf.kind", kind).tag("vcf.id", id);
+  }
+
+  /**
+   * One status check of a tracked operation
+   *
+   * @param kind
+   */
+  public void pollIteration(String kind) {
+    registry.counter("vcf.tasks.polls", "kind", kind).increment(1);
+  }
+
+  /**
+   * A tracked operation finished
+   *
+   * @param span
+   * @param kind
+   * @param outcome Final status, TIMED_OUT or FAILED
+   * @param iterations Number of status checks it took
+   * @param nanos Time from registration to completion
+   */
+  public void operationCompleted(
+      Tracer.Span span, String kind, String outcome, int iterations, long nanos) {
+    MetricsRegistry metrics = registry;
+    metrics.summary("vcf.tasks.poll.iterations", "kind", kind).record(iterations);
+    metrics.timer("vcf.tasks.duration", "kind", kind, "outcome", outcome).record(nanos);
+    span.tag("vcf.outcome", outcome).end();
+  }
+
+  private AtomicInteger newInFlightGauge(String endpoint) {
+    AtomicInteger gauge = new AtomicInteger();
+    registerInFlightGauge(endpoint, gauge);
+    return gauge;
+  }
+
+  private void registerInFlightGauge(String endpoint, AtomicInteger gauge) {
+    registry.gauge("vcf.client.requests.inflight", gauge::get, "endpoint", endpoint);
+  }
+
+  private void registerLimiterGauges(String family, List<Supplier<Number>> gauges) {
+    MetricsRegistry metrics = registry;
+    metrics.gauge("vcf.client.limit.concurrency", gauges.get(0), "family", family);
+    metrics.gauge("vcf.client.limit.inflight", gauges.get(1), "family", family);
+    metrics.gauge("vcf.client.limit.tokens", gauges.get(2), "family", family);
+  }
+}
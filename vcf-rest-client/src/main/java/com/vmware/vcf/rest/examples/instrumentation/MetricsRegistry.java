@@ -0,0 +1,63 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples.instrumentation;
+
+import java.util.function.Supplier;
+
+/**
+ * Registry the client records its metrics into, modelled on Micrometer's MeterRegistry so that an
+ * adapter to an existing monitoring system is a thin wrapper. Meters are identified by a name and
+ * tags given as alternating key/value strings; asking twice for the same meter returns the same
+ * instance. Implementations must be thread safe.
+ *
+ * @author VMware Inc
+ */
+public interface MetricsRegistry {
+
+  /** Registry that drops every measurement, used until another registry is installed */
+  MetricsRegistry NOOP = new MetricsRegistry() {};
+
+  /** Monotonic count */
+  @FunctionalInterface
+  interface Counter {
+    Counter NOOP = amount -> {};
+
+    void increment(long amount);
+  }
+
+  /** Latency distribution */
+  @FunctionalInterface
+  interface Timer {
+    Timer NOOP = nanos -> {};
+
+    void record(long nanos);
+  }
+
+  /** Distribution of arbitrary values, e.g. sizes or iteration counts */
+  @FunctionalInterface
+  interface DistributionSummary {
+    DistributionSummary NOOP = value -> {};
+
+    void record(long value);
+  }
+
+  default Counter counter(String name, String... tags) {
+    return Counter.NOOP;
+  }
+
+  default Timer timer(String name, String... tags) {
+    return Timer.NOOP;
+  }
+
+  default DistributionSummary summary(String name, String... tags) {
+    return DistributionSummary.NOOP;
+  }
+
+  /**
+   * Register a gauge sampled whenever the registry is read
+   *
+   * @param name
+   * @param value
+   * @param tags
+   */
+  default void gauge(String name, Supplier<Number> value, String... tags) {}
+}
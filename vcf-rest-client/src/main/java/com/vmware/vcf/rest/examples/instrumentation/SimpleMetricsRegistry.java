@@ -0,0 +1,214 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples.instrumentation;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * In-memory registry for runs without a monitoring system. Timers and summaries keep a
+ * log-linear histogram (four buckets per power of two, so percentiles are accurate to about 19%)
+ * and {@link #toString()} renders every meter with its count, mean, p50, p99 and max.
+ *
+ * @author VMware Inc
+ */
+public class SimpleMetricsRegistry implements MetricsRegistry {
+
+  /** Lock free log-linear histogram of non-negative values */
+  public static class Histogram implements Timer, DistributionSummary {
+    static final int SUB_BUCKETS = 4;
+
+    private final LongAdder[] buckets = new LongAdder[64 * SUB_BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    Histogram() {
+      for (int i = 0; i < buckets.length; i++) {
+        buckets[i] = new LongAdder();
+      }
+    }
+
+    @Override
+    public void record(long value) {
+      long v = Math.max(0, value);
+      buckets[bucket(v)].increment();
+      count.increment();
+      total.add(v);
+      max.accumulate(v);
+    }
+
+    static int bucket(long value) {
+      if (value < SUB_BUCKETS) {
+        return (int) value;
+      }
+      int exponent = 63 - Long.numberOfLeadingZeros(value);
+      int fraction = (int) (value >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+      return (exponent - 1) * SUB_BUCKETS + fraction;
+    }
+
+    /** @return Largest value that falls into the bucket */
+    static long upperBound(int bucket) {
+      if (bucket < SUB_BUCKETS) {
+        return bucket;
+      }
+      int exponent = bucket / SUB_BUCKETS + 1;
+      long fraction = bucket % SUB_BUCKETS;
+      return ((SUB_BUCKETS + fraction + 1) << (exponent - 2)) - 1;
+    }
+
+    public long getCount() {
+      return count.sum();
+    }
+
+    public long getTotal() {
+      return total.sum();
+    }
+
+    public long getMax() {
+      return max.get();
+    }
+
+    public double getMean() {
+      long n = getCount();
+      return n == 0 ? 0 : (double) getTotal() / n;
+    }
+
+    /**
+     * @param quantile Between 0 and 1
+     * @return Approximate value at the quantile
+     */
+    public long getPercentile(double quantile) {
+      long n = getCount();
+      if (n == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(quantile * n);
+      long seen = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        seen += buckets[i].sum();
+        if (seen >= rank) {
+          return Math.min(upperBound(i), getMax());
+        }
+      }
+      return getMax();
+    }
+  }
+
+  private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+  private final Map<String, Histogram> timers = new ConcurrentHashMap<>();
+  private final Map<String, Histogram> summaries = new ConcurrentHashMap<>();
+  private final Map<String, Supplier<Number>> gauges = new ConcurrentHashMap<>();
+
+  @Override
+  public Counter counter(String name, String... tags) {
+    LongAdder counter = counters.computeIfAbsent(id(name, tags), id -> new LongAdder());
+    return counter::add;
+  }
+
+  @Override
+  public Timer timer(String name, String... tags) {
+    return timers.computeIfAbsent(id(name, tags), id -> new Histogram());
+  }
+
+  @Override
+  public DistributionSummary summary(String name, String... tags) {
+    return summaries.computeIfAbsent(id(name, tags), id -> new Histogram());
+  }
+
+  @Override
+  public void gauge(String name, Supplier<Number> value, String... tags) {
+    gauges.put(id(name, tags), value);
+  }
+
+  /**
+   * @param name
+   * @param tags
+   * @return Current count, 0 if the counter does not exist
+   */
+  public long getCount(String name, String... tags) {
+    LongAdder counter = counters.get(id(name, tags));
+    return counter == null ? 0 : counter.sum();
+  }
+
+  /**
+   * @param name
+   * @param tags
+   * @return Timer histogram in nanoseconds, or null if nothing was recorded
+   */
+  public Histogram getTimer(String name, String... tags) {
+    return timers.get(id(name, tags));
+  }
+
+  /**
+   * @param name
+   * @param tags
+   * @return Summary histogram, or null if nothing was recorded
+   */
+  public Histogram getSummary(String name, String... tags) {
+    return summaries.get(id(name, tags));
+  }
+
+  /**
+   * @param name
+   * @param tags
+   * @return Current gauge value, or null if the gauge does not exist
+   */
+  public Number getGauge(String name, String... tags) {
+    Supplier<Number> gauge = gauges.get(id(name, tags));
+    return gauge == null ? null : gauge.get();
+  }
+
+  static String id(String name, String... tags) {
+    if (tags.length == 0) {
+      return name;
+    }
+    StringBuilder id = new StringBuilder(name).append('{');
+    for (int i = 0; i + 1 < tags.length; i += 2) {
+      id.append(i == 0 ? "" : ",").append(tags[i]).append('=').append(tags[i + 1]);
+    }
+    return id.append('}').toString();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder out = new StringBuilder();
+    new TreeMap<>(counters)
+        .forEach((id, value) -> out.append(id).append(" = ").append(value).append('\n'));
+    new TreeMap<>(gauges)
+        .forEach((id, value) -> out.append(id).append(" = ").append(value.get()).append('\n'));
+    new TreeMap<>(timers)
+        .forEach(
+            (id, histogram) ->
+                out.append(id)
+                    .append(
+                        String.format(
+                            " count=%d mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms%n",
+                            histogram.getCount(),
+                            histogram.getMean() / TimeUnit.MILLISECONDS.toNanos(1),
+                            millis(histogram.getPercentile(0.5)),
+                            millis(histogram.getPercentile(0.99)),
+                            millis(histogram.getMax()))));
+    new TreeMap<>(summaries)
+        .forEach(
+            (id, histogram) ->
+                out.append(id)
+                    .append(
+                        String.format(
+                            " count=%d mean=%.1f p50=%d p99=%d max=%d%n",
+                            histogram.getCount(),
+                            histogram.getMean(),
+                            histogram.getPercentile(0.5),
+                            histogram.getPercentile(0.99),
+                            histogram.getMax())));
+    return out.toString();
+  }
+
+  private static double millis(long nanos) {
+    return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+}
@@ -0,0 +1,34 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples.instrumentation;
+
+/**
+ * Hook for distributed tracing. The client opens a span per REST call and per tracked task or
+ * validation; an implementation can map them onto OpenTelemetry, Brave or a log.
+ *
+ * @author VMware Inc
+ */
+@FunctionalInterface
+public interface Tracer {
+
+  /** Tracer that records nothing */
+  Tracer NOOP = name -> Span.NOOP;
+
+  /** Unit of work being traced */
+  interface Span {
+    Span NOOP = new Span() {};
+
+    default Span tag(String key, String value) {
+      return this;
+    }
+
+    default void error(Throwable error) {}
+
+    default void end() {}
+  }
+
+  /**
+   * @param name Span name
+   * @return Started span, ended by the caller
+   */
+  Span startSpan(String name);
+}
@@ -0,0 +1,182 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples.logging;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes log events from a single background thread, so callers never contend for the console
+ * lock. Callers claim a slot of a fixed ring buffer with one compare-and-set and return; the
+ * writer drains the ring into buffered writers and flushes them once the ring is empty, i.e. once
+ * per burst instead of once per line. DEBUG and INFO events go to standard output, WARN and ERROR
+ * to standard error.
+ *
+ * <p>When the ring is full the event is dropped rather than blocking the caller, and the number
+ * of dropped events is logged as soon as the writer catches up.
+ *
+ * @author VMware Inc
+ */
+public class AsyncAppender implements LogAppender {
+
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private final int capacity;
+  private final int mask;
+  private final AtomicReferenceArray<LogEvent> ring;
+  /** Next sequence to claim */
+  private final AtomicLong claimed = new AtomicLong();
+  /** Next sequence to write, only advanced by the writer */
+  private final AtomicLong consumed = new AtomicLong();
+  private final LongAdder dropped = new LongAdder();
+  private final Writer out;
+  private final Writer err;
+  private final Thread writer;
+  private volatile long flushedThrough;
+  private volatile boolean parked;
+  private volatile boolean closed;
+
+  /** @param capacity Ring size, rounded up to a power of two */
+  public AsyncAppender(int capacity) {
+    this(capacity, System.out, System.err);
+  }
+
+  /**
+   * @param capacity Ring size, rounded up to a power of two
+   * @param out Destination of DEBUG and INFO events
+   * @param err Destination of WARN and ERROR events
+   */
+  public AsyncAppender(int capacity, OutputStream out, OutputStream err) {
+    this.capacity = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+    this.mask = this.capacity - 1;
+    this.ring = new AtomicReferenceArray<>(this.capacity);
+    this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+    this.err = new BufferedWriter(new OutputStreamWriter(err, StandardCharsets.UTF_8), 1 << 13);
+    this.writer = new Thread(this::drain, "log-writer");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  @Override
+  public void append(LogEvent event) {
+    long sequence;
+    do {
+      sequence = claimed.get();
+      if (closed || sequence - consumed.get() >= capacity) {
+        dropped.increment();
+        return;
+      }
+    } while (!claimed.compareAndSet(sequence, sequence + 1));
+    ring.set((int) sequence & mask, event);
+    if (parked) {
+      LockSupport.unpark(writer);
+    }
+  }
+
+  private void drain() {
+    boolean dirty = false;
+    while (true) {
+      long sequence = consumed.get();
+      int slot = (int) sequence & mask;
+      LogEvent event = ring.get(slot);
+      if (event == null) {
+        if (dirty) {
+          reportDropped();
+          flushWriters();
+          dirty = false;
+        }
+        flushedThrough = sequence;
+        if (closed && sequence == claimed.get()) {
+          return;
+        }
+        parked = true;
+        if (ring.get(slot) == null) {
+          LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+        parked = false;
+        continue;
+      }
+      ring.set(slot, null);
+      consumed.set(sequence + 1);
+      write(event);
+      dirty = true;
+    }
+  }
+
+  private void write(LogEvent event) {
+    Writer writer = event.getLevel().compareTo(Level.WARN) >= 0 ? err : out;
+    try {
+      writer.write(event.format());
+      writer.write(System.lineSeparator());
+      if (event.getError() != null && event.getLevel() == Level.ERROR) {
+        PrintWriter trace = new PrintWriter(writer);
+        event.getError().printStackTrace(trace);
+        trace.flush();
+      }
+    } catch (IOException | RuntimeException e) {
+      // The console is gone or an argument failed to render; nothing left to report it to
+    }
+  }
+
+  private void reportDropped() {
+    long count = dropped.sumThenReset();
+    if (count > 0) {
+      write(
+          new LogEvent(
+              Level.WARN,
+              AsyncAppender.class.getSimpleName(),
+              "{} log events dropped, the log buffer was full",
+              new Object[] {count},
+              0));
+    }
+  }
+
+  private void flushWriters() {
+    try {
+      out.flush();
+      err.flush();
+    } catch (IOException e) {
+      // As above
+    }
+  }
+
+  @Override
+  public void flush(long timeoutMillis) {
+    long target = claimed.get();
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    while (flushedThrough < target && writer.isAlive() && System.nanoTime() < deadline) {
+      LockSupport.unpark(writer);
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+  }
+
+  /** @return Number of events dropped because the ring was full, since the last report */
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  /** @return Events waiting to be written */
+  public long getPending() {
+    return claimed.get() - consumed.get();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    LockSupport.unpark(writer);
+    try {
+      writer.join(TimeUnit.SECONDS.toMillis(5));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
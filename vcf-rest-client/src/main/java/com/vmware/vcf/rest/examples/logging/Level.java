@@ -0,0 +1,31 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples.logging;
+
+/**
+ * Log levels in increasing order of severity; {@link #OFF} disables logging
+ *
+ * @author VMware Inc
+ */
+public enum Level {
+  DEBUG,
+  INFO,
+  WARN,
+  ERROR,
+  OFF;
+
+  /**
+   * @param name Level name, case insensitive
+   * @param defaultLevel
+   * @return Level, or {@code defaultLevel} if the name is null or unknown
+   */
+  public static Level parse(String name, Level defaultLevel) {
+    if (name != null) {
+      for (Level level : values()) {
+        if (level.name().equalsIgnoreCase(name.trim())) {
+          return level;
+        }
+      }
+    }
+    return defaultLevel;
+  }
+}
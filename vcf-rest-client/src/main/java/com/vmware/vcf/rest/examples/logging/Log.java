@@ -0,0 +1,232 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logging facade of the client and the examples. Messages are formats with {} placeholders:
+ *
+ * <pre>
+ * LOG.debug("Request - {} , response code : {}", request, statusCode);
+ * </pre>
+ *
+ * <p>A statement below the configured level returns after one volatile read, before any string
+ * is built, and the overloads with up to two arguments do not even allocate an argument array.
+ * Enabled statements are handed to the installed {@link LogAppender}, by default an {@link
+ * AsyncAppender}, and formatted on its thread, with every argument cut to {@link
+ * #setMaxArgumentLength(int)} characters so a large response document cannot flood the log.
+ * {@link #sampled(int)} thins out statements on hot paths.
+ *
+ * @author VMware Inc
+ */
+public class Log {
+
+  static int DEFAULT_BUFFER_SIZE = 8192;
+  static int DEFAULT_MAX_ARGUMENT_LENGTH = 2000;
+  static long SHUTDOWN_FLUSH_MILLIS = 2000;
+
+  private static final Object[] NO_ARGUMENTS = new Object[0];
+
+  private static volatile Level level = Level.INFO;
+  private static volatile int maxArgumentLength = DEFAULT_MAX_ARGUMENT_LENGTH;
+  private static volatile LogAppender appender = new AsyncAppender(DEFAULT_BUFFER_SIZE);
+  private static int bufferSize = DEFAULT_BUFFER_SIZE;
+
+  static {
+    Runtime.getRuntime()
+        .addShutdownHook(new Thread(() -> appender.flush(SHUTDOWN_FLUSH_MILLIS), "log-flush"));
+  }
+
+  private final String name;
+  /** Log one enabled statement out of this many */
+  private final int sampleEvery;
+  private final AtomicLong sampleCounter;
+
+  private Log(String name, int sampleEvery) {
+    this.name = name;
+    this.sampleEvery = sampleEvery;
+    this.sampleCounter = sampleEvery > 1 ? new AtomicLong() : null;
+  }
+
+  /**
+   * @param type Class whose simple name names the log
+   * @return Log
+   */
+  public static Log getLog(Class<?> type) {
+    return new Log(type.getSimpleName(), 1);
+  }
+
+  /**
+   * @param every Keep one statement out of this many
+   * @return Log with the same name that only passes every {@code every}-th enabled statement to
+   *     the appender, e.g. for a status check logged on every poll of every task
+   */
+  public Log sampled(int every) {
+    return new Log(name, Math.max(1, every));
+  }
+
+  public static Level getLevel() {
+    return level;
+  }
+
+  public static void setLevel(Level level) {
+    Log.level = level;
+  }
+
+  /** @param maxArgumentLength Characters kept of each argument, 0 for no limit */
+  public static void setMaxArgumentLength(int maxArgumentLength) {
+    Log.maxArgumentLength = maxArgumentLength;
+  }
+
+  public static LogAppender getAppender() {
+    return appender;
+  }
+
+  /**
+   * Install an appender, writing out and closing the previous one
+   *
+   * @param appender
+   */
+  public static synchronized void setAppender(LogAppender appender) {
+    LogAppender previous = Log.appender;
+    Log.appender = appender;
+    previous.close();
+  }
+
+  /**
+   * Apply the logging settings of a client: {@code logLevel}, {@code logMaxArgumentLength} and
+   * {@code logBufferSize}. The default appender is only replaced if the buffer size changes.
+   *
+   * @param level
+   * @param maxArgumentLength
+   * @param bufferSize
+   */
+  public static synchronized void configure(Level level, int maxArgumentLength, int bufferSize) {
+    setLevel(level);
+    setMaxArgumentLength(maxArgumentLength);
+    if (bufferSize != Log.bufferSize && appender instanceof AsyncAppender) {
+      Log.bufferSize = bufferSize;
+      setAppender(new AsyncAppender(bufferSize));
+    }
+  }
+
+  /** Wait up to a second for the events logged so far to be written */
+  public static void flush() {
+    appender.flush(1000);
+  }
+
+  /**
+   * @param level
+   * @return Whether statements at this level are logged
+   */
+  public boolean isEnabled(Level level) {
+    return level.compareTo(Log.level) >= 0;
+  }
+
+  public boolean isDebugEnabled() {
+    return isEnabled(Level.DEBUG);
+  }
+
+  public void debug(String message) {
+    if (isEnabled(Level.DEBUG)) {
+      append(Level.DEBUG, message, NO_ARGUMENTS);
+    }
+  }
+
+  public void debug(String format, Object argument) {
+    if (isEnabled(Level.DEBUG)) {
+      append(Level.DEBUG, format, new Object[] {argument});
+    }
+  }
+
+  public void debug(String format, Object first, Object second) {
+    if (isEnabled(Level.DEBUG)) {
+      append(Level.DEBUG, format, new Object[] {first, second});
+    }
+  }
+
+  public void debug(String format, Object... arguments) {
+    if (isEnabled(Level.DEBUG)) {
+      append(Level.DEBUG, format, arguments);
+    }
+  }
+
+  public void info(String message) {
+    if (isEnabled(Level.INFO)) {
+      append(Level.INFO, message, NO_ARGUMENTS);
+    }
+  }
+
+  public void info(String format, Object argument) {
+    if (isEnabled(Level.INFO)) {
+      append(Level.INFO, format, new Object[] {argument});
+    }
+  }
+
+  public void info(String format, Object first, Object second) {
+    if (isEnabled(Level.INFO)) {
+      append(Level.INFO, format, new Object[] {first, second});
+    }
+  }
+
+  public void info(String format, Object... arguments) {
+    if (isEnabled(Level.INFO)) {
+      append(Level.INFO, format, arguments);
+    }
+  }
+
+  public void warn(String message) {
+    if (isEnabled(Level.WARN)) {
+      append(Level.WARN, message, NO_ARGUMENTS);
+    }
+  }
+
+  public void warn(String format, Object argument) {
+    if (isEnabled(Level.WARN)) {
+      append(Level.WARN, format, new Object[] {argument});
+    }
+  }
+
+  public void warn(String format, Object first, Object second) {
+    if (isEnabled(Level.WARN)) {
+      append(Level.WARN, format, new Object[] {first, second});
+    }
+  }
+
+  public void warn(String format, Object... arguments) {
+    if (isEnabled(Level.WARN)) {
+      append(Level.WARN, format, arguments);
+    }
+  }
+
+  public void error(String message) {
+    if (isEnabled(Level.ERROR)) {
+      append(Level.ERROR, message, NO_ARGUMENTS);
+    }
+  }
+
+  public void error(String format, Object argument) {
+    if (isEnabled(Level.ERROR)) {
+      append(Level.ERROR, format, new Object[] {argument});
+    }
+  }
+
+  public void error(String format, Object first, Object second) {
+    if (isEnabled(Level.ERROR)) {
+      append(Level.ERROR, format, new Object[] {first, second});
+    }
+  }
+
+  public void error(String format, Object... arguments) {
+    if (isEnabled(Level.ERROR)) {
+      append(Level.ERROR, format, arguments);
+    }
+  }
+
+  private void append(Level level, String format, Object[] arguments) {
+    if (sampleCounter != null && sampleCounter.getAndIncrement() % sampleEvery != 0) {
+      return;
+    }
+    appender.append(new LogEvent(level, name, format, arguments, maxArgumentLength));
+  }
+}
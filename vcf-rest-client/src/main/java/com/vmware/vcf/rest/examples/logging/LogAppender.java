@@ -0,0 +1,25 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples.logging;
+
+/**
+ * Destination of log events. {@link #append(LogEvent)} is called on the logging thread, so it
+ * must not block.
+ *
+ * @author VMware Inc
+ */
+public interface LogAppender extends AutoCloseable {
+
+  /** @param event Event that passed the level gate */
+  void append(LogEvent event);
+
+  /**
+   * Wait until the events appended so far are written
+   *
+   * @param timeoutMillis
+   */
+  void flush(long timeoutMillis);
+
+  /** Write the pending events and release the appender */
+  @Override
+  void close();
+}
@@ -0,0 +1,121 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples.logging;
+
+import java.time.Instant;
+
+/**
+ * One log statement, kept structured until it is written: the message format and its arguments
+ * are stored as passed, and the message is only built by the appender, off the calling thread.
+ * Arguments are rendered with {@link String#valueOf(Object)} at that point, so they should be
+ * immutable or at least not change after the call.
+ *
+ * @author VMware Inc
+ */
+public class LogEvent {
+
+  private final long timestamp;
+  private final Level level;
+  private final String logger;
+  private final String thread;
+  private final String format;
+  private final Object[] arguments;
+  private final Throwable error;
+  private final int maxArgumentLength;
+
+  LogEvent(
+      Level level, String logger, String format, Object[] arguments, int maxArgumentLength) {
+    this.timestamp = System.currentTimeMillis();
+    this.level = level;
+    this.logger = logger;
+    this.thread = Thread.currentThread().getName();
+    this.format = format;
+    Object last = arguments.length == 0 ? null : arguments[arguments.length - 1];
+    this.error = last instanceof Throwable ? (Throwable) last : null;
+    this.arguments = arguments;
+    this.maxArgumentLength = maxArgumentLength;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public Level getLevel() {
+    return level;
+  }
+
+  public String getLogger() {
+    return logger;
+  }
+
+  public String getThread() {
+    return thread;
+  }
+
+  public String getFormat() {
+    return format;
+  }
+
+  public Object[] getArguments() {
+    return arguments;
+  }
+
+  /** @return Throwable passed as the last argument, or null */
+  public Throwable getError() {
+    return error;
+  }
+
+  /**
+   * @return Message with every {} of the format replaced by the next argument, each truncated to
+   *     the configured maximum length. A throwable passed as an extra last argument is appended.
+   */
+  public String getMessage() {
+    StringBuilder message = new StringBuilder(format.length() + 32 * arguments.length);
+    int argument = 0;
+    int from = 0;
+    for (int at = format.indexOf("{}"); at >= 0; at = format.indexOf("{}", from)) {
+      message.append(format, from, at);
+      if (argument < arguments.length) {
+        appendTruncated(message, String.valueOf(arguments[argument++]));
+      } else {
+        message.append("{}");
+      }
+      from = at + 2;
+    }
+    message.append(format, from, format.length());
+    if (error != null && argument < arguments.length) {
+      message.append(" : ");
+      appendTruncated(message, error.toString());
+    }
+    return message.toString();
+  }
+
+  private void appendTruncated(StringBuilder message, String value) {
+    if (maxArgumentLength <= 0 || value.length() <= maxArgumentLength) {
+      message.append(value);
+    } else {
+      message
+          .append(value, 0, maxArgumentLength)
+          .append("... (")
+          .append(value.length())
+          .append(" chars)");
+    }
+  }
+
+  /** @return Event as one line: time, level, thread, logger and message */
+  public String format() {
+    return Instant.ofEpochMilli(timestamp)
+        + " "
+        + level
+        + " ["
+        + thread
+        + "] "
+        + logger
+        + " - "
+        + getMessage();
+  }
+
+  @Override
+  public String toString() {
+    return format();
+  }
+}
@@ -0,0 +1,33 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples.model;
+
+/**
+ * Workload domain creation spec. The spec is a deep tree that the client never changes, so only
+ * the domain name is bound and the document itself is kept as is and posted verbatim.
+ *
+ * @author VMware Inc
+ */
+public class DomainSpec {
+
+  private final String domainName;
+  private final String json;
+
+  DomainSpec(String domainName, String json) {
+    this.domainName = domainName;
+    this.json = json;
+  }
+
+  public String getDomainName() {
+    return domainName;
+  }
+
+  /** @return Spec document to post to /v1/domains and /v1/domains/validations/creations */
+  public String toJson() {
+    return json;
+  }
+
+  @Override
+  public String toString() {
+    return "DomainSpec [domainName=" + domainName + "]";
+  }
+}
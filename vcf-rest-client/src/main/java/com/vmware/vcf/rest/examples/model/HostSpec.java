@@ -0,0 +1,68 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples.model;
+
+/**
+ * Host commission spec, one element of the array posted to /v1/hosts and
+ * /v1/hosts/validations/commissions
+ *
+ * @author VMware Inc
+ */
+public class HostSpec {
+
+  private final String fqdn;
+  private final String username;
+  private final String password;
+  private final String storageType;
+  private final String networkPoolId;
+  private final String networkPoolName;
+
+  public HostSpec(
+      String fqdn,
+      String username,
+      String password,
+      String storageType,
+      String networkPoolId,
+      String networkPoolName) {
+    this.fqdn = fqdn;
+    this.username = username;
+    this.password = password;
+    this.storageType = storageType;
+    this.networkPoolId = networkPoolId;
+    this.networkPoolName = networkPoolName;
+  }
+
+  public String getFqdn() {
+    return fqdn;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public String getPassword() {
+    return password;
+  }
+
+  public String getStorageType() {
+    return storageType;
+  }
+
+  public String getNetworkPoolId() {
+    return networkPoolId;
+  }
+
+  public String getNetworkPoolName() {
+    return networkPoolName;
+  }
+
+  @Override
+  public String toString() {
+    return "HostSpec [fqdn="
+        + fqdn
+        + ", storageType="
+        + storageType
+        + ", networkPoolName="
+        + networkPoolName
+        + "]";
+  }
+}
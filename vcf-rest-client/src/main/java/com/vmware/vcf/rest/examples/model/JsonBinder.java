@@ -0,0 +1,434 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Binds the SDDC Manager documents used by the examples to the model classes. Every reader and
+ * writer is written out by hand on top of the streaming parser: fields are matched by name in a
+ * single pass, unknown fields are skipped without being materialised, and no reflection or
+ * intermediate JSON tree is involved.
+ *
+ * @author VMware Inc
+ */
+public final class JsonBinder {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  /** Reads one model object from a JSON document */
+  @FunctionalInterface
+  public interface Reader<T> {
+
+    /**
+     * @param json UTF-8 encoded document
+     * @return Bound object
+     * @throws IOException if the document is not valid JSON
+     */
+    T read(byte[] json) throws IOException;
+  }
+
+  /** Reads one object whose START_OBJECT token is current */
+  @FunctionalInterface
+  private interface ObjectReader<T> {
+    T read(JsonParser parser) throws IOException;
+  }
+
+  private JsonBinder() {}
+
+  /**
+   * @param json /v1/tasks/{id} document
+   * @return Task
+   * @throws IOException if the document is not a JSON object
+   */
+  public static Task readTask(byte[] json) throws IOException {
+    return readDocument(json, "task", JsonBinder::readTask);
+  }
+
+  /**
+   * @param json Validation document
+   * @return Validation
+   * @throws IOException if the document is not a JSON object
+   */
+  public static Validation readValidation(byte[] json) throws IOException {
+    return readDocument(json, "validation", JsonBinder::readValidation);
+  }
+
+  /**
+   * @param json License key document
+   * @return License key
+   * @throws IOException if the document is not a JSON object
+   */
+  public static LicenseKey readLicenseKey(byte[] json) throws IOException {
+    return readDocument(json, "license key", JsonBinder::readLicenseKey);
+  }
+
+  /**
+   * @param json /v1/license-keys list document, either a page object or a bare array
+   * @return License keys
+   * @throws IOException
+   */
+  public static List<LicenseKey> readLicenseKeys(byte[] json) throws IOException {
+    return readElements(json, JsonBinder::readLicenseKey);
+  }
+
+  /**
+   * @param json Host commission spec, a JSON array of host specs
+   * @return Host specs
+   * @throws IOException
+   */
+  public static List<HostSpec> readHostSpecs(byte[] json) throws IOException {
+    return readElements(json, JsonBinder::readHostSpec);
+  }
+
+  /**
+   * Bind a domain spec. Only the top level fields are scanned for the domain name; nested specs are
+   * skipped and the document is kept verbatim.
+   *
+   * @param json Domain creation spec
+   * @return Domain spec
+   * @throws IOException
+   */
+  public static DomainSpec readDomainSpec(byte[] json) throws IOException {
+    String domainName = null;
+    try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+      if (parser.nextToken() == JsonToken.START_OBJECT) {
+        while (domainName == null && parser.nextToken() == JsonToken.FIELD_NAME) {
+          String field = parser.currentName();
+          parser.nextToken();
+          if (field.equals("domainName")) {
+            domainName = readText(parser);
+          } else {
+            parser.skipChildren();
+          }
+        }
+      }
+    }
+    return new DomainSpec(domainName, new String(json, StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @param hosts
+   * @return Host commission spec, a JSON array of host specs
+   * @throws IOException
+   */
+  public static String writeHostSpecs(List<HostSpec> hosts) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(hosts.size() * 256);
+    try (JsonGenerator generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+      generator.writeStartArray();
+      for (HostSpec host : hosts) {
+        generator.writeStartObject();
+        writeField(generator, "fqdn", host.getFqdn());
+        writeField(generator, "username", host.getUsername());
+        writeField(generator, "password", host.getPassword());
+        writeField(generator, "storageType", host.getStorageType());
+        writeField(generator, "networkPoolId", host.getNetworkPoolId());
+        writeField(generator, "networkPoolName", host.getNetworkPoolName());
+        generator.writeEndObject();
+      }
+      generator.writeEndArray();
+    }
+    return out.toString(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @param licenseKey
+   * @return License key spec for /v1/license-keys
+   * @throws IOException
+   */
+  public static String writeLicenseKey(LicenseKey licenseKey) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+    try (JsonGenerator generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+      generator.writeStartObject();
+      writeField(generator, "id", licenseKey.getId());
+      writeField(generator, "key", licenseKey.getKey());
+      writeField(generator, "productType", licenseKey.getProductType());
+      writeField(generator, "description", licenseKey.getDescription());
+      writeField(generator, "licenseKeyType", licenseKey.getLicenseKeyType());
+      generator.writeEndObject();
+    }
+    return out.toString(StandardCharsets.UTF_8);
+  }
+
+  private static Task readTask(JsonParser parser) throws IOException {
+    String id = null;
+    String name = null;
+    String type = null;
+    String status = null;
+    String creationTimestamp = null;
+    String completionTimestamp = null;
+    List<Task.SubTask> subTasks = Collections.emptyList();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      parser.nextToken();
+      switch (field) {
+        case "id":
+          id = readText(parser);
+          break;
+        case "name":
+          name = readText(parser);
+          break;
+        case "type":
+          type = readText(parser);
+          break;
+        case "status":
+          status = readText(parser);
+          break;
+        case "creationTimestamp":
+          creationTimestamp = readText(parser);
+          break;
+        case "completionTimestamp":
+          completionTimestamp = readText(parser);
+          break;
+        case "subTasks":
+          subTasks = readArray(parser, JsonBinder::readSubTask);
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    return new Task(id, name, type, status, creationTimestamp, completionTimestamp, subTasks);
+  }
+
+  private static Task.SubTask readSubTask(JsonParser parser) throws IOException {
+    String name = null;
+    String description = null;
+    String status = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      parser.nextToken();
+      switch (field) {
+        case "name":
+          name = readText(parser);
+          break;
+        case "description":
+          description = readText(parser);
+          break;
+        case "status":
+          status = readText(parser);
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    return new Task.SubTask(name, description, status);
+  }
+
+  private static Validation readValidation(JsonParser parser) throws IOException {
+    String id = null;
+    String description = null;
+    String executionStatus = null;
+    String resultStatus = null;
+    List<Validation.ValidationCheck> validationChecks = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      parser.nextToken();
+      switch (field) {
+        case "id":
+          id = readText(parser);
+          break;
+        case "description":
+          description = readText(parser);
+          break;
+        case "executionStatus":
+          executionStatus = readText(parser);
+          break;
+        case "resultStatus":
+          resultStatus = readText(parser);
+          break;
+        case "validationChecks":
+          validationChecks = readArray(parser, JsonBinder::readValidationCheck);
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    return new Validation(id, description, executionStatus, resultStatus, validationChecks);
+  }
+
+  private static Validation.ValidationCheck readValidationCheck(JsonParser parser)
+      throws IOException {
+    String description = null;
+    String severity = null;
+    String resultStatus = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      parser.nextToken();
+      switch (field) {
+        case "description":
+          description = readText(parser);
+          break;
+        case "severity":
+          severity = readText(parser);
+          break;
+        case "resultStatus":
+          resultStatus = readText(parser);
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    return new Validation.ValidationCheck(description, severity, resultStatus);
+  }
+
+  private static LicenseKey readLicenseKey(JsonParser parser) throws IOException {
+    String id = null;
+    String key = null;
+    String productType = null;
+    String description = null;
+    String licenseKeyType = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      parser.nextToken();
+      switch (field) {
+        case "id":
+          id = readText(parser);
+          break;
+        case "key":
+          key = readText(parser);
+          break;
+        case "productType":
+          productType = readText(parser);
+          break;
+        case "description":
+          description = readText(parser);
+          break;
+        case "licenseKeyType":
+          licenseKeyType = readText(parser);
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    return new LicenseKey(id, key, productType, description, licenseKeyType);
+  }
+
+  private static HostSpec readHostSpec(JsonParser parser) throws IOException {
+    String fqdn = null;
+    String username = null;
+    String password = null;
+    String storageType = null;
+    String networkPoolId = null;
+    String networkPoolName = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      parser.nextToken();
+      switch (field) {
+        case "fqdn":
+          fqdn = readText(parser);
+          break;
+        case "username":
+          username = readText(parser);
+          break;
+        case "password":
+          password = readText(parser);
+          break;
+        case "storageType":
+          storageType = readText(parser);
+          break;
+        case "networkPoolId":
+          networkPoolId = readText(parser);
+          break;
+        case "networkPoolName":
+          networkPoolName = readText(parser);
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    return new HostSpec(fqdn, username, password, storageType, networkPoolId, networkPoolName);
+  }
+
+  /**
+   * @param json
+   * @param name Kind of document expected, for the error message
+   * @param reader
+   * @return Bound object
+   * @throws IOException if the document is empty or not an object, e.g. the body of a 202 without
+   *     content
+   */
+  private static <T> T readDocument(byte[] json, String name, ObjectReader<T> reader)
+      throws IOException {
+    try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+      JsonToken token = parser.nextToken();
+      if (token != JsonToken.START_OBJECT) {
+        throw new IOException(
+            "Expected a "
+                + name
+                + " object, found "
+                + (token == null ? "an empty document" : token.name()));
+      }
+      return reader.read(parser);
+    }
+  }
+
+  /**
+   * Read the elements of a list document, either a page object with an {@code elements} array or
+   * a bare array
+   */
+  private static <T> List<T> readElements(byte[] json, ObjectReader<T> reader) throws IOException {
+    try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+      JsonToken token = parser.nextToken();
+      if (token == JsonToken.START_ARRAY) {
+        return readArray(parser, reader);
+      }
+      if (token == JsonToken.START_OBJECT) {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String field = parser.currentName();
+          parser.nextToken();
+          if (field.equals("elements")) {
+            return readArray(parser, reader);
+          }
+          parser.skipChildren();
+        }
+      }
+      return Collections.emptyList();
+    }
+  }
+
+  /** Read an array of objects whose START_ARRAY token is current, skipping non-object entries */
+  private static <T> List<T> readArray(JsonParser parser, ObjectReader<T> reader)
+      throws IOException {
+    if (parser.currentToken() != JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return Collections.emptyList();
+    }
+    List<T> values = new ArrayList<>();
+    JsonToken token;
+    while ((token = parser.nextToken()) != null && token != JsonToken.END_ARRAY) {
+      if (token == JsonToken.START_OBJECT) {
+        values.add(reader.read(parser));
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return values;
+  }
+
+  /** @return Scalar value as text, or null for null, objects and arrays */
+  private static String readText(JsonParser parser) throws IOException {
+    JsonToken token = parser.currentToken();
+    if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return null;
+    }
+    return token == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+  }
+
+  private static void writeField(JsonGenerator generator, String name, String value)
+      throws IOException {
+    if (value != null) {
+      generator.writeStringField(name, value);
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples.model;
+
+/**
+ * License key as posted to and returned by /v1/license-keys. The id is assigned by SDDC Manager
+ * and is null for a key that has not been added yet.
+ *
+ * @author VMware Inc
+ */
+public class LicenseKey {
+
+  private final String id;
+  private final String key;
+  private final String productType;
+  private final String description;
+  private final String licenseKeyType;
+
+  public LicenseKey(String key, String productType, String description, String licenseKeyType) {
+    this(null, key, productType, description, licenseKeyType);
+  }
+
+  LicenseKey(
+      String id, String key, String productType, String description, String licenseKeyType) {
+    this.id = id;
+    this.key = key;
+    this.productType = productType;
+    this.description = description;
+    this.licenseKeyType = licenseKeyType;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  public String getProductType() {
+    return productType;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  public String getLicenseKeyType() {
+    return licenseKeyType;
+  }
+
+  @Override
+  public String toString() {
+    return "LicenseKey [id="
+        + id
+        + ", key="
+        + key
+        + ", productType="
+        + productType
+        + ", description="
+        + description
+        + ", licenseKeyType="
+        + licenseKeyType
+        + "]";
+  }
+}
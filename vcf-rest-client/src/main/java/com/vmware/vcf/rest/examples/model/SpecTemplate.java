@@ -0,0 +1,292 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Expands one spec template into many specs, e.g. the host commission specs of a whole rack or
+ * one workload domain spec per tenant. The template is any JSON document whose string values
+ * contain {@code ${name}} references:
+ *
+ * <pre>
+ * { "fqdn" : "esxi-${host}.vrack.vsphere.local", "networkPoolName" : "${pool}", ... }
+ * </pre>
+ *
+ * <p>Every variable is a function of the spec index, so all variables advance together: spec
+ * {@code i} gets the {@code i}-th FQDN, the {@code i}-th IP address and so on. The template is
+ * split into literal segments once, specs are rendered lazily when the stream is consumed and
+ * substituted values are escaped as JSON string content, so a fleet of any size costs one spec
+ * (or one batch) of memory at a time and never goes through a JSON tree.
+ *
+ * @author VMware Inc
+ */
+public class SpecTemplate {
+
+  private static class Variable {
+    final IntFunction<String> value;
+    /** Number of values, Integer.MAX_VALUE for an unbounded variable */
+    final int size;
+
+    Variable(IntFunction<String> value, int size) {
+      this.value = value;
+      this.size = size;
+    }
+  }
+
+  private final String template;
+  /** Literal segments, one more than there are references */
+  private final String[] literals;
+  /** Variable name of each reference */
+  private final String[] references;
+  private final Map<String, Variable> variables = new LinkedHashMap<>();
+
+  /**
+   * @param template Spec document with {@code ${name}} references
+   * @throws IllegalArgumentException if a reference is not closed
+   */
+  public SpecTemplate(String template) {
+    this.template = template;
+    List<String> literals = new ArrayList<>();
+    List<String> references = new ArrayList<>();
+    int from = 0;
+    for (int start = template.indexOf("${"); start >= 0; start = template.indexOf("${", from)) {
+      int end = template.indexOf('}', start);
+      if (end < 0) {
+        throw new IllegalArgumentException("Unclosed reference at offset " + start);
+      }
+      literals.add(template.substring(from, start));
+      references.add(template.substring(start + 2, end));
+      from = end + 1;
+    }
+    literals.add(template.substring(from));
+    this.literals = literals.toArray(new String[0]);
+    this.references = references.toArray(new String[0]);
+  }
+
+  /**
+   * Integer sequence, e.g. host numbers: {@code sequence("host", 5, 1, 0)} gives 5, 6, 7...
+   *
+   * @param name
+   * @param start First value
+   * @param step Increment per spec
+   * @param width Minimum number of digits, zero padded; 0 for no padding
+   * @return This template
+   */
+  public SpecTemplate sequence(String name, long start, long step, int width) {
+    String format = "%0" + Math.max(1, width) + "d";
+    IntFunction<String> value =
+        width > 0
+            ? i -> String.format(format, start + step * i)
+            : i -> Long.toString(start + step * i);
+    return define(name, new Variable(value, Integer.MAX_VALUE));
+  }
+
+  /**
+   * IPv4 address pool, e.g. {@code ipv4("vcenterIp", "10.0.0.43", 2)} gives 10.0.0.43,
+   * 10.0.0.45... Addresses carry over into the higher octets.
+   *
+   * @param name
+   * @param first First address
+   * @param step Increment per spec, at least 1
+   * @return This template
+   * @throws IllegalArgumentException if {@code first} is not a dotted IPv4 address
+   */
+  public SpecTemplate ipv4(String name, String first, int step) {
+    if (step < 1) {
+      throw new IllegalArgumentException("Step must be positive: " + step);
+    }
+    long base = parseIpv4(first);
+    long size = ((1L << 32) - base + step - 1) / step;
+    return define(
+        name,
+        new Variable(
+            i -> formatIpv4(base + (long) step * i), (int) Math.min(Integer.MAX_VALUE, size)));
+  }
+
+  /**
+   * Explicit values used once each, e.g. the license keys bought for the fleet. The template
+   * yields at most as many specs as there are values.
+   *
+   * @param name
+   * @param values
+   * @return This template
+   */
+  public SpecTemplate values(String name, List<String> values) {
+    List<String> copy = List.copyOf(values);
+    return define(name, new Variable(copy::get, copy.size()));
+  }
+
+  /**
+   * Values used in turn, e.g. spreading hosts over the network pools of a rack
+   *
+   * @param name
+   * @param values
+   * @return This template
+   * @throws IllegalArgumentException if there are no values
+   */
+  public SpecTemplate cycle(String name, List<String> values) {
+    if (values.isEmpty()) {
+      throw new IllegalArgumentException("No values for " + name);
+    }
+    List<String> copy = List.copyOf(values);
+    return define(name, new Variable(i -> copy.get(i % copy.size()), Integer.MAX_VALUE));
+  }
+
+  /**
+   * Value that is the same in every spec
+   *
+   * @param name
+   * @param value
+   * @return This template
+   */
+  public SpecTemplate constant(String name, String value) {
+    return define(name, new Variable(i -> value, Integer.MAX_VALUE));
+  }
+
+  private SpecTemplate define(String name, Variable variable) {
+    variables.put(name, variable);
+    return this;
+  }
+
+  /**
+   * @param index
+   * @return Spec {@code index} of the expansion
+   * @throws IllegalStateException if the template references an undefined variable
+   */
+  public String render(int index) {
+    StringBuilder spec = new StringBuilder(estimatedLength());
+    render(index, resolve(), spec);
+    return spec.toString();
+  }
+
+  private void render(int index, Variable[] resolved, StringBuilder spec) {
+    spec.append(literals[0]);
+    for (int i = 0; i < resolved.length; i++) {
+      appendEscaped(spec, resolved[i].value.apply(index));
+      spec.append(literals[i + 1]);
+    }
+  }
+
+  /** @return Variable of every reference, looked up once per expansion */
+  private Variable[] resolve() {
+    Variable[] resolved = new Variable[references.length];
+    for (int i = 0; i < references.length; i++) {
+      resolved[i] = variables.get(references[i]);
+      if (resolved[i] == null) {
+        throw new IllegalStateException("Undefined template variable " + references[i]);
+      }
+    }
+    return resolved;
+  }
+
+  private int estimatedLength() {
+    return template.length() + 16 * references.length;
+  }
+
+  /**
+   * @param count Number of specs wanted
+   * @return {@code count} or, if smaller, the number of values of the shortest bounded variable
+   */
+  public int size(int count) {
+    int size = Math.max(0, count);
+    for (Variable variable : resolve()) {
+      size = Math.min(size, variable.size);
+    }
+    return size;
+  }
+
+  /**
+   * @param count Number of specs wanted, capped by {@link #size(int)}
+   * @return Lazily rendered specs
+   */
+  public Stream<String> stream(int count) {
+    Variable[] resolved = resolve();
+    return IntStream.range(0, size(count))
+        .mapToObj(
+            i -> {
+              StringBuilder spec = new StringBuilder(estimatedLength());
+              render(i, resolved, spec);
+              return spec.toString();
+            });
+  }
+
+  /**
+   * Render the specs into JSON arrays, the shape /v1/hosts and /v1/hosts/validations/commissions
+   * take. Each batch is rendered only when the stream reaches it, so a submission pipeline that
+   * blocks on its in-flight cap also holds back spec generation.
+   *
+   * @param count Number of specs wanted, capped by {@link #size(int)}
+   * @param batchSize Specs per array
+   * @return Lazily rendered batches
+   */
+  public Stream<String> batches(int count, int batchSize) {
+    Variable[] resolved = resolve();
+    int total = size(count);
+    int size = Math.max(1, batchSize);
+    return IntStream.range(0, (total + size - 1) / size)
+        .mapToObj(
+            batch -> {
+              int from = batch * size;
+              int to = Math.min(total, from + size);
+              StringBuilder spec = new StringBuilder((to - from) * (estimatedLength() + 1) + 2);
+              spec.append('[');
+              for (int i = from; i < to; i++) {
+                if (i > from) {
+                  spec.append(',');
+                }
+                render(i, resolved, spec);
+              }
+              return spec.append(']').toString();
+            });
+  }
+
+  private static void appendEscaped(StringBuilder out, String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        out.append('\\').append(c);
+      } else if (c < 0x20) {
+        out.append(String.format("\\u%04x", (int) c));
+      } else {
+        out.append(c);
+      }
+    }
+  }
+
+  static long parseIpv4(String address) {
+    String[] octets = address.trim().split("\\.");
+    if (octets.length != 4) {
+      throw new IllegalArgumentException("Not an IPv4 address: " + address);
+    }
+    long value = 0;
+    for (String octet : octets) {
+      int part;
+      try {
+        part = Integer.parseInt(octet);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Not an IPv4 address: " + address, e);
+      }
+      if (part < 0 || part > 255) {
+        throw new IllegalArgumentException("Not an IPv4 address: " + address);
+      }
+      value = value << 8 | part;
+    }
+    return value;
+  }
+
+  static String formatIpv4(long value) {
+    return (value >>> 24 & 0xff)
+        + "."
+        + (value >>> 16 & 0xff)
+        + "."
+        + (value >>> 8 & 0xff)
+        + "."
+        + (value & 0xff);
+  }
+}
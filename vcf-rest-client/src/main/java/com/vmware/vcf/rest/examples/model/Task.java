@@ -0,0 +1,115 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples.model;
+
+import java.util.List;
+
+/**
+ * SDDC Manager task (/v1/tasks/{id}) returned by host commission and domain creation
+ *
+ * @author VMware Inc
+ */
+public class Task {
+
+  public static final String STATUS_SUCCESSFUL = "Successful";
+
+  /** One step of a task */
+  public static class SubTask {
+    private final String name;
+    private final String description;
+    private final String status;
+
+    SubTask(String name, String description, String status) {
+      this.name = name;
+      this.description = description;
+      this.status = status;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+
+    public String getStatus() {
+      return status;
+    }
+
+    @Override
+    public String toString() {
+      return "SubTask [name=" + name + ", status=" + status + "]";
+    }
+  }
+
+  private final String id;
+  private final String name;
+  private final String type;
+  private final String status;
+  private final String creationTimestamp;
+  private final String completionTimestamp;
+  private final List<SubTask> subTasks;
+
+  Task(
+      String id,
+      String name,
+      String type,
+      String status,
+      String creationTimestamp,
+      String completionTimestamp,
+      List<SubTask> subTasks) {
+    this.id = id;
+    this.name = name;
+    this.type = type;
+    this.status = status;
+    this.creationTimestamp = creationTimestamp;
+    this.completionTimestamp = completionTimestamp;
+    this.subTasks = subTasks;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public String getStatus() {
+    return status;
+  }
+
+  public String getCreationTimestamp() {
+    return creationTimestamp;
+  }
+
+  public String getCompletionTimestamp() {
+    return completionTimestamp;
+  }
+
+  public List<SubTask> getSubTasks() {
+    return subTasks;
+  }
+
+  /** @return true if the task finished with status Successful */
+  public boolean isSuccessful() {
+    return STATUS_SUCCESSFUL.equalsIgnoreCase(status);
+  }
+
+  @Override
+  public String toString() {
+    return "Task [id="
+        + id
+        + ", name="
+        + name
+        + ", status="
+        + status
+        + ", subTasks="
+        + subTasks.size()
+        + "]";
+  }
+}
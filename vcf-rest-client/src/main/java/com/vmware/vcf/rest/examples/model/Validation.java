@@ -0,0 +1,129 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a host commission or domain creation validation
+ *
+ * @author VMware Inc
+ */
+public class Validation {
+
+  public static final String IN_PROGRESS = "IN_PROGRESS";
+  public static final String SUCCEEDED = "SUCCEEDED";
+
+  /** One check of a validation */
+  public static class ValidationCheck {
+    private final String description;
+    private final String severity;
+    private final String resultStatus;
+
+    ValidationCheck(String description, String severity, String resultStatus) {
+      this.description = description;
+      this.severity = severity;
+      this.resultStatus = resultStatus;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+
+    public String getSeverity() {
+      return severity;
+    }
+
+    /** @return Result of the check, or null while it has not run */
+    public String getResultStatus() {
+      return resultStatus;
+    }
+
+    @Override
+    public String toString() {
+      return "ValidationCheck [description=" + description + ", resultStatus=" + resultStatus + "]";
+    }
+  }
+
+  private final String id;
+  private final String description;
+  private final String executionStatus;
+  private final String resultStatus;
+  private final List<ValidationCheck> validationChecks;
+
+  /**
+   * @param id
+   * @param description
+   * @param executionStatus
+   * @param resultStatus
+   * @param validationChecks Checks, or null when the document has no check list
+   */
+  Validation(
+      String id,
+      String description,
+      String executionStatus,
+      String resultStatus,
+      List<ValidationCheck> validationChecks) {
+    this.id = id;
+    this.description = description;
+    this.executionStatus = executionStatus;
+    this.resultStatus = resultStatus;
+    this.validationChecks = validationChecks;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  public String getExecutionStatus() {
+    return executionStatus;
+  }
+
+  public String getResultStatus() {
+    return resultStatus;
+  }
+
+  public List<ValidationCheck> getValidationChecks() {
+    return validationChecks == null ? Collections.emptyList() : validationChecks;
+  }
+
+  public boolean isInProgress() {
+    return IN_PROGRESS.equals(executionStatus);
+  }
+
+  /**
+   * @return true if the validation finished and every check that reports a result succeeded, or
+   *     the overall result succeeded when there are no checks
+   */
+  public boolean isSuccessful() {
+    if (isInProgress()) {
+      return false;
+    }
+    if (validationChecks == null) {
+      return SUCCEEDED.equals(resultStatus);
+    }
+    for (ValidationCheck check : validationChecks) {
+      if (check.resultStatus != null && !check.resultStatus.equals(SUCCEEDED)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "Validation [id="
+        + id
+        + ", executionStatus="
+        + executionStatus
+        + ", resultStatus="
+        + resultStatus
+        + ", validationChecks="
+        + getValidationChecks().size()
+        + "]";
+  }
+}
@@ -0,0 +1,94 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import org.junit.jupiter.api.Test;
+
+class AdaptiveConcurrencyLimitTest {
+
+  @Test
+  void clampsInitialLimit() {
+    assertEquals(2, new AdaptiveConcurrencyLimit(1, 2, 8, 0.9).getLimit());
+    assertEquals(8, new AdaptiveConcurrencyLimit(20, 2, 8, 0.9).getLimit());
+  }
+
+  @Test
+  void growsByAboutOnePerRoundTripWhileInUse() throws InterruptedException {
+    AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 1, 3, 0.9);
+    limit.acquire();
+    limit.onSuccess();
+    assertEquals(2, limit.getLimit());
+    for (int i = 0; i < 3; i++) {
+      limit.acquire();
+      limit.onSuccess();
+    }
+    assertEquals(3, limit.getLimit());
+    assertEquals(0, limit.getInFlight());
+  }
+
+  @Test
+  void doesNotGrowWhileIdle() throws InterruptedException {
+    AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 1, 16, 0.9);
+    for (int i = 0; i < 20; i++) {
+      limit.acquire();
+      limit.onSuccess();
+    }
+    assertEquals(4, limit.getLimit());
+  }
+
+  @Test
+  void halvesWhenThrottled() throws InterruptedException {
+    AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(8, 3, 16, 0.9);
+    limit.acquire();
+    limit.onThrottled();
+    assertEquals(4, limit.getLimit());
+    limit.acquire();
+    limit.onThrottled();
+    assertEquals(3, limit.getLimit());
+    assertEquals(0, limit.getInFlight());
+  }
+
+  @Test
+  void backsOffOnSlowCalls() throws InterruptedException {
+    AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 1, 16, 0.9);
+    limit.acquire();
+    limit.onSlow();
+    assertEquals(9, limit.getLimit());
+  }
+
+  @Test
+  void droppedCallKeepsLimit() throws InterruptedException {
+    AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(8, 1, 16, 0.9);
+    limit.acquire();
+    limit.onDropped();
+    assertEquals(8, limit.getLimit());
+    assertEquals(0, limit.getInFlight());
+  }
+
+  @Test
+  void blocksAtLimitUntilReleased() throws InterruptedException {
+    AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 1, 1, 0.9);
+    limit.acquire();
+    Thread waiter =
+        new Thread(
+            () -> {
+              try {
+                limit.acquire();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+    waiter.start();
+    while (waiter.getState() != Thread.State.WAITING) {
+      Thread.onSpinWait();
+    }
+    assertEquals(1, limit.getInFlight());
+
+    limit.onSuccess();
+    waiter.join(10_000);
+    assertFalse(waiter.isAlive());
+    assertEquals(1, limit.getInFlight());
+  }
+}
@@ -0,0 +1,99 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.impl.execchain.RequestAbortedException;
+import org.junit.jupiter.api.Test;
+
+import com.vmware.vcf.rest.examples.CircuitBreaker.State;
+
+class CircuitBreakerTest {
+
+  /** Long enough that no trial call is let through during a test */
+  static final long OPEN_MILLIS = 60_000;
+
+  @Test
+  void opensAfterConsecutiveFailures() {
+    CircuitBreaker breaker = new CircuitBreaker(3, OPEN_MILLIS);
+    breaker.onResponse(503);
+    breaker.onError(new SocketTimeoutException());
+    assertEquals(State.CLOSED, breaker.getState());
+    assertDoesNotThrow(breaker::acquire);
+
+    breaker.onResponse(502);
+    assertEquals(State.OPEN, breaker.getState());
+    assertThrows(CircuitBreakerOpenException.class, breaker::acquire);
+  }
+
+  @Test
+  void successResetsFailureCount() {
+    CircuitBreaker breaker = new CircuitBreaker(3, OPEN_MILLIS);
+    breaker.onResponse(504);
+    breaker.onResponse(504);
+    breaker.onResponse(200);
+    breaker.onResponse(504);
+    breaker.onResponse(504);
+    assertEquals(State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  void otherErrorAnswersCountAsSuccess() {
+    CircuitBreaker breaker = new CircuitBreaker(1, OPEN_MILLIS);
+    breaker.onResponse(500);
+    breaker.onResponse(404);
+    breaker.onResponse(429);
+    assertEquals(State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  void trialCallSuccessCloses() throws CircuitBreakerOpenException {
+    CircuitBreaker breaker = new CircuitBreaker(1, 0);
+    breaker.onError(new ConnectException());
+    assertEquals(State.OPEN, breaker.getState());
+
+    breaker.acquire();
+    assertEquals(State.HALF_OPEN, breaker.getState());
+    breaker.onResponse(200);
+    assertEquals(State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  void trialCallFailureReopens() throws CircuitBreakerOpenException {
+    CircuitBreaker breaker = new CircuitBreaker(2, 0);
+    breaker.onResponse(503);
+    breaker.onResponse(503);
+    breaker.acquire();
+    assertEquals(State.HALF_OPEN, breaker.getState());
+
+    breaker.onResponse(503);
+    assertEquals(State.OPEN, breaker.getState());
+  }
+
+  @Test
+  void ignoresLocalFailures() {
+    CircuitBreaker breaker = new CircuitBreaker(1, OPEN_MILLIS);
+    breaker.onError(new ConnectionPoolTimeoutException("Timeout waiting for connection"));
+    breaker.onError(new RequestAbortedException("Request aborted"));
+    breaker.onError(new InterruptedIOException());
+    breaker.onError(new CircuitBreakerOpenException("open", 1000));
+    assertEquals(State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  void zeroThresholdDisablesBreaker() {
+    CircuitBreaker breaker = new CircuitBreaker(0, OPEN_MILLIS);
+    for (int i = 0; i < 100; i++) {
+      breaker.onResponse(503);
+    }
+    assertEquals(State.CLOSED, breaker.getState());
+    assertDoesNotThrow(breaker::acquire);
+  }
+}
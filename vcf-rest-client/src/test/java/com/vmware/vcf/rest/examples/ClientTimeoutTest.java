@@ -0,0 +1,107 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.time.Duration;
+import java.util.Properties;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+
+import org.apache.http.client.fluent.Request;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Timeouts of the default HTTP/1.1 transport against an SDDC Manager that completes the TLS
+ * handshake, reads the request and never answers.
+ */
+class ClientTimeoutTest {
+
+  private static final char[] KEYSTORE_PASSWORD = "changeit".toCharArray();
+
+  private SSLServerSocket server;
+  private Thread acceptor;
+  private Client client;
+
+  @BeforeEach
+  void setUp() throws IOException, GeneralSecurityException {
+    server =
+        (SSLServerSocket)
+            createSslContext()
+                .getServerSocketFactory()
+                .createServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    acceptor = new Thread(this::stall, "stalling-server");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    Properties properties = Client.loadApplicationProperties();
+    properties.setProperty(
+        "sddcManagerIP", server.getInetAddress().getHostAddress() + ":" + server.getLocalPort());
+    properties.setProperty("authMode", "basic");
+    properties.setProperty("taskJournalPath", "");
+    properties.setProperty("recordPath", "");
+    properties.setProperty("httpTransport", "http1");
+    properties.setProperty("httpSocketTimeoutMillis", "1000");
+    properties.setProperty("retryMaxAttempts", "1");
+    properties.setProperty("circuitBreakerFailureThreshold", "0");
+    properties.setProperty("logLevel", "WARN");
+    client = new Client(properties);
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    client.close();
+    server.close();
+  }
+
+  @Test
+  void socketTimeoutEndsUnansweredRequest() {
+    assertTimeoutPreemptively(
+        Duration.ofSeconds(10),
+        () ->
+            assertThrows(
+                SocketTimeoutException.class,
+                () -> client.execute(Request.Get(client.getBaseUrl() + "/v1/domains"))));
+  }
+
+  /** Accept connections and read requests without ever writing a response */
+  private void stall() {
+    while (!server.isClosed()) {
+      try (Socket socket = server.accept()) {
+        ((SSLSocket) socket).startHandshake();
+        InputStream in = socket.getInputStream();
+        while (in.read() != -1) {
+          // Never answer
+        }
+      } catch (IOException e) {
+        // Client gave up or server closed
+      }
+    }
+  }
+
+  private static SSLContext createSslContext() throws IOException, GeneralSecurityException {
+    KeyStore keyStore = KeyStore.getInstance("PKCS12");
+    try (InputStream in =
+        ClientTimeoutTest.class.getClassLoader().getResourceAsStream("stub-keystore.p12")) {
+      keyStore.load(in, KEYSTORE_PASSWORD);
+    }
+    KeyManagerFactory keyManagers =
+        KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    keyManagers.init(keyStore, KEYSTORE_PASSWORD);
+    SSLContext sslContext = SSLContext.getInstance("TLS");
+    sslContext.init(keyManagers.getKeyManagers(), null, null);
+    return sslContext;
+  }
+}
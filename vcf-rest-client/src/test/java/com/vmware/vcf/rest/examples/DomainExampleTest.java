@@ -0,0 +1,77 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import com.vmware.vcf.rest.examples.model.SpecTemplate;
+
+class DomainExampleTest {
+
+  private static SpecTemplate domainTemplate() throws IOException {
+    try (InputStream in = ClassLoader.getSystemResourceAsStream("add_domain_template.json")) {
+      return new SpecTemplate(new String(in.readAllBytes(), StandardCharsets.UTF_8))
+          .sequence("domain", 2, 1, 0)
+          .ipv4("vcenterIp", "10.0.0.43", 5)
+          .ipv4("nsxManagerIp", "10.0.0.44", 5)
+          .ipv4("nsxControllerIp1", "10.0.0.45", 5)
+          .ipv4("nsxControllerIp2", "10.0.0.46", 5)
+          .ipv4("nsxControllerIp3", "10.0.0.47", 5)
+          .constant("licenseKey", "AAAAA-BBBBB-CCCCC-DDDDD-EEEEE")
+          .constant("nsxLicenseKey", "AAAAA-BBBBB-CCCCC-DDDDD-EEEEE");
+    }
+  }
+
+  private static List<String> hostIds(String spec) {
+    JSONArray hostSpecs =
+        new JSONObject(spec)
+            .getJSONObject("computeSpec")
+            .getJSONArray("clusterSpecs")
+            .getJSONObject(0)
+            .getJSONArray("hostSpecs");
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i < hostSpecs.length(); i++) {
+      ids.add(hostSpecs.getJSONObject(i).getString("id"));
+    }
+    return ids;
+  }
+
+  @Test
+  void assignsDistinctHostsToEveryDomain() throws IOException {
+    List<String> pool = Arrays.asList("h1", "h2", "h3", "h4", "h5", "h6", "h7");
+    SpecTemplate template =
+        DomainExample.assignHosts(
+            domainTemplate(), pool, DomainExample.TEMPLATE_HOSTS_PER_DOMAIN);
+
+    List<String> specs = template.stream(10).collect(Collectors.toList());
+    assertEquals(2, specs.size());
+    assertEquals(Arrays.asList("h1", "h2", "h3"), hostIds(specs.get(0)));
+    assertEquals(Arrays.asList("h4", "h5", "h6"), hostIds(specs.get(1)));
+    Set<String> names = new HashSet<>();
+    for (String spec : specs) {
+      names.add(new JSONObject(spec).getString("domainName"));
+    }
+    assertEquals(2, names.size());
+  }
+
+  @Test
+  void createsNoDomainWithoutEnoughHosts() throws IOException {
+    SpecTemplate template =
+        DomainExample.assignHosts(
+            domainTemplate(), Arrays.asList("h1", "h2"), DomainExample.TEMPLATE_HOSTS_PER_DOMAIN);
+    assertEquals(0, template.size(5));
+  }
+}
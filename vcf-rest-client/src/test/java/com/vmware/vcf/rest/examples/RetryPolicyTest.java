@@ -0,0 +1,119 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+
+import javax.net.ssl.SSLHandshakeException;
+
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.impl.execchain.RequestAbortedException;
+import org.junit.jupiter.api.Test;
+
+class RetryPolicyTest {
+
+  /** Zero backoff makes every granted delay 0, so only the decision is under test */
+  private static RetryPolicy policy() {
+    return new RetryPolicy(3, 0, 0, 0.1, 100);
+  }
+
+  private static boolean retried(String method, IOException error) {
+    return policy().retryDelay(method, 1, error) != RetryPolicy.NO_RETRY;
+  }
+
+  private static boolean retried(String method, int statusCode) {
+    return policy().retryDelay(method, 1, statusCode, null) != RetryPolicy.NO_RETRY;
+  }
+
+  @Test
+  void retriesIdempotentCallsOnTransientErrors() {
+    assertTrue(retried("GET", new SocketTimeoutException()));
+    assertTrue(retried("GET", new NoHttpResponseException("no response")));
+    assertTrue(retried("HEAD", new SocketException("Connection reset")));
+  }
+
+  @Test
+  void neverRepeatsPostThatMayHaveBeenSent() {
+    assertFalse(retried("POST", new SocketTimeoutException()));
+    assertFalse(retried("POST", new NoHttpResponseException("no response")));
+    assertFalse(retried("PATCH", new SocketException("Connection reset")));
+  }
+
+  @Test
+  void retriesAnyMethodThatNeverConnected() {
+    assertTrue(retried("POST", new ConnectException()));
+    assertTrue(retried("POST", new ConnectTimeoutException()));
+    assertTrue(retried("DELETE", new ConnectException()));
+  }
+
+  @Test
+  void neverRetriesLocalFailures() {
+    for (String method : new String[] {"GET", "POST"}) {
+      assertFalse(retried(method, new ConnectionPoolTimeoutException("pool")));
+      assertFalse(retried(method, new RequestAbortedException("aborted")));
+      assertFalse(retried(method, new InterruptedIOException()));
+    }
+  }
+
+  @Test
+  void neverRetriesPermanentErrors() {
+    assertFalse(retried("GET", new UnknownHostException("sddc-manager")));
+    assertFalse(retried("GET", new SSLHandshakeException("handshake")));
+    assertFalse(retried("GET", new CircuitBreakerOpenException("open", 1000)));
+  }
+
+  @Test
+  void classifiesLocalFailures() {
+    assertTrue(RetryPolicy.isLocalFailure(new ConnectionPoolTimeoutException()));
+    assertTrue(RetryPolicy.isLocalFailure(new RequestAbortedException("aborted")));
+    assertTrue(RetryPolicy.isLocalFailure(new InterruptedIOException()));
+    assertFalse(RetryPolicy.isLocalFailure(new SocketTimeoutException()));
+    assertFalse(RetryPolicy.isLocalFailure(new ConnectTimeoutException()));
+  }
+
+  @Test
+  void classifiesStatusCodes() {
+    assertTrue(retried("GET", 502));
+    assertTrue(retried("GET", 504));
+    assertFalse(retried("POST", 502));
+    assertFalse(retried("POST", 504));
+    assertTrue(retried("POST", 503));
+    assertTrue(retried("POST", 429));
+    assertFalse(retried("GET", 500));
+    assertFalse(retried("GET", 404));
+  }
+
+  @Test
+  void waitsAtLeastRetryAfter() {
+    assertEquals(7000, policy().retryDelay("GET", 1, 503, "7"));
+  }
+
+  @Test
+  void stopsAtMaxAttempts() {
+    RetryPolicy policy = policy();
+    assertNotEquals(RetryPolicy.NO_RETRY, policy.retryDelay("GET", 2, 503, null));
+    assertEquals(RetryPolicy.NO_RETRY, policy.retryDelay("GET", 3, 503, null));
+  }
+
+  @Test
+  void stopsWhenBudgetIsSpent() {
+    RetryPolicy policy = new RetryPolicy(3, 0, 0, 0.5, 1);
+    assertEquals(0, policy.retryDelay("GET", 1, 503, null));
+    assertEquals(RetryPolicy.NO_RETRY, policy.retryDelay("GET", 1, 503, null));
+
+    policy.onFirstAttempt();
+    policy.onFirstAttempt();
+    assertEquals(0, policy.retryDelay("GET", 1, 503, null));
+  }
+}
@@ -0,0 +1,154 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.vmware.vcf.rest.examples.TaskTracker.Kind;
+
+class TaskJournalTest {
+
+  static final long RETENTION_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+  @TempDir Path dir;
+
+  private TaskJournal open(Path path) throws IOException {
+    return new TaskJournal(path, 60_000, RETENTION_MILLIS);
+  }
+
+  private static byte[] record(JSONObject json) {
+    byte[] record = json.toString().getBytes(StandardCharsets.UTF_8);
+    CRC32 crc = new CRC32();
+    crc.update(record);
+    return ByteBuffer.allocate(TaskJournal.RECORD_HEADER_SIZE + record.length)
+        .putInt(record.length)
+        .putInt((int) crc.getValue())
+        .put(record)
+        .array();
+  }
+
+  private static JSONObject change(String id) {
+    return new JSONObject()
+        .put("kind", Kind.TASK.name())
+        .put("id", id)
+        .put("updatedAt", System.currentTimeMillis());
+  }
+
+  @Test
+  void replaysEntriesWrittenBeforeClose() throws IOException {
+    Path path = dir.resolve("journal.dat");
+    try (TaskJournal journal = open(path)) {
+      journal.submitted(Kind.TASK, "hash-1", "task-1");
+      journal.tracked(Kind.TASK, "task-1", 1234L);
+      journal.statusChanged(Kind.TASK, "task-1", "In Progress");
+      journal.submitted(Kind.TASK, "hash-2", "task-2");
+      journal.statusChanged(Kind.TASK, "task-2", "Successful");
+    }
+    try (TaskJournal journal = open(path)) {
+      List<TaskJournal.Entry> unfinished = journal.getUnfinished();
+      assertEquals(1, unfinished.size());
+      TaskJournal.Entry entry = unfinished.get(0);
+      assertEquals("task-1", entry.getId());
+      assertEquals("hash-1", entry.getSpecHash());
+      assertEquals("In Progress", entry.getStatus());
+      assertEquals(1234L, entry.getDeadline());
+    }
+  }
+
+  @Test
+  void stopsReplayAtTornRecord() throws IOException {
+    Path path = dir.resolve("journal.dat");
+    ByteArrayOutputStream file = new ByteArrayOutputStream();
+    file.writeBytes(record(change("task-1").put("specHash", "hash-1")));
+    file.writeBytes(record(change("task-1").put("status", "In Progress")));
+    byte[] corrupt = record(change("task-2").put("specHash", "hash-2"));
+    corrupt[corrupt.length - 2] ^= 0x1;
+    file.writeBytes(corrupt);
+    file.writeBytes(record(change("task-3").put("specHash", "hash-3")));
+    Files.write(path, file.toByteArray());
+
+    try (TaskJournal journal = open(path)) {
+      assertEquals("task-1", journal.findSubmitted(Kind.TASK, "hash-1").getId());
+      assertNull(journal.findSubmitted(Kind.TASK, "hash-2"));
+      assertNull(journal.findSubmitted(Kind.TASK, "hash-3"));
+    }
+  }
+
+  @Test
+  void stopsReplayAtTruncatedRecord() throws IOException {
+    Path path = dir.resolve("journal.dat");
+    ByteArrayOutputStream file = new ByteArrayOutputStream();
+    file.writeBytes(record(change("task-1").put("specHash", "hash-1")));
+    byte[] truncated = record(change("task-2").put("specHash", "hash-2"));
+    file.write(truncated, 0, truncated.length / 2);
+    Files.write(path, file.toByteArray());
+
+    try (TaskJournal journal = open(path)) {
+      assertEquals(1, journal.getUnfinished().size());
+      assertNull(journal.findSubmitted(Kind.TASK, "hash-2"));
+      // The torn tail is compacted away, so new records follow the intact ones
+      journal.submitted(Kind.TASK, "hash-3", "task-3");
+    }
+    try (TaskJournal journal = open(path)) {
+      assertEquals("task-3", journal.findSubmitted(Kind.TASK, "hash-3").getId());
+    }
+  }
+
+  @Test
+  void findsOnlyUnfinishedSubmissions() throws IOException {
+    try (TaskJournal journal = open(dir.resolve("journal.dat"))) {
+      journal.submitted(Kind.TASK, "hash", "task-1");
+      journal.statusChanged(Kind.TASK, "task-1", "In Progress");
+      assertEquals("task-1", journal.findSubmitted(Kind.TASK, "hash").getId());
+
+      journal.statusChanged(Kind.TASK, "task-1", "Successful");
+      assertNull(journal.findSubmitted(Kind.TASK, "hash"));
+
+      journal.submitted(Kind.TASK, "hash", "task-2");
+      assertEquals("task-2", journal.findSubmitted(Kind.TASK, "hash").getId());
+      assertNull(journal.findSubmitted(Kind.HOST_VALIDATION, "hash"));
+    }
+  }
+
+  @Test
+  void dropsFinishedEntriesPastRetention() throws IOException {
+    Path path = dir.resolve("journal.dat");
+    long expired = System.currentTimeMillis() - RETENTION_MILLIS - 1;
+    ByteArrayOutputStream file = new ByteArrayOutputStream();
+    file.writeBytes(
+        record(change("old").put("status", "Successful").put("updatedAt", expired)));
+    file.writeBytes(
+        record(change("running").put("status", "In Progress").put("updatedAt", expired)));
+    Files.write(path, file.toByteArray());
+
+    try (TaskJournal journal = open(path)) {
+      List<TaskJournal.Entry> unfinished = journal.getUnfinished();
+      assertEquals(1, unfinished.size());
+      assertEquals("running", unfinished.get(0).getId());
+    }
+  }
+
+  @Test
+  void refusesSecondWriter() throws IOException {
+    Path path = dir.resolve("journal.dat");
+    try (TaskJournal journal = open(path)) {
+      assertThrows(IOException.class, () -> open(path));
+    }
+    open(path).close();
+  }
+}
@@ -0,0 +1,183 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Status check handling of the tracker against a scripted SDDC Manager. The client sends every
+ * call over {@link ScriptedTransport}, so the answers and their order are fully under test control
+ * and no sockets are involved.
+ */
+class TaskTrackerTest {
+
+  /** Answers status checks from a script; the last answer repeats once the script is used up */
+  static class ScriptedTransport implements Transport {
+    final ConcurrentLinkedQueue<Answer> script = new ConcurrentLinkedQueue<>();
+    final AtomicInteger checks = new AtomicInteger();
+    volatile Answer last;
+
+    ScriptedTransport then(int statusCode, String taskStatus) {
+      script.add(new Answer(statusCode, taskStatus));
+      return this;
+    }
+
+    @Override
+    public String getName() {
+      return "scripted";
+    }
+
+    @Override
+    public CloseableHttpResponse execute(HttpUriRequest request, HttpContext context) {
+      checks.incrementAndGet();
+      Answer answer = script.poll();
+      if (answer == null) {
+        answer = last;
+      }
+      last = answer;
+      Response response = new Response(answer.statusCode);
+      JSONObject body =
+          answer.taskStatus == null
+              ? new JSONObject().put("errorCode", "TASK_NOT_FOUND")
+              : new JSONObject().put("id", "task-1").put("status", answer.taskStatus);
+      response.setEntity(new StringEntity(body.toString(), ContentType.APPLICATION_JSON));
+      return response;
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  static class Answer {
+    final int statusCode;
+    final String taskStatus;
+
+    Answer(int statusCode, String taskStatus) {
+      this.statusCode = statusCode;
+      this.taskStatus = taskStatus;
+    }
+  }
+
+  static class Response extends BasicHttpResponse implements CloseableHttpResponse {
+    Response(int statusCode) {
+      super(HttpVersion.HTTP_1_1, statusCode, null);
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  private long loopTickMillis;
+  private Properties properties;
+  private ScriptedTransport transport;
+  private Client client;
+
+  @BeforeEach
+  void setUp() {
+    loopTickMillis = TaskTracker.LOOP_TICK_MILLIS;
+    TaskTracker.LOOP_TICK_MILLIS = 10;
+    properties = Client.loadApplicationProperties();
+    properties.setProperty("sddcManagerIP", "sddc-manager.test");
+    properties.setProperty("authMode", "basic");
+    properties.setProperty("taskJournalPath", "");
+    properties.setProperty("recordPath", "");
+    properties.setProperty("clientThreadMode", "platform");
+    properties.setProperty("taskPollInitialIntervalSeconds", "0");
+    properties.setProperty("taskPollMaxIntervalSeconds", "0");
+    properties.setProperty("retryMaxAttempts", "1");
+    properties.setProperty("circuitBreakerFailureThreshold", "0");
+    properties.setProperty("rateLimitPermitsPerSecond", "10000");
+    properties.setProperty("rateLimitBurst", "10000");
+    properties.setProperty("logLevel", "WARN");
+    transport = new ScriptedTransport();
+    client = new Client(properties, transport);
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    client.close();
+    TaskTracker.LOOP_TICK_MILLIS = loopTickMillis;
+  }
+
+  private CompletableFuture<RestResponse> track(long timeoutMillis) {
+    return client.getTaskTracker().trackTask("task-1", timeoutMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @Test
+  void completesWhenTaskFinishes() throws Exception {
+    transport.then(200, "In Progress").then(200, "In Progress").then(200, "Successful");
+    RestResponse response = track(60_000).get(10, TimeUnit.SECONDS);
+    assertEquals("Successful", response.getJson().getString("status"));
+    assertEquals(3, transport.checks.get());
+  }
+
+  @Test
+  void failsOnClientError() {
+    transport.then(404, null);
+    CompletableFuture<RestResponse> future = track(60_000);
+    HttpResponseException error =
+        assertThrows(HttpResponseException.class, () -> TaskTracker.await(future));
+    assertEquals(404, error.getStatusCode());
+    assertEquals(1, transport.checks.get());
+  }
+
+  @Test
+  void ridesOutServerErrorsAndThrottling() throws Exception {
+    transport.then(503, null).then(500, null).then(429, null).then(200, "Successful");
+    RestResponse response = track(60_000).get(10, TimeUnit.SECONDS);
+    assertEquals("Successful", response.getJson().getString("status"));
+    assertEquals(4, transport.checks.get());
+  }
+
+  @Test
+  void checksAgainWithoutBackingOffOnPoller() throws Exception {
+    client.close();
+    // A retry inside the status check would hold the poller thread for minutes
+    properties.setProperty("retryMaxAttempts", "4");
+    properties.setProperty("retryInitialBackoffMillis", "600000");
+    properties.setProperty("retryMaxBackoffMillis", "600000");
+    client = new Client(properties, transport);
+    transport.then(503, null).then(200, "Successful");
+    RestResponse response = track(60_000).get(10, TimeUnit.SECONDS);
+    assertEquals("Successful", response.getJson().getString("status"));
+    assertEquals(2, transport.checks.get());
+  }
+
+  @Test
+  void failsOnServerErrorsPastDeadline() {
+    transport.then(503, null);
+    CompletableFuture<RestResponse> future = track(200);
+    HttpResponseException error =
+        assertThrows(HttpResponseException.class, () -> TaskTracker.await(future));
+    assertEquals(503, error.getStatusCode());
+    assertTrue(transport.checks.get() > 1);
+  }
+
+  @Test
+  void completesWithLastStatusPastDeadline() throws IOException, InterruptedException {
+    transport.then(200, "In Progress");
+    RestResponse response = TaskTracker.await(track(200));
+    assertEquals("In Progress", response.getJson().getString("status"));
+  }
+}
@@ -0,0 +1,92 @@
+/** Copyright 2019 VMware, Inc. All rights reserved. -- VMware Confidential */
+package com.vmware.vcf.rest.examples.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+class SpecTemplateTest {
+
+  static final String HOST_TEMPLATE =
+      "{\"fqdn\":\"esxi-${host}.vrack.vsphere.local\",\"ip\":\"${ip}\","
+          + "\"networkPoolName\":\"${pool}\",\"username\":\"${user}\"}";
+
+  private static SpecTemplate hosts() {
+    return new SpecTemplate(HOST_TEMPLATE)
+        .sequence("host", 5, 1, 3)
+        .ipv4("ip", "10.0.0.254", 1)
+        .cycle("pool", Arrays.asList("pool-a", "pool-b"))
+        .constant("user", "root");
+  }
+
+  @Test
+  void advancesAllVariablesTogether() {
+    List<JSONObject> specs =
+        hosts().stream(3).map(JSONObject::new).collect(Collectors.toList());
+    assertEquals(3, specs.size());
+    assertEquals("esxi-005.vrack.vsphere.local", specs.get(0).getString("fqdn"));
+    assertEquals("esxi-007.vrack.vsphere.local", specs.get(2).getString("fqdn"));
+    assertEquals("10.0.0.254", specs.get(0).getString("ip"));
+    assertEquals("10.0.1.0", specs.get(2).getString("ip"));
+    assertEquals("pool-a", specs.get(0).getString("networkPoolName"));
+    assertEquals("pool-b", specs.get(1).getString("networkPoolName"));
+    assertEquals("pool-a", specs.get(2).getString("networkPoolName"));
+    assertEquals("root", specs.get(2).getString("username"));
+  }
+
+  @Test
+  void renderMatchesStream() {
+    SpecTemplate template = hosts();
+    assertEquals(template.stream(5).skip(4).findFirst().get(), template.render(4));
+  }
+
+  @Test
+  void boundedVariableCapsSpecCount() {
+    SpecTemplate template = hosts().values("user", Arrays.asList("alice", "bob"));
+    assertEquals(2, template.size(10));
+    assertEquals(2, template.stream(10).count());
+    assertEquals(0, template.size(-1));
+  }
+
+  @Test
+  void escapesSubstitutedValues() {
+    String spec =
+        new SpecTemplate("{\"name\":\"${name}\"}").constant("name", "a\"b\\c\n").render(0);
+    assertEquals("a\"b\\c\n", new JSONObject(spec).getString("name"));
+  }
+
+  @Test
+  void rendersBatchesAsArrays() {
+    List<String> batches = hosts().batches(5, 2).collect(Collectors.toList());
+    assertEquals(3, batches.size());
+    assertEquals(2, new JSONArray(batches.get(0)).length());
+    assertEquals(1, new JSONArray(batches.get(2)).length());
+    assertEquals(
+        "esxi-009.vrack.vsphere.local",
+        new JSONArray(batches.get(2)).getJSONObject(0).getString("fqdn"));
+  }
+
+  @Test
+  void rejectsUndefinedAndUnclosedReferences() {
+    assertThrows(IllegalStateException.class, () -> new SpecTemplate("${missing}").render(0));
+    assertThrows(IllegalArgumentException.class, () -> new SpecTemplate("\"${a\""));
+  }
+
+  @Test
+  void parsesAndFormatsIpv4() {
+    assertEquals(0x0A000001L, SpecTemplate.parseIpv4("10.0.0.1"));
+    assertEquals("255.255.255.255", SpecTemplate.formatIpv4(0xFFFFFFFFL));
+    assertThrows(IllegalArgumentException.class, () -> SpecTemplate.parseIpv4("10.0.0"));
+    assertThrows(IllegalArgumentException.class, () -> SpecTemplate.parseIpv4("10.0.0.256"));
+    assertThrows(IllegalArgumentException.class, () -> new SpecTemplate("").ipv4("ip", "a", 1));
+    assertThrows(
+        IllegalArgumentException.class, () -> new SpecTemplate("").ipv4("ip", "10.0.0.1", 0));
+  }
+}